@@ -0,0 +1,169 @@
+package shop.serve.bench;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Closed-loop HTTP load against a running backend: {@code concurrency} clients each send one blackboard event
+ * at a time (ProductList + OrderHistory, so MySQL, Neo4j ingest and JWT checks are all on the path).
+ * <p>
+ * Run it once against a backend started with {@code spring.threads.virtual.enabled=false} and once with
+ * {@code true} ({@code thread-modes.sh} does both) and compare the throughput and latency lines. The server's
+ * thread stats need its {@code shopnserve.admin.token}, passed as {@code --admin-token} or {@code ADMIN_TOKEN}.
+ * <pre>
+ * mvn -q compile exec:java -Dexec.args="--url http://localhost:8080 --concurrency 2000 --duration 30 --admin-token ..."
+ * </pre>
+ */
+public class ThreadModeBenchmark {
+
+    private static final ObjectMapper JSON = new ObjectMapper();
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> opts = options(args);
+        String url = opts.getOrDefault("url", "http://localhost:8080");
+        int concurrency = Integer.parseInt(opts.getOrDefault("concurrency", "1000"));
+        Duration duration = Duration.ofSeconds(Long.parseLong(opts.getOrDefault("duration", "30")));
+        Duration warmup = Duration.ofSeconds(Long.parseLong(opts.getOrDefault("warmup", "10")));
+        String adminToken = opts.getOrDefault("admin-token", System.getenv().getOrDefault("ADMIN_TOKEN", ""));
+
+        HttpClient http = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_1_1)
+                .connectTimeout(Duration.ofSeconds(5))
+                .executor(Executors.newVirtualThreadPerTaskExecutor())
+                .build();
+
+        String token = login(http, url, opts.getOrDefault("user", "demo"), opts.getOrDefault("password", "demo"));
+        JsonNode before = threadStats(http, url, adminToken);
+        String mode = before.path("virtualThreads").asBoolean() ? "virtual" : "platform";
+        byte[] body = JSON.writeValueAsBytes(Map.of(
+                "traceId", "bench-" + System.currentTimeMillis(),
+                "sender", Map.of("component", "ThreadModeBenchmark", "application", "bench"),
+                "capabilities", List.of("ProductList", "OrderHistory"),
+                "payload", Map.of("pageSize", 20)
+        ));
+        HttpRequest request = HttpRequest.newBuilder(URI.create(url + "/api/blackboard/messages"))
+                .timeout(Duration.ofSeconds(30))
+                .header("Content-Type", "application/json")
+                .header("Authorization", "Bearer " + token)
+                .POST(HttpRequest.BodyPublishers.ofByteArray(body))
+                .build();
+
+        System.out.printf("server mode: %s, clients: %d, warmup: %ds, measured: %ds%n",
+                mode, concurrency, warmup.toSeconds(), duration.toSeconds());
+        run(http, request, concurrency, warmup);
+        Result r = run(http, request, concurrency, duration);
+
+        long[] lat = r.latenciesMicros();
+        Arrays.sort(lat);
+        System.out.printf("%-8s %10.1f req/s  ok %d  errors %d  p50 %.1f ms  p90 %.1f ms  p99 %.1f ms  max %.1f ms%n",
+                mode, r.ok() / (double) duration.toSeconds(), r.ok(), r.errors(),
+                pct(lat, 50), pct(lat, 90), pct(lat, 99), lat.length > 0 ? lat[lat.length - 1] / 1000.0 : 0);
+        System.out.println("server threads/stats: " + threadStats(http, url, adminToken));
+    }
+
+    private record Result(long ok, long errors, long[] latenciesMicros) {}
+
+    private static Result run(HttpClient http, HttpRequest request, int concurrency, Duration duration) throws Exception {
+        long end = System.nanoTime() + duration.toNanos();
+        AtomicLong ok = new AtomicLong();
+        AtomicLong errors = new AtomicLong();
+        List<long[]> perClient = new ArrayList<>(concurrency);
+        int[] counts = new int[concurrency];
+
+        try (ExecutorService clients = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (int c = 0; c < concurrency; c++) {
+                long[] samples = new long[4096];
+                perClient.add(samples);
+                int id = c;
+                clients.submit(() -> {
+                    long[] buf = samples;
+                    int n = 0;
+                    while (System.nanoTime() < end) {
+                        long start = System.nanoTime();
+                        try {
+                            HttpResponse<byte[]> resp = http.send(request, HttpResponse.BodyHandlers.ofByteArray());
+                            if (resp.statusCode() == 200) ok.incrementAndGet(); else errors.incrementAndGet();
+                        } catch (Exception e) {
+                            errors.incrementAndGet();
+                            continue;
+                        }
+                        if (n == buf.length) {
+                            buf = Arrays.copyOf(buf, n * 2);
+                            perClient.set(id, buf);
+                        }
+                        buf[n++] = (System.nanoTime() - start) / 1000;
+                    }
+                    counts[id] = n;
+                });
+            }
+        }
+
+        // try-with-resources waited for every client, so the arrays and counts are final here
+        int total = 0;
+        for (int n : counts) total += n;
+        long[] all = new long[total];
+        int pos = 0;
+        for (int c = 0; c < concurrency; c++) {
+            System.arraycopy(perClient.get(c), 0, all, pos, counts[c]);
+            pos += counts[c];
+        }
+        return new Result(ok.get(), errors.get(), all);
+    }
+
+    private static double pct(long[] sorted, double p) {
+        if (sorted.length == 0) return 0;
+        int i = (int) Math.ceil(p / 100.0 * sorted.length) - 1;
+        return sorted[Math.max(0, i)] / 1000.0;
+    }
+
+    private static String login(HttpClient http, String url, String user, String password) throws Exception {
+        byte[] body = JSON.writeValueAsBytes(Map.of(
+                "traceId", "bench-login",
+                "sender", Map.of("component", "ThreadModeBenchmark", "application", "bench"),
+                "capabilities", List.of("Authentication"),
+                "payload", Map.of("action", "login", "username", user, "password", password)
+        ));
+        HttpResponse<String> resp = http.send(HttpRequest.newBuilder(URI.create(url + "/api/blackboard/messages"))
+                .header("Content-Type", "application/json")
+                .POST(HttpRequest.BodyPublishers.ofByteArray(body))
+                .build(), HttpResponse.BodyHandlers.ofString());
+        JsonNode token = JSON.readTree(resp.body()).path("data").path("token");
+        if (!token.isTextual()) throw new IllegalStateException("Login failed: " + resp.body());
+        return token.asText();
+    }
+
+    private static JsonNode threadStats(HttpClient http, String url, String adminToken) throws Exception {
+        HttpResponse<String> resp = http.send(
+                HttpRequest.newBuilder(URI.create(url + "/api/blackboard/threads/stats"))
+                        .header("X-Admin-Token", adminToken)
+                        .GET().build(),
+                HttpResponse.BodyHandlers.ofString());
+        if (resp.statusCode() != 200) {
+            throw new IllegalStateException("threads/stats returned " + resp.statusCode() + ", is --admin-token set?");
+        }
+        return JSON.readTree(resp.body());
+    }
+
+    private static Map<String, String> options(String[] args) {
+        Map<String, String> opts = new HashMap<>();
+        for (int i = 0; i + 1 < args.length; i += 2) {
+            if (!args[i].startsWith("--")) throw new IllegalArgumentException("Unexpected argument: " + args[i]);
+            opts.put(args[i].substring(2), args[i + 1]);
+        }
+        return opts;
+    }
+}
@@ -0,0 +1,338 @@
+package shop.serve.bench;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import org.HdrHistogram.ConcurrentHistogram;
+import org.HdrHistogram.Histogram;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.net.ConnectException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.net.http.HttpTimeoutException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Replays a JSONL capture of blackboard messages against {@code /api/blackboard/messages}.
+ * <p>
+ * Each line is either a bare {@code MessageEventRequest} or {@code {"offsetMs": .., "user": .., "event": {..}}}.
+ * Requests are sent open loop: every line has an intended start time, taken from {@code offsetMs} divided by
+ * {@code --time-scale}, or spaced evenly at {@code --rate} per second. Latency is measured from that intended
+ * time, so a slow server also shows the queueing it causes instead of quietly lowering the offered load.
+ * {@code --concurrency} caps the requests in flight; hitting it is reported.
+ * <p>
+ * Events that need a token get a fresh {@code Authorization} header for the line's user ({@code --users}
+ * otherwise, round robin). Trace ids are prefixed per run, so a replayed session gets its own graph nodes.
+ * <pre>
+ * mvn -q compile exec:java@replay -Dexec.args="--file traces/shop-session.jsonl --rate 200 --duration 60"
+ * </pre>
+ */
+public class TraceReplay {
+
+    private static final ObjectMapper JSON = new ObjectMapper();
+    private static final String ENDPOINT = "/api/blackboard/messages";
+    // one minute in microseconds, with three significant digits
+    private static final long MAX_LATENCY_MICROS = TimeUnit.MINUTES.toMicros(1);
+
+    private record Line(long offsetMicros, String user, String capability, boolean needsToken, ObjectNode event) {}
+
+    private static final class Stats {
+        final Map<String, Histogram> latency = new ConcurrentHashMap<>();
+        final Map<String, LongAdder> errors = new ConcurrentHashMap<>();
+        final LongAdder sent = new LongAdder();
+        final LongAdder ok = new LongAdder();
+        final LongAdder saturated = new LongAdder();
+
+        void record(String capability, long micros) {
+            latency.computeIfAbsent(capability, k -> new ConcurrentHistogram(MAX_LATENCY_MICROS, 3)).recordValue(
+                    Math.min(micros, MAX_LATENCY_MICROS));
+        }
+
+        void error(String capability, String kind) {
+            errors.computeIfAbsent(capability + "  " + kind, k -> new LongAdder()).increment();
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> opts = options(args);
+        Path file = Path.of(opts.getOrDefault("file", "traces/shop-session.jsonl"));
+        String url = opts.getOrDefault("url", "http://localhost:8080");
+        int concurrency = Integer.parseInt(opts.getOrDefault("concurrency", "256"));
+        double rate = Double.parseDouble(opts.getOrDefault("rate", "0"));
+        double timeScale = Double.parseDouble(opts.getOrDefault("time-scale", "1"));
+        long durationSeconds = Long.parseLong(opts.getOrDefault("duration", "0"));
+        long warmupSeconds = Long.parseLong(opts.getOrDefault("warmup", "0"));
+        List<String> users = List.of(opts.getOrDefault("users", "demo:demo").split(","));
+        String histogramDir = opts.get("histograms");
+
+        List<Line> lines = load(file, rate, timeScale);
+        if (lines.isEmpty()) throw new IllegalArgumentException("No events in " + file);
+        long loopMicros = lines.get(lines.size() - 1).offsetMicros()
+                + (rate > 0 ? (long) (1_000_000 / rate) : 1_000);
+        long durationMicros = durationSeconds > 0 ? TimeUnit.SECONDS.toMicros(durationSeconds) : loopMicros;
+        long warmupMicros = TimeUnit.SECONDS.toMicros(warmupSeconds);
+
+        HttpClient http = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_1_1)
+                .connectTimeout(Duration.ofSeconds(5))
+                .executor(Executors.newVirtualThreadPerTaskExecutor())
+                .build();
+        Tokens tokens = new Tokens(http, url, users);
+        String runId = Long.toString(System.currentTimeMillis(), 36);
+        // logged in (registered if needed) up front, so replayed logins succeed and the first requests are not slower
+        for (Line line : lines) if (line.user() != null) tokens.get(line.user());
+        for (String u : users) tokens.get(u.split(":", 2)[0]);
+
+        System.out.printf("%s: %d events per pass, %s, %d in flight max, %ds measured after %ds warmup%n",
+                file, lines.size(),
+                rate > 0 ? String.format("%.1f req/s", rate) : String.format("capture timing x%.2f", timeScale),
+                concurrency, (durationMicros - Math.min(warmupMicros, durationMicros)) / 1_000_000, warmupSeconds);
+
+        Stats stats = new Stats();
+        Semaphore inFlight = new Semaphore(concurrency);
+        long start = System.nanoTime();
+
+        try (ExecutorService senders = Executors.newVirtualThreadPerTaskExecutor()) {
+            schedule:
+            for (long pass = 0; ; pass++) {
+                for (int i = 0; i < lines.size(); i++) {
+                    Line line = lines.get(i);
+                    long due = pass * loopMicros + line.offsetMicros();
+                    if (due >= durationMicros) break schedule;
+                    long dueNanos = start + TimeUnit.MICROSECONDS.toNanos(due);
+                    parkUntil(dueNanos);
+
+                    boolean measured = due >= warmupMicros;
+                    if (!inFlight.tryAcquire()) {
+                        if (measured) stats.saturated.increment();
+                        inFlight.acquireUninterruptibly();
+                    }
+                    ObjectNode event = line.event().deepCopy();
+                    String traceId = event.path("traceId").asText("");
+                    event.put("traceId", runId + "-" + pass + "-" + (traceId.isEmpty() ? "line" + i : traceId));
+                    String user = line.user() != null ? line.user() : users.get(i % users.size()).split(":", 2)[0];
+
+                    senders.submit(() -> {
+                        try {
+                            send(http, url, tokens, line, user, event, dueNanos, measured ? stats : null);
+                        } finally {
+                            inFlight.release();
+                        }
+                    });
+                }
+            }
+        }
+
+        double seconds = (System.nanoTime() - start) / 1e9 - Math.min(warmupSeconds, durationMicros / 1e6);
+        report(System.out, stats, seconds, rate);
+        if (histogramDir != null) writeHistograms(Path.of(histogramDir), stats);
+    }
+
+    private static void send(
+            HttpClient http, String url, Tokens tokens, Line line, String user, ObjectNode event,
+            long dueNanos, Stats stats
+    ) {
+        String capability = line.capability();
+        String kind;
+        try {
+            HttpRequest.Builder req = HttpRequest.newBuilder(URI.create(url + ENDPOINT))
+                    .timeout(Duration.ofSeconds(30))
+                    .header("Content-Type", "application/json")
+                    .POST(HttpRequest.BodyPublishers.ofByteArray(JSON.writeValueAsBytes(event)));
+            if (line.needsToken()) req.header("Authorization", "Bearer " + tokens.get(user));
+
+            HttpResponse<byte[]> resp = http.send(req.build(), HttpResponse.BodyHandlers.ofByteArray());
+            long micros = (System.nanoTime() - dueNanos) / 1000;
+            if (stats == null) return;
+            stats.sent.increment();
+            stats.record(capability, micros);
+
+            if (resp.statusCode() == 200 && okField(resp.body())) {
+                stats.ok.increment();
+                return;
+            }
+            if (resp.statusCode() == 401 && line.needsToken()) tokens.invalidate(user);
+            kind = "http " + resp.statusCode() + " " + errorField(resp.body());
+        } catch (HttpTimeoutException e) {
+            kind = "timeout";
+        } catch (ConnectException e) {
+            kind = "connect refused";
+        } catch (Exception e) {
+            kind = e.getClass().getSimpleName();
+        }
+        if (stats == null) return;
+        // failed before a response, still part of what the user would have waited
+        if (!kind.startsWith("http ")) {
+            stats.sent.increment();
+            stats.record(capability, (System.nanoTime() - dueNanos) / 1000);
+        }
+        stats.error(capability, kind);
+    }
+
+    /** Access tokens per user, logged in (or registered) on first use and again after a 401. */
+    private static final class Tokens {
+        private final HttpClient http;
+        private final String url;
+        private final Map<String, String> passwords = new HashMap<>();
+        private final Map<String, String> tokens = new ConcurrentHashMap<>();
+
+        Tokens(HttpClient http, String url, List<String> users) {
+            this.http = http;
+            this.url = url;
+            for (String u : users) {
+                String[] parts = u.split(":", 2);
+                passwords.put(parts[0], parts.length > 1 ? parts[1] : parts[0]);
+            }
+        }
+
+        String get(String user) throws Exception {
+            String token = tokens.get(user);
+            if (token != null) return token;
+            String password = passwords.getOrDefault(user, user);
+            token = authenticate("login", user, password);
+            if (token == null) token = authenticate("register", user, password);
+            if (token == null) throw new IllegalStateException("Could not log in as " + user);
+            tokens.put(user, token);
+            return token;
+        }
+
+        void invalidate(String user) {
+            tokens.remove(user);
+        }
+
+        private String authenticate(String action, String user, String password) throws Exception {
+            byte[] body = JSON.writeValueAsBytes(Map.of(
+                    "traceId", "replay-login",
+                    "sender", Map.of("component", "TraceReplay", "application", "bench"),
+                    "capabilities", List.of("Authentication"),
+                    "payload", Map.of("action", action, "username", user, "password", password)
+            ));
+            HttpResponse<String> resp = http.send(HttpRequest.newBuilder(URI.create(url + ENDPOINT))
+                    .header("Content-Type", "application/json")
+                    .POST(HttpRequest.BodyPublishers.ofByteArray(body))
+                    .build(), HttpResponse.BodyHandlers.ofString());
+            JsonNode token = JSON.readTree(resp.body()).path("data").path("token");
+            return token.isTextual() ? token.asText() : null;
+        }
+    }
+
+    private static List<Line> load(Path file, double rate, double timeScale) throws IOException {
+        List<Line> lines = new ArrayList<>();
+        long firstOffset = -1;
+        try (BufferedReader in = Files.newBufferedReader(file)) {
+            String text;
+            while ((text = in.readLine()) != null) {
+                if (text.isBlank()) continue;
+                JsonNode node = JSON.readTree(text);
+                JsonNode event = node.has("event") ? node.get("event") : node;
+                if (!event.isObject()) throw new IllegalArgumentException("Not an event: " + text);
+
+                List<String> caps = new ArrayList<>();
+                event.path("capabilities").forEach(c -> caps.add(c.asText()));
+                boolean needsToken = !(caps.size() == 1 && "Authentication".equals(caps.get(0)));
+
+                long offset;
+                if (rate > 0) {
+                    offset = (long) (lines.size() * 1_000_000 / rate);
+                } else {
+                    long ms = node.path("offsetMs").asLong(lines.size() * 100L);
+                    if (firstOffset < 0) firstOffset = ms;
+                    offset = (long) ((ms - firstOffset) * 1000 / timeScale);
+                }
+                String user = node.path("user").isTextual() ? node.get("user").asText() : null;
+                lines.add(new Line(offset, user, String.join("+", caps), needsToken, (ObjectNode) event));
+            }
+        }
+        lines.sort(Comparator.comparingLong(Line::offsetMicros));
+        return lines;
+    }
+
+    private static void report(PrintStream out, Stats stats, double seconds, double rate) {
+        long sent = stats.sent.sum();
+        out.printf("%nsent %d in %.1fs: %.1f req/s%s, ok %d, errors %d, concurrency limit hit %d times%n",
+                sent, seconds, sent / seconds, rate > 0 ? String.format(" (target %.1f)", rate) : "",
+                stats.ok.sum(), sent - stats.ok.sum(), stats.saturated.sum());
+
+        out.printf("%n%-28s %8s %9s %9s %9s %9s %9s %9s%n",
+                "latency ms", "count", "mean", "p50", "p90", "p99", "p99.9", "max");
+        Histogram all = new Histogram(MAX_LATENCY_MICROS, 3);
+        for (Map.Entry<String, Histogram> e : new TreeMap<>(stats.latency).entrySet()) {
+            row(out, e.getKey(), e.getValue());
+            all.add(e.getValue());
+        }
+        row(out, "all", all);
+
+        if (stats.errors.isEmpty()) return;
+        out.printf("%nerrors%n");
+        stats.errors.entrySet().stream()
+                .sorted(Map.Entry.<String, LongAdder>comparingByValue(Comparator.comparingLong(LongAdder::sum)).reversed())
+                .forEach(e -> out.printf("%8d  %s%n", e.getValue().sum(), e.getKey()));
+    }
+
+    private static void row(PrintStream out, String name, Histogram h) {
+        out.printf("%-28s %8d %9.1f %9.1f %9.1f %9.1f %9.1f %9.1f%n", name, h.getTotalCount(),
+                h.getMean() / 1000, h.getValueAtPercentile(50) / 1000.0, h.getValueAtPercentile(90) / 1000.0,
+                h.getValueAtPercentile(99) / 1000.0, h.getValueAtPercentile(99.9) / 1000.0, h.getMaxValue() / 1000.0);
+    }
+
+    // one .hgrm file per capability, for the HdrHistogram plotter
+    private static void writeHistograms(Path dir, Stats stats) throws IOException {
+        Files.createDirectories(dir);
+        for (Map.Entry<String, Histogram> e : stats.latency.entrySet()) {
+            try (PrintStream out = new PrintStream(Files.newOutputStream(dir.resolve(e.getKey() + ".hgrm")))) {
+                e.getValue().outputPercentileDistribution(out, 1000.0);
+            }
+        }
+        System.out.println("histograms written to " + dir.toAbsolutePath());
+    }
+
+    private static boolean okField(byte[] body) {
+        try {
+            return JSON.readTree(body).path("ok").asBoolean(false);
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    private static String errorField(byte[] body) {
+        try {
+            return JSON.readTree(body).path("data").path("error").asText("");
+        } catch (IOException e) {
+            return "";
+        }
+    }
+
+    private static void parkUntil(long deadlineNanos) {
+        long wait;
+        while ((wait = deadlineNanos - System.nanoTime()) > 0) LockSupport.parkNanos(wait);
+    }
+
+    private static Map<String, String> options(String[] args) {
+        Map<String, String> opts = new HashMap<>();
+        for (int i = 0; i + 1 < args.length; i += 2) {
+            if (!args[i].startsWith("--")) throw new IllegalArgumentException("Unexpected argument: " + args[i]);
+            opts.put(args[i].substring(2), args[i + 1]);
+        }
+        return opts;
+    }
+}
@@ -0,0 +1,67 @@
+package shop.serve.bench.jmh;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import shop.serve.ShopNServe.model.BlackboardResponse;
+import shop.serve.ShopNServe.model.Capability;
+import shop.serve.ShopNServe.model.MessageEventRequest;
+import shop.serve.ShopNServe.service.BlackboardService;
+import shop.serve.ShopNServe.service.JwtService;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@code BlackboardService.handle} with canned handlers: validation, JWT check, graph trace building and
+ * metrics, for one capability and for two read-only capabilities fanned out to virtual threads.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class BlackboardDispatchBenchmark {
+
+    private BlackboardService service;
+    private String authHeader;
+    private MessageEventRequest single;
+    private MessageEventRequest fanOut;
+
+    @Setup
+    public void setUp() {
+        JwtService jwt = Stubs.jwtService();
+        authHeader = "Bearer " + jwt.generate("demo");
+        service = Stubs.blackboardService(jwt, List.of(
+                Stubs.readOnlyHandler(Capability.ProductList, Map.of("productList", List.of(), "catalogVersion", 1L)),
+                Stubs.readOnlyHandler(Capability.OrderHistory, Map.of("orders", List.of()))
+        ));
+        single = Stubs.event(List.of(Capability.ProductList), Map.of("action", "listProducts"));
+        fanOut = Stubs.event(List.of(Capability.ProductList, Capability.OrderHistory), Map.of("pageSize", 20));
+    }
+
+    @TearDown
+    public void tearDown() {
+        service.shutdown();
+    }
+
+    @Benchmark
+    public BlackboardResponse singleCapability() {
+        return service.handle(single, authHeader);
+    }
+
+    @Benchmark
+    public BlackboardResponse twoReadOnlyCapabilities() {
+        return service.handle(fanOut, authHeader);
+    }
+}
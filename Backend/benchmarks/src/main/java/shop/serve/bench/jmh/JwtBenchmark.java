@@ -0,0 +1,68 @@
+package shop.serve.bench.jmh;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import shop.serve.ShopNServe.service.JwtService;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Token minting and the three verification paths: a cache hit, a full HMAC check (more distinct tokens than
+ * cache slots, cycled in order, so every lookup misses) and a forged signature.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class JwtBenchmark {
+
+    private static final int DISTINCT_TOKENS = 4096;
+
+    private JwtService jwt;
+    private String header;
+    private String forged;
+    private String[] tokens;
+    private int next;
+
+    @Setup
+    public void setUp() {
+        jwt = Stubs.jwtService();
+        header = "Bearer " + jwt.generate("demo");
+        String token = jwt.generate("demo");
+        forged = token.substring(0, token.length() - 4) + "AAAA";
+        tokens = new String[DISTINCT_TOKENS];
+        for (int i = 0; i < tokens.length; i++) tokens[i] = jwt.generate("user" + i);
+    }
+
+    @Benchmark
+    public String generate() {
+        return jwt.generate("demo");
+    }
+
+    @Benchmark
+    public boolean validateCached() {
+        return jwt.validate(header);
+    }
+
+    @Benchmark
+    public boolean validateUncached() {
+        String token = tokens[next];
+        next = (next + 1) & (DISTINCT_TOKENS - 1);
+        return jwt.validate(token);
+    }
+
+    @Benchmark
+    public boolean validateForged() {
+        return jwt.validate(forged);
+    }
+}
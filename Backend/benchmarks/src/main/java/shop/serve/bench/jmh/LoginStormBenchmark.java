@@ -0,0 +1,124 @@
+package shop.serve.bench.jmh;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import shop.serve.ShopNServe.handler.AuthenticationHandler;
+import shop.serve.ShopNServe.model.BlackboardResponse;
+import shop.serve.ShopNServe.model.Capability;
+import shop.serve.ShopNServe.model.MessageEventRequest;
+import shop.serve.ShopNServe.service.AuthService;
+import shop.serve.ShopNServe.service.BlackboardService;
+import shop.serve.ShopNServe.service.JwtService;
+import shop.serve.ShopNServe.service.PasswordHasher;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Logins with real BCrypt hashing next to ProductList/OrderHistory requests, as one JMH group: 8 threads log in
+ * while 4 threads serve the read-only capabilities. {@code quiet} runs the same readers without logins.
+ * <p>
+ * Compare {@code storm:readers} with {@code quiet:readersAlone} for what a login storm costs everybody else.
+ * {@code hashThreads} 2 is the bounded pool; with 16 every login hashes at once, much like hashing on the
+ * request threads. In the throughput run {@code loggedIn} and {@code refused} split the login rate, so the
+ * fast 503s are not mistaken for logins. Sample mode gives the latency percentiles. Run with
+ * {@code -bm sample} or {@code -bm thrpt} to get just one of them.
+ */
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 3)
+@Measurement(iterations = 4, time = 3)
+@Fork(1)
+@State(Scope.Group)
+public class LoginStormBenchmark {
+
+    @Param({"2", "16"})
+    public int hashThreads;
+
+    @Param({"4"})
+    public int queueCapacity;
+
+    @Param({"10"})
+    public int bcryptStrength;
+
+    private PasswordHasher hasher;
+    private BlackboardService service;
+    private String authHeader;
+    private MessageEventRequest login;
+    private MessageEventRequest readers;
+
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    public static class LoginOutcome {
+        public long loggedIn;
+        public long refused;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            loggedIn = 0;
+            refused = 0;
+        }
+    }
+
+    @Setup
+    public void setUp() {
+        JwtService jwt = Stubs.jwtService();
+        hasher = new PasswordHasher(bcryptStrength, hashThreads, queueCapacity, 10_000);
+        AuthService auth = Stubs.authService(jwt, hasher);
+        service = Stubs.blackboardService(auth, List.of(
+                new AuthenticationHandler(auth),
+                Stubs.readOnlyHandler(Capability.ProductList, Map.of("productList", List.of(), "catalogVersion", 1L)),
+                Stubs.readOnlyHandler(Capability.OrderHistory, Map.of("orders", List.of()))
+        ));
+        authHeader = "Bearer " + jwt.generate("demo");
+        login = Stubs.event(List.of(Capability.Authentication), Map.of("username", "demo", "password", "demo"));
+        readers = Stubs.event(List.of(Capability.ProductList, Capability.OrderHistory), Map.of("pageSize", 20));
+    }
+
+    @TearDown
+    public void tearDown() {
+        System.out.println();
+        System.out.println("password hashing: " + hasher.stats());
+        service.shutdown();
+        hasher.shutdown();
+    }
+
+    @Benchmark
+    @Group("storm")
+    @GroupThreads(8)
+    public BlackboardResponse logins(LoginOutcome outcome) {
+        BlackboardResponse resp = service.handle(login, null);
+        if (resp.ok()) outcome.loggedIn++;
+        else if (resp.retryAfterSeconds() != null) outcome.refused++;
+        return resp;
+    }
+
+    @Benchmark
+    @Group("storm")
+    @GroupThreads(4)
+    public BlackboardResponse readers() {
+        return service.handle(readers, authHeader);
+    }
+
+    @Benchmark
+    @Group("quiet")
+    @GroupThreads(4)
+    public BlackboardResponse readersAlone() {
+        return service.handle(readers, authHeader);
+    }
+}
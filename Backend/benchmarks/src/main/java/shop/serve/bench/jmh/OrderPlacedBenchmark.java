@@ -0,0 +1,74 @@
+package shop.serve.bench.jmh;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import shop.serve.ShopNServe.handler.OrderPlacedHandler;
+import shop.serve.ShopNServe.model.BlackboardResponse;
+import shop.serve.ShopNServe.model.Capability;
+import shop.serve.ShopNServe.model.MessageEventRequest;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * OrderPlaced up to the repository: cart parsing, total calculation and the stock reservation call, plus
+ * encoding an OrderHistory-sized response the way the controller does.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class OrderPlacedBenchmark {
+
+    @Param({"3", "20"})
+    public int lines;
+
+    private OrderPlacedHandler handler;
+    private MessageEventRequest event;
+    private ObjectMapper mapper;
+    private BlackboardResponse history;
+
+    @Setup
+    public void setUp() {
+        handler = new OrderPlacedHandler(Stubs.orderService(), Stubs.stockReservations());
+        event = Stubs.event(List.of(Capability.OrderPlaced), Map.of("items", Stubs.cartItems(lines)));
+        mapper = new ObjectMapper();
+
+        List<Map<String, Object>> orders = new ArrayList<>();
+        for (int i = 0; i < 50; i++) {
+            Map<String, Object> o = new HashMap<>();
+            o.put("id", 1000L + i);
+            o.put("user_name", "demo");
+            o.put("total_cents", 4990);
+            o.put("items", "[{\"product\":{\"id\":1,\"name\":\"A\",\"price_cents\":199},\"quantity\":2}]");
+            o.put("created_at", "2026-01-01T10:00:00Z");
+            orders.add(o);
+        }
+        history = new BlackboardResponse(true, Map.of("orders", orders, "nextCursor", "2026-01-01T10:00:00Z_1000"));
+    }
+
+    @Benchmark
+    public BlackboardResponse placeOrder() {
+        return handler.handle(event, "demo");
+    }
+
+    @Benchmark
+    public byte[] encodeHistoryPage() throws Exception {
+        return mapper.writeValueAsBytes(history);
+    }
+}
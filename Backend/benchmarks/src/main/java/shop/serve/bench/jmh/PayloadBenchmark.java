@@ -0,0 +1,72 @@
+package shop.serve.bench.jmh;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import shop.serve.ShopNServe.model.MessageEventRequest;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Request body to typed payloads: an OrderPlaced cart bound straight from the stream, the same cart with
+ * {@code payload} before {@code capabilities} (buffered, then replayed), and one payload decoded for two
+ * capabilities.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class PayloadBenchmark {
+
+    private static final String SENDER = "\"sender\":{\"component\":\"ProductListView.vue\",\"application\":\"Shop-Microclient\"}";
+    private static final String CART = "{\"items\":["
+            + "{\"product\":{\"id\":1,\"name\":\"Cola 0,5l\",\"price_cents\":150},\"quantity\":2},"
+            + "{\"product\":{\"id\":11,\"name\":\"Schokoriegel Classic\",\"price_cents\":120},\"quantity\":1},"
+            + "{\"product\":{\"id\":17,\"name\":\"Chips Paprika 150g\",\"price_cents\":190},\"quantity\":3}"
+            + "],\"total_cents\":990}";
+
+    private ObjectReader reader;
+    private byte[] orderPlaced;
+    private byte[] orderPlacedPayloadFirst;
+    private byte[] twoCapabilities;
+
+    @Setup
+    public void setUp() {
+        reader = new ObjectMapper().readerFor(MessageEventRequest.class);
+        orderPlaced = bytes("{\"traceId\":\"t\"," + SENDER + ",\"capabilities\":[\"OrderPlaced\"],\"payload\":" + CART + "}");
+        orderPlacedPayloadFirst = bytes("{\"payload\":" + CART + ",\"traceId\":\"t\"," + SENDER + ",\"capabilities\":[\"OrderPlaced\"]}");
+        twoCapabilities = bytes("{\"traceId\":\"t\"," + SENDER
+                + ",\"capabilities\":[\"ProductList\",\"OrderHistory\"],\"payload\":{\"pageSize\":20}}");
+    }
+
+    @Benchmark
+    public MessageEventRequest orderPlaced() throws Exception {
+        return reader.readValue(orderPlaced);
+    }
+
+    @Benchmark
+    public MessageEventRequest orderPlacedPayloadFirst() throws Exception {
+        return reader.readValue(orderPlacedPayloadFirst);
+    }
+
+    @Benchmark
+    public MessageEventRequest twoCapabilities() throws Exception {
+        return reader.readValue(twoCapabilities);
+    }
+
+    private static byte[] bytes(String json) {
+        return json.getBytes(StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,164 @@
+package shop.serve.bench.jmh;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.springframework.dao.DataIntegrityViolationException;
+import shop.serve.ShopNServe.config.ConnectionGuards;
+import shop.serve.ShopNServe.handler.CapabilityHandler;
+import shop.serve.ShopNServe.model.BlackboardResponse;
+import shop.serve.ShopNServe.model.Capability;
+import shop.serve.ShopNServe.model.MessageEventRequest;
+import shop.serve.ShopNServe.model.UserEntity;
+import shop.serve.ShopNServe.repository.UserRepository;
+import shop.serve.ShopNServe.service.AuthService;
+import shop.serve.ShopNServe.service.BlackboardAnalytics;
+import shop.serve.ShopNServe.service.BlackboardMetrics;
+import shop.serve.ShopNServe.service.BlackboardService;
+import shop.serve.ShopNServe.service.GraphPayloads;
+import shop.serve.ShopNServe.service.JwtService;
+import shop.serve.ShopNServe.service.OrderService;
+import shop.serve.ShopNServe.service.PasswordHasher;
+import shop.serve.ShopNServe.service.RateLimiter;
+import shop.serve.ShopNServe.service.SessionGraphIngestService;
+import shop.serve.ShopNServe.service.SessionGraphWriter;
+import shop.serve.ShopNServe.service.StockReservations;
+import shop.serve.ShopNServe.service.TokenDenylist;
+
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/** Backend objects wired by hand, with the database and Neo4j calls replaced by no-ops. */
+final class Stubs {
+
+    private Stubs() {}
+
+    static JwtService jwtService() {
+        return new JwtService(new TokenDenylist(604800, 3600, 65536), 900, 604800);
+    }
+
+    /** Builds graph rows and JSON as usual, only the Neo4j round trip is skipped. */
+    static SessionGraphIngestService sessionGraph() {
+        SessionGraphWriter writer = new SessionGraphWriter(
+                null, new ConnectionGuards(10, 10, 1000), new SimpleMeterRegistry(), "sync", "sync", 1, 1, 1000, 0) {
+            @Override
+            public void write(String cypher, Map<String, Object> row) {
+            }
+        };
+        return new SessionGraphIngestService(writer, new GraphPayloads(true, "truncate", "", 16384), "shared");
+    }
+
+    /** A {@link UserRepository} backed by a map, answering only what {@link AuthService} calls. */
+    static UserRepository users() {
+        Map<String, UserEntity> byName = new ConcurrentHashMap<>();
+        return (UserRepository) Proxy.newProxyInstance(
+                UserRepository.class.getClassLoader(),
+                new Class<?>[]{UserRepository.class},
+                (proxy, method, args) -> switch (method.getName()) {
+                    case "findByUsername" -> Optional.ofNullable(byName.get((String) args[0]));
+                    case "existsByUsername" -> byName.containsKey((String) args[0]);
+                    case "save" -> {
+                        UserEntity user = (UserEntity) args[0];
+                        if (byName.putIfAbsent(user.getUsername(), user) != null) {
+                            throw new DataIntegrityViolationException("uk_users_username");
+                        }
+                        yield user;
+                    }
+                    default -> throw new UnsupportedOperationException(method.getName());
+                });
+    }
+
+    static AuthService authService(JwtService jwt, PasswordHasher hasher) {
+        AuthService auth = new AuthService(jwt, users(), hasher, "demo:demo");
+        auth.seedDemoUser();
+        return auth;
+    }
+
+    static BlackboardService blackboardService(JwtService jwt, List<CapabilityHandler> handlers) {
+        return blackboardService(authService(jwt, new PasswordHasher(4, 1, 8, 2000)), handlers);
+    }
+
+    static BlackboardService blackboardService(AuthService auth, List<CapabilityHandler> handlers) {
+        return new BlackboardService(
+                handlers,
+                auth,
+                sessionGraph(),
+                new BlackboardMetrics(new SimpleMeterRegistry()),
+                new BlackboardAnalytics(60, 60),
+                // off: the benchmarks measure dispatch, not how fast 429s are
+                new RateLimiter(false, "", "", "", 1000),
+                new ObjectMapper(),
+                4,
+                50,
+                5000,
+                false
+        );
+    }
+
+    static CapabilityHandler readOnlyHandler(Capability capability, Map<String, Object> data) {
+        return new CapabilityHandler() {
+            @Override
+            public Capability capability() {
+                return capability;
+            }
+
+            @Override
+            public BlackboardResponse handle(MessageEventRequest event) {
+                return new BlackboardResponse(true, data);
+            }
+
+            @Override
+            public boolean readOnly() {
+                return true;
+            }
+        };
+    }
+
+    static OrderService orderService() {
+        AtomicLong ids = new AtomicLong();
+        return new OrderService(null, null, null) {
+            @Override
+            public long createOrder(String username, int totalCents, List<OrderLine> lines) {
+                return ids.incrementAndGet();
+            }
+        };
+    }
+
+    static StockReservations stockReservations() {
+        StockReservations.Result ok = new StockReservations.Result(true, null, 0, false);
+        return new StockReservations(null, null, null, new SimpleMeterRegistry(), 1) {
+            @Override
+            public Result reserve(Map<Long, Integer> quantities) {
+                return ok;
+            }
+
+            @Override
+            public void release(Map<Long, Integer> quantities) {
+            }
+        };
+    }
+
+    static MessageEventRequest event(List<Capability> capabilities, Object payload) {
+        return MessageEventRequest.of(
+                "bench-session",
+                new MessageEventRequest.Sender("ProductListView.vue", "Shop-Microclient"),
+                capabilities,
+                payload
+        );
+    }
+
+    static List<Map<String, Object>> cartItems(int lines) {
+        List<Map<String, Object>> items = new ArrayList<>(lines);
+        for (int i = 1; i <= lines; i++) {
+            items.add(Map.of(
+                    "product", Map.of("id", i, "name", "Product " + i, "price_cents", 199 * i),
+                    "quantity", 1 + i % 3
+            ));
+        }
+        return items;
+    }
+}
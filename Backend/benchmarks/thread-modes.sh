@@ -0,0 +1,18 @@
+#!/usr/bin/env sh
+# Runs ThreadModeBenchmark against the compose stack twice: platform threads, then virtual threads.
+# Usage: ./thread-modes.sh [concurrency] [seconds]
+set -e
+
+CONCURRENCY=${1:-2000}
+DURATION=${2:-30}
+HERE=$(cd "$(dirname "$0")" && pwd)
+# the benchmark reads the server's thread stats, which need the admin token
+export ADMIN_TOKEN=${ADMIN_TOKEN:-bench-$(date +%s)}
+
+for VT in false true; do
+  echo "== spring.threads.virtual.enabled=$VT"
+  (cd "$HERE/.." && VIRTUAL_THREADS=$VT docker compose up -d --build --force-recreate backend)
+  until curl -sf http://localhost:8080/actuator/health > /dev/null; do sleep 2; done
+  (cd "$HERE" && mvn -q compile exec:java \
+    -Dexec.args="--url http://localhost:8080 --concurrency $CONCURRENCY --duration $DURATION")
+done
@@ -2,8 +2,10 @@ package shop.serve.ShopNServe;
 
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.scheduling.annotation.EnableScheduling;
 
 @SpringBootApplication(scanBasePackages = "shop.serve.ShopNServe")
+@EnableScheduling
 public class ShopNServeApplication {
 	public static void main(String[] args) {
 		SpringApplication.run(ShopNServeApplication.class, args);
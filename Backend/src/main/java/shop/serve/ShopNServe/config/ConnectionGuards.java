@@ -0,0 +1,116 @@
+package shop.serve.ShopNServe.config;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * Admission limits in front of the MySQL and Neo4j connection pools.
+ * <p>
+ * With virtual threads the number of concurrent requests is no longer capped by Tomcat's pool, so thousands
+ * of callers can pile up inside Hikari or the Neo4j driver, spinning and timing out there. A fair semaphore
+ * sized like the pool queues them cheaply in arrival order and fails fast once the wait gets too long.
+ */
+@Component
+public class ConnectionGuards {
+
+    public record Stats(int permits, int available, int waiting, long acquired, long rejected, long maxWaitMillis) {}
+
+    public static final class Guard {
+        private final String name;
+        private final int permits;
+        private final long timeoutMillis;
+        private final Semaphore semaphore;
+        private final AtomicLong acquired = new AtomicLong();
+        private final AtomicLong rejected = new AtomicLong();
+        private final AtomicLong maxWaitNanos = new AtomicLong();
+
+        Guard(String name, int permits, long timeoutMillis) {
+            this.name = name;
+            this.permits = Math.max(1, permits);
+            this.timeoutMillis = timeoutMillis;
+            this.semaphore = new Semaphore(this.permits, true);
+        }
+
+        /** Returns false after the timeout; the caller must {@link #release()} only after a true. */
+        public boolean tryAcquire() {
+            if (semaphore.tryAcquire()) {
+                acquired.incrementAndGet();
+                return true;
+            }
+            long start = System.nanoTime();
+            try {
+                if (semaphore.tryAcquire(timeoutMillis, TimeUnit.MILLISECONDS)) {
+                    acquired.incrementAndGet();
+                    maxWaitNanos.accumulateAndGet(System.nanoTime() - start, Math::max);
+                    return true;
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            rejected.incrementAndGet();
+            return false;
+        }
+
+        public void release() {
+            semaphore.release();
+        }
+
+        public <T> T call(Supplier<T> work) {
+            if (!tryAcquire()) {
+                throw new IllegalStateException(name + " busy, no connection within " + timeoutMillis + " ms");
+            }
+            try {
+                return work.get();
+            } finally {
+                release();
+            }
+        }
+
+        public void run(Runnable work) {
+            call(() -> {
+                work.run();
+                return null;
+            });
+        }
+
+        public long timeoutMillis() {
+            return timeoutMillis;
+        }
+
+        public Stats stats() {
+            return new Stats(
+                    permits,
+                    semaphore.availablePermits(),
+                    semaphore.getQueueLength(),
+                    acquired.get(),
+                    rejected.get(),
+                    TimeUnit.NANOSECONDS.toMillis(maxWaitNanos.get())
+            );
+        }
+    }
+
+    private final Guard jdbc;
+    private final Guard neo4j;
+
+    public ConnectionGuards(
+            @Value("${shopnserve.threads.guard.jdbc-permits:${spring.datasource.hikari.maximum-pool-size:10}}") int jdbcPermits,
+            @Value("${shopnserve.threads.guard.neo4j-permits:${spring.neo4j.pool.max-connection-pool-size:100}}") int neo4jPermits,
+            @Value("${shopnserve.threads.guard.acquire-timeout-ms:5000}") long timeoutMillis
+    ) {
+        this.jdbc = new Guard("MySQL", jdbcPermits, timeoutMillis);
+        this.neo4j = new Guard("Neo4j", neo4jPermits, timeoutMillis);
+    }
+
+    public Guard jdbc() {
+        return jdbc;
+    }
+
+    public Guard neo4j() {
+        return neo4j;
+    }
+}
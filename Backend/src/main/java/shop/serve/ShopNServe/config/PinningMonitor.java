@@ -0,0 +1,83 @@
+package shop.serve.ShopNServe.config;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordedFrame;
+import jdk.jfr.consumer.RecordingStream;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Logs virtual threads that stay pinned to their carrier (blocking inside {@code synchronized} or native
+ * code) for longer than a threshold, using the JDK's own {@code jdk.VirtualThreadPinned} JFR event.
+ */
+@Component
+public class PinningMonitor {
+
+    private static final Logger log = LoggerFactory.getLogger(PinningMonitor.class);
+
+    private static final int LOGGED_FRAMES = 8;
+
+    public record Stats(boolean enabled, long pinnedEvents, long maxPinnedMillis) {}
+
+    private final boolean enabled;
+    private final Duration threshold;
+    private final AtomicLong pinnedEvents = new AtomicLong();
+    private final AtomicLong maxPinnedNanos = new AtomicLong();
+    private RecordingStream stream;
+
+    public PinningMonitor(
+            @Value("${shopnserve.threads.pinning.enabled:false}") boolean enabled,
+            @Value("${shopnserve.threads.pinning.threshold-ms:20}") long thresholdMillis
+    ) {
+        this.enabled = enabled;
+        this.threshold = Duration.ofMillis(thresholdMillis);
+    }
+
+    @PostConstruct
+    public void start() {
+        if (!enabled) return;
+        try {
+            stream = new RecordingStream();
+            stream.enable("jdk.VirtualThreadPinned").withThreshold(threshold).withStackTrace();
+            stream.onEvent("jdk.VirtualThreadPinned", this::onPinned);
+            stream.startAsync();
+            log.info("Virtual thread pinning monitor started, threshold {} ms", threshold.toMillis());
+        } catch (Exception e) {
+            log.warn("Could not start pinning monitor: {}", e.getMessage());
+        }
+    }
+
+    @PreDestroy
+    public void stop() {
+        if (stream != null) stream.close();
+    }
+
+    public Stats stats() {
+        return new Stats(stream != null, pinnedEvents.get(), Duration.ofNanos(maxPinnedNanos.get()).toMillis());
+    }
+
+    private void onPinned(RecordedEvent event) {
+        pinnedEvents.incrementAndGet();
+        maxPinnedNanos.accumulateAndGet(event.getDuration().toNanos(), Math::max);
+
+        StringBuilder sb = new StringBuilder();
+        if (event.getStackTrace() != null) {
+            List<RecordedFrame> frames = event.getStackTrace().getFrames();
+            for (int i = 0; i < Math.min(LOGGED_FRAMES, frames.size()); i++) {
+                RecordedFrame f = frames.get(i);
+                sb.append("\n\tat ").append(f.getMethod().getType().getName())
+                        .append('.').append(f.getMethod().getName())
+                        .append(':').append(f.getLineNumber());
+            }
+        }
+        log.warn("Virtual thread pinned for {} ms{}", event.getDuration().toMillis(), sb);
+    }
+}
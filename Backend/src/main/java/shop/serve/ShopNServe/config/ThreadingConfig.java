@@ -0,0 +1,31 @@
+package shop.serve.ShopNServe.config;
+
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import javax.sql.DataSource;
+
+/**
+ * Virtual threads themselves are switched on by Boot's {@code spring.threads.virtual.enabled}, which covers
+ * Tomcat, the scheduler and Boot's task executors. This adds what the app needs on top: every DataSource goes
+ * through the JDBC connection guard.
+ */
+@Configuration
+public class ThreadingConfig {
+
+    // static, so post-processing does not force this configuration class to be created early
+    @Bean
+    static BeanPostProcessor guardedDataSourcePostProcessor(ObjectProvider<ConnectionGuards> guards) {
+        return new BeanPostProcessor() {
+            @Override
+            public Object postProcessAfterInitialization(Object bean, String beanName) {
+                if (bean instanceof DataSource ds && !(bean instanceof GuardedDataSource)) {
+                    return new GuardedDataSource(ds, guards.getObject().jdbc());
+                }
+                return bean;
+            }
+        };
+    }
+}
@@ -0,0 +1,33 @@
+package shop.serve.ShopNServe.config;
+
+import jakarta.persistence.EntityManagerFactory;
+import org.neo4j.driver.Driver;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+import org.springframework.data.neo4j.core.DatabaseSelectionProvider;
+import org.springframework.data.neo4j.core.transaction.Neo4jTransactionManager;
+import org.springframework.orm.jpa.JpaTransactionManager;
+
+/**
+ * JPA and Neo4j both auto-configure a "transactionManager" only if none exists, so which one wins depends on
+ * auto-configuration order. Declaring both makes @Transactional and TransactionTemplate mean JPA/MySQL;
+ * Neo4j work that needs a transaction names {@code neo4jTransactionManager} explicitly.
+ */
+@Configuration
+public class TransactionConfig {
+
+    @Bean
+    @Primary
+    public JpaTransactionManager transactionManager(EntityManagerFactory entityManagerFactory) {
+        return new JpaTransactionManager(entityManagerFactory);
+    }
+
+    @Bean
+    public Neo4jTransactionManager neo4jTransactionManager(
+            Driver driver,
+            DatabaseSelectionProvider databaseSelectionProvider
+    ) {
+        return new Neo4jTransactionManager(driver, databaseSelectionProvider);
+    }
+}
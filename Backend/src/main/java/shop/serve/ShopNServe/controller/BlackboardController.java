@@ -1,38 +1,344 @@
 package shop.serve.ShopNServe.controller;
 
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.servlet.http.HttpServletRequest;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
+import org.springframework.http.converter.HttpMessageNotReadableException;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+import shop.serve.ShopNServe.config.ConnectionGuards;
+import shop.serve.ShopNServe.config.PinningMonitor;
 import shop.serve.ShopNServe.model.BlackboardResponse;
+import shop.serve.ShopNServe.model.InvalidPayloadException;
 import shop.serve.ShopNServe.model.MessageEventRequest;
+import shop.serve.ShopNServe.service.AuthService;
+import shop.serve.ShopNServe.service.BlackboardAnalytics;
+import shop.serve.ShopNServe.service.BlackboardMetrics;
 import shop.serve.ShopNServe.service.BlackboardService;
+import shop.serve.ShopNServe.service.JwtService;
+import shop.serve.ShopNServe.service.PasswordHasher;
+import shop.serve.ShopNServe.service.RateLimiter;
+import shop.serve.ShopNServe.service.SessionGraphMigration;
+import shop.serve.ShopNServe.service.SessionGraphRetention;
+import shop.serve.ShopNServe.service.SessionGraphWriter;
+import shop.serve.ShopNServe.service.SubscribeTickets;
+import shop.serve.ShopNServe.service.UpdateBroadcaster;
 
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 @RestController
 @RequestMapping("/api/blackboard")
 public class BlackboardController {
 
+    private static final Logger log = LoggerFactory.getLogger(BlackboardController.class);
+
+    private static final MediaType NDJSON = MediaType.parseMediaType("application/x-ndjson");
+
     private final BlackboardService blackboardService;
+    private final SessionGraphWriter graphWriter;
+    private final ObjectMapper objectMapper;
+    private final ConnectionGuards guards;
+    private final PinningMonitor pinning;
+    private final boolean virtualThreads;
+    private final UpdateBroadcaster updates;
+    private final SubscribeTickets tickets;
+    private final AuthService authService;
+    private final BlackboardMetrics metrics;
+    private final SessionGraphRetention retention;
+    private final SessionGraphMigration migration;
+    private final BlackboardAnalytics analytics;
+    private final RateLimiter rateLimiter;
+    private final String adminToken;
 
-    public BlackboardController(BlackboardService blackboardService) {
+    public BlackboardController(
+            BlackboardService blackboardService,
+            SessionGraphWriter graphWriter,
+            ObjectMapper objectMapper,
+            ConnectionGuards guards,
+            PinningMonitor pinning,
+            UpdateBroadcaster updates,
+            SubscribeTickets tickets,
+            AuthService authService,
+            BlackboardMetrics metrics,
+            SessionGraphRetention retention,
+            SessionGraphMigration migration,
+            BlackboardAnalytics analytics,
+            RateLimiter rateLimiter,
+            @Value("${spring.threads.virtual.enabled:false}") boolean virtualThreads,
+            @Value("${shopnserve.admin.token:${shopnserve.ratelimit.admin-token:}}") String adminToken
+    ) {
         this.blackboardService = blackboardService;
+        this.graphWriter = graphWriter;
+        this.objectMapper = objectMapper;
+        this.guards = guards;
+        this.pinning = pinning;
+        this.virtualThreads = virtualThreads;
+        this.updates = updates;
+        this.tickets = tickets;
+        this.authService = authService;
+        this.metrics = metrics;
+        this.retention = retention;
+        this.migration = migration;
+        this.analytics = analytics;
+        this.rateLimiter = rateLimiter;
+        this.adminToken = adminToken;
     }
 
     @PostMapping("/messages")
-    public ResponseEntity<BlackboardResponse> postMessage(
+    public ResponseEntity<byte[]> postMessage(
+            @RequestBody MessageEventRequest event,
+            @RequestHeader(value = "Authorization", required = false) String authHeader,
+            HttpServletRequest request
+    ) throws JsonProcessingException {
+        BlackboardMetrics.Timings timings = metrics.start();
+        try {
+            BlackboardResponse resp = blackboardService.handle(event, authHeader, request.getRemoteAddr(), timings);
+            return respond(status(resp), resp, timings);
+        } catch (Exception e) {
+            log.error("Blackboard request failed", e);
+            Map<String, Object> data = new LinkedHashMap<>();
+            data.put("error", "Internal Server Error: " + e.getClass().getSimpleName());
+            data.put("message", String.valueOf(e.getMessage()));
+            if (event != null && event.traceIdOrNull() != null) data.put("traceId", event.traceIdOrNull());
+            return respond(500, new BlackboardResponse(false, data), timings);
+        }
+    }
+
+    /**
+     * Several events in one call; always 200 unless the batch itself is invalid, see {@code data.results}.
+     * Bound as trees so an event that does not decode fails only its own slot.
+     */
+    @PostMapping("/messages/batch")
+    public ResponseEntity<byte[]> postBatch(
+            @RequestBody List<JsonNode> events,
+            @RequestHeader(value = "Authorization", required = false) String authHeader,
+            HttpServletRequest request
+    ) throws JsonProcessingException {
+        BlackboardMetrics.Timings timings = metrics.start();
+        BlackboardResponse resp = blackboardService.handleBatch(events, authHeader, request.getRemoteAddr(), timings);
+        return respond(resp.ok() ? 200 : 400, resp, timings);
+    }
+
+    private static int status(BlackboardResponse resp) {
+        if (resp.ok()) return 200;
+        if (resp.rateLimited()) return 429;
+        if (resp.conflict()) return 409;
+        return resp.retryAfterSeconds() != null ? 503 : 401;
+    }
+
+    // serialised here rather than by MVC, so serialisation is part of Server-Timing
+    private ResponseEntity<byte[]> respond(int status, BlackboardResponse resp, BlackboardMetrics.Timings timings)
+            throws JsonProcessingException {
+        long t0 = System.nanoTime();
+        byte[] body = objectMapper.writeValueAsBytes(resp);
+        timings.record(BlackboardMetrics.SERIALIZE, null, BlackboardMetrics.OK, t0);
+
+        ResponseEntity.BodyBuilder builder = ResponseEntity.status(status)
+                .contentType(MediaType.APPLICATION_JSON)
+                .header("Server-Timing", timings.serverTiming());
+        Integer retryAfter = resp.retryAfterSeconds();
+        if (retryAfter != null) builder.header("Retry-After", retryAfter.toString());
+        return builder.body(body);
+    }
+
+    // payloads are decoded while the body is read, so a bad one never reaches the service
+    @ExceptionHandler(HttpMessageNotReadableException.class)
+    public ResponseEntity<byte[]> unreadable(HttpMessageNotReadableException e) throws JsonProcessingException {
+        BlackboardResponse resp;
+        if (e.getCause() instanceof InvalidPayloadException invalid) {
+            resp = BlackboardService.invalidPayload(invalid, null);
+        } else {
+            Map<String, Object> data = new LinkedHashMap<>();
+            data.put("error", "Malformed request body");
+            if (e.getCause() instanceof JsonProcessingException json) data.put("message", json.getOriginalMessage());
+            resp = new BlackboardResponse(false, data);
+        }
+        return ResponseEntity.badRequest()
+                .contentType(MediaType.APPLICATION_JSON)
+                .body(objectMapper.writeValueAsBytes(resp));
+    }
+
+    // same endpoint, selected by "Accept: application/x-ndjson"; rows are written as they are read
+    @PostMapping(value = "/messages", produces = "application/x-ndjson")
+    public ResponseEntity<StreamingResponseBody> streamMessage(
             @RequestBody MessageEventRequest event,
             @RequestHeader(value = "Authorization", required = false) String authHeader
     ) {
+        BlackboardService.StreamRequest request = blackboardService.openStream(event, authHeader);
+
+        if (request.rejection() != null) {
+            BlackboardResponse rejection = request.rejection();
+            int status = rejection.rateLimited() ? 429 : "Unauthorized".equals(rejection.data().get("error")) ? 401 : 400;
+            ResponseEntity.BodyBuilder builder = ResponseEntity.status(status).contentType(NDJSON);
+            if (rejection.retryAfterSeconds() != null) builder.header("Retry-After", rejection.retryAfterSeconds().toString());
+            return builder.body(out -> {
+                out.write(objectMapper.writeValueAsBytes(rejection));
+                out.write('\n');
+            });
+        }
+
+        return ResponseEntity.ok().contentType(NDJSON).body(out -> blackboardService.stream(request, out));
+    }
+
+    /** Trades the access token for a single-use {@code ticket} to open {@code /subscribe} with. */
+    @PostMapping("/subscribe/ticket")
+    public ResponseEntity<?> subscribeTicket(@RequestHeader(value = "Authorization", required = false) String authHeader) {
+        JwtService.Claims claims = authService.verify(authHeader);
+        if (claims == null) return ResponseEntity.status(401).body(new BlackboardResponse(false, Map.of("error", "Unauthorized")));
+
+        String ticket = tickets.issue(claims);
+        if (ticket == null) return ResponseEntity.status(503).header("Retry-After", "5").build();
+        return ResponseEntity.ok(Map.of("ticket", ticket, "expiresIn", tickets.ttlSeconds()));
+    }
+
+    /**
+     * Server-sent catalog, stock and order updates. EventSource cannot set headers, so instead of the token it
+     * passes a {@code ticket} from {@code POST /subscribe/ticket}; reconnects resume from {@code Last-Event-ID},
+     * or {@code lastEventId} for a client that opens a new EventSource, e.g. after a token refresh.
+     */
+    @GetMapping(value = "/subscribe", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public ResponseEntity<SseEmitter> subscribe(
+            @RequestHeader(value = "Authorization", required = false) String authHeader,
+            @RequestParam(value = "ticket", required = false) String ticket,
+            @RequestHeader(value = "Last-Event-ID", required = false) String lastEventIdHeader,
+            @RequestParam(value = "lastEventId", required = false) String lastEventId
+    ) {
+        JwtService.Claims claims = authHeader != null ? authService.verify(authHeader) : tickets.redeem(ticket);
+        // no body: the declared type must stay SseEmitter for MVC to treat the response as a stream
+        if (claims == null) return ResponseEntity.status(401).build();
+
+        SseEmitter emitter = updates.subscribe(claims, lastEventIdHeader != null ? lastEventIdHeader : lastEventId);
+        if (emitter == null) return ResponseEntity.status(503).header("Retry-After", "30").build();
+        // nginx and friends would otherwise buffer the stream
+        return ResponseEntity.ok().header("X-Accel-Buffering", "no").body(emitter);
+    }
+
+    /**
+     * Request counts, error rate and latency percentiles over the last {@code window} seconds, from in-memory
+     * aggregates; e.g. {@code ?window=3600&capability=OrderPlaced} or {@code ?groupBy=capability,backend}.
+     * Needs {@code X-Admin-Token}.
+     */
+    @GetMapping("/analytics")
+    public ResponseEntity<?> analytics(
+            @RequestHeader(value = "X-Admin-Token", required = false) String token,
+            @RequestParam(value = "window", defaultValue = "3600") long windowSeconds,
+            @RequestParam(value = "groupBy", defaultValue = "capability") List<String> groupBy,
+            @RequestParam(value = "capability", required = false) String capability,
+            @RequestParam(value = "backend", required = false) String backend,
+            @RequestParam(value = "ui", required = false) String ui
+    ) {
+        if (!isAdmin(token)) return forbidden();
+        Set<String> dimensions = new HashSet<>();
+        for (String d : groupBy) {
+            if (d.isBlank()) continue;
+            if (!BlackboardAnalytics.DIMENSIONS.contains(d.trim())) {
+                return ResponseEntity.badRequest().body(new BlackboardResponse(false, Map.of(
+                        "error", "groupBy must be one of " + BlackboardAnalytics.DIMENSIONS + ", got: " + d.trim()
+                )));
+            }
+            dimensions.add(d.trim());
+        }
+        return ResponseEntity.ok(analytics.query(windowSeconds, dimensions, capability, backend, ui));
+    }
+
+    @GetMapping("/subscribe/stats")
+    public ResponseEntity<?> subscribeStats(@RequestHeader(value = "X-Admin-Token", required = false) String token) {
+        if (!isAdmin(token)) return forbidden();
+        return ResponseEntity.ok(updates.stats());
+    }
+
+    @GetMapping("/graph/stats")
+    public ResponseEntity<?> graphStats(@RequestHeader(value = "X-Admin-Token", required = false) String token) {
+        if (!isAdmin(token)) return forbidden();
+        return ResponseEntity.ok(graphWriter.stats());
+    }
+
+    /** Last retention run, empty before the first one. */
+    @GetMapping("/graph/retention")
+    public ResponseEntity<?> graphRetention(@RequestHeader(value = "X-Admin-Token", required = false) String token) {
+        if (!isAdmin(token)) return forbidden();
+        return ResponseEntity.ok(retention.stats());
+    }
+
+    /** Last run of the move to shared dimension nodes, empty before the first one. */
+    @GetMapping("/graph/migration")
+    public ResponseEntity<?> graphMigration(@RequestHeader(value = "X-Admin-Token", required = false) String token) {
+        if (!isAdmin(token)) return forbidden();
+        return ResponseEntity.ok(migration.stats());
+    }
+
+    @GetMapping("/ratelimit")
+    public ResponseEntity<?> rateLimit(@RequestHeader(value = "X-Admin-Token", required = false) String token) {
+        if (!isAdmin(token)) return forbidden();
+        return ResponseEntity.ok(rateLimiter.stats());
+    }
+
+    /** Fields left out keep their value; limits use the same {@code Capability=rate:burst,...} form as the config. */
+    public record RateLimitUpdate(Boolean enabled, String user, String client, String component) {}
+
+    /** Changes the limits without a restart; needs {@code X-Admin-Token}, and is off while no admin token is set. */
+    @PutMapping("/ratelimit")
+    public ResponseEntity<?> updateRateLimit(
+            @RequestHeader(value = "X-Admin-Token", required = false) String token,
+            @RequestBody RateLimitUpdate update
+    ) {
+        if (!isAdmin(token)) return forbidden();
+        RateLimiter.Stats current = rateLimiter.stats();
         try {
-            BlackboardResponse resp = blackboardService.handle(event, authHeader);
-            return resp.ok() ? ResponseEntity.ok(resp) : ResponseEntity.status(401).body(resp);
-        } catch (Exception e) {
-            e.printStackTrace();
-            return ResponseEntity.status(500).body(new BlackboardResponse(false, Map.of(
-                    "error", "Internal Server Error: " + e.getClass().getSimpleName(),
-                    "message", String.valueOf(e.getMessage()),
-                    "traceId", event != null ? event.traceIdOrNull() : null
-            )));
+            rateLimiter.configure(
+                    update.enabled() != null ? update.enabled() : current.enabled(),
+                    new RateLimiter.Limits(
+                            update.user() != null ? RateLimiter.parse(update.user()) : current.limits().user(),
+                            update.client() != null ? RateLimiter.parse(update.client()) : current.limits().client(),
+                            update.component() != null ? RateLimiter.parse(update.component()) : current.limits().component()
+                    )
+            );
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(new BlackboardResponse(false, Map.of("error", String.valueOf(e.getMessage()))));
         }
+        return ResponseEntity.ok(rateLimiter.stats());
+    }
+
+    public record ThreadStats(
+            boolean virtualThreads,
+            ConnectionGuards.Stats mysql,
+            ConnectionGuards.Stats neo4j,
+            PinningMonitor.Stats pinning,
+            PasswordHasher.Stats passwordHashing
+    ) {}
+
+    @GetMapping("/threads/stats")
+    public ResponseEntity<?> threadStats(@RequestHeader(value = "X-Admin-Token", required = false) String token) {
+        if (!isAdmin(token)) return forbidden();
+        return ResponseEntity.ok(new ThreadStats(
+                virtualThreads,
+                guards.jdbc().stats(),
+                guards.neo4j().stats(),
+                pinning.stats(),
+                authService.hasherStats()
+        ));
+    }
+
+    // diagnostics and runtime changes need X-Admin-Token; they are all off while no admin token is set
+    private boolean isAdmin(String token) {
+        return !adminToken.isEmpty() && token != null && MessageDigest.isEqual(
+                adminToken.getBytes(StandardCharsets.UTF_8), token.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static ResponseEntity<BlackboardResponse> forbidden() {
+        return ResponseEntity.status(403).body(new BlackboardResponse(false, Map.of("error", "Forbidden")));
     }
-}
\ No newline at end of file
+}
@@ -1,6 +1,7 @@
 package shop.serve.ShopNServe.handler;
 
 import org.springframework.stereotype.Service;
+import shop.serve.ShopNServe.model.AuthenticationPayload;
 import shop.serve.ShopNServe.model.BlackboardResponse;
 import shop.serve.ShopNServe.model.Capability;
 import shop.serve.ShopNServe.model.MessageEventRequest;
@@ -24,23 +25,34 @@ public class AuthenticationHandler implements CapabilityHandler {
 
     @Override
     public BlackboardResponse handle(MessageEventRequest event) {
-        Map<String, Object> payload = event.payloadAsMap();
-
-        String action = String.valueOf(payload.getOrDefault("action", "login"));
-        String username = String.valueOf(payload.getOrDefault("username", ""));
-        String password = String.valueOf(payload.getOrDefault("password", ""));
-
-        if (username.isBlank() || password.isBlank()) {
+        AuthenticationPayload payload = event.payload(Capability.Authentication, AuthenticationPayload.class);
+        if (payload == null) {
             return new BlackboardResponse(false, Map.of(
                     "error", "username/password required"
             ));
         }
 
-        AuthService.AuthResult result =
-                "register".equalsIgnoreCase(action)
-                        ? authService.register(username, password)
-                        : authService.login(username, password);
+        // required fields per action were checked while the body was parsed
+        return switch (payload.action()) {
+            case AuthenticationPayload.REFRESH -> toResponse(authService.refresh(payload.refreshToken()));
+            case AuthenticationPayload.LOGOUT -> {
+                AuthService.AuthResult result = authService.logout(payload.token(), payload.refreshToken());
+                yield result.success()
+                        ? new BlackboardResponse(true, Map.of("message", result.message()))
+                        : new BlackboardResponse(false, Map.of("error", result.message()));
+            }
+            case AuthenticationPayload.REGISTER -> toResponse(authService.register(payload.username(), payload.password()));
+            default -> toResponse(authService.login(payload.username(), payload.password()));
+        };
+    }
 
+    private BlackboardResponse toResponse(AuthService.AuthResult result) {
+        if (result.busy()) {
+            return new BlackboardResponse(false, Map.of(
+                    "error", result.message(),
+                    BlackboardResponse.RETRY_AFTER_SECONDS, 1
+            ));
+        }
         if (!result.success()) {
             return new BlackboardResponse(false, Map.of(
                     "error", result.message()
@@ -49,7 +61,8 @@ public class AuthenticationHandler implements CapabilityHandler {
 
         return new BlackboardResponse(true, Map.of(
                 "username", result.username(),
-                "token", result.token()
+                "token", result.token(),
+                "refreshToken", result.refreshToken()
         ));
     }
-}
\ No newline at end of file
+}
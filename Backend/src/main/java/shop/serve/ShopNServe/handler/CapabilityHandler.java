@@ -7,4 +7,14 @@ import shop.serve.ShopNServe.model.MessageEventRequest;
 public interface CapabilityHandler {
     Capability capability();
     BlackboardResponse handle(MessageEventRequest event);
+
+    /** {@code subject} is the verified JWT subject, null for unauthenticated capabilities. */
+    default BlackboardResponse handle(MessageEventRequest event, String subject) {
+        return handle(event);
+    }
+
+    /** True if the handler neither writes nor depends on other events of the same batch; such events may run in parallel. */
+    default boolean readOnly() {
+        return false;
+    }
 }
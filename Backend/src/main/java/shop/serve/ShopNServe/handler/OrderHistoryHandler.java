@@ -4,12 +4,19 @@ import org.springframework.stereotype.Component;
 import shop.serve.ShopNServe.model.BlackboardResponse;
 import shop.serve.ShopNServe.model.Capability;
 import shop.serve.ShopNServe.model.MessageEventRequest;
+import shop.serve.ShopNServe.model.OrderHistoryPayload;
 import shop.serve.ShopNServe.service.OrderListService;
 
+import java.io.OutputStream;
+import java.time.format.DateTimeParseException;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 
 @Component
-public class OrderHistoryHandler implements CapabilityHandler {
+public class OrderHistoryHandler implements StreamingCapabilityHandler {
+
+    private static final OrderHistoryPayload NO_PARAMS = new OrderHistoryPayload(null, null, null, null);
 
     private final OrderListService orderListService;
 
@@ -22,12 +29,65 @@ public class OrderHistoryHandler implements CapabilityHandler {
         return Capability.OrderHistory;
     }
 
+    @Override
+    public boolean readOnly() {
+        return true;
+    }
+
     @Override
     public BlackboardResponse handle(MessageEventRequest event) {
+        return new BlackboardResponse(false, Map.of("error", "OrderHistory requires an authenticated user"));
+    }
+
+    @Override
+    public BlackboardResponse handle(MessageEventRequest event, String subject) {
+        if (subject == null || subject.isBlank()) return handle(event);
+
+        OrderHistoryPayload payload = paramsOf(event);
+        int pageSize = payload.pageSizeOrDefault();
+
+        Map<String, Object> data = new LinkedHashMap<>();
+        data.put("action", "OrderHistory");
+
+        if (payload.since() != null) {
+            OrderListService.Delta delta;
+            try {
+                delta = orderListService.listOrdersSince(subject, payload.since(), pageSize);
+            } catch (IllegalArgumentException | DateTimeParseException e) {
+                return new BlackboardResponse(false, Map.of("error", "Invalid cursor: " + payload.since()));
+            }
+            data.put("orders", delta.orders());
+            data.put("since", delta.since());
+            data.put("hasMore", delta.hasMore());
+            return new BlackboardResponse(true, data);
+        }
+
+        String before = payload.before();
+        List<Map<String, Object>> orders;
+        try {
+            orders = orderListService.listOrders(subject, before, pageSize);
+        } catch (IllegalArgumentException | DateTimeParseException e) {
+            return new BlackboardResponse(false, Map.of("error", "Invalid cursor: " + before));
+        }
+
+        data.put("orders", orders);
+        data.put("nextCursor", orders.size() == pageSize ? OrderListService.cursorOf(orders.get(orders.size() - 1)) : null);
+        if (before == null) {
+            // the first page carries the starting point for delta polling; the overlap may repeat its newest orders
+            data.put("since", orderListService.initialSince());
+        }
+        return new BlackboardResponse(true, data);
+    }
+
+    // full history or, with since, everything after the cursor (no next cursor, poll the JSON form for one);
+    // no paging since memory no longer grows with the result
+    @Override
+    public long stream(MessageEventRequest event, String subject, OutputStream out) {
+        return orderListService.streamOrders(subject, paramsOf(event).since(), out);
+    }
 
-        return new BlackboardResponse(true, Map.of(
-                "action", "OrderHistory",
-                "orders", orderListService.listOrders()
-        ));
+    private static OrderHistoryPayload paramsOf(MessageEventRequest event) {
+        OrderHistoryPayload payload = event.payload(Capability.OrderHistory, OrderHistoryPayload.class);
+        return payload != null ? payload : NO_PARAMS;
     }
-}
\ No newline at end of file
+}
@@ -4,10 +4,13 @@ import org.springframework.stereotype.Component;
 import shop.serve.ShopNServe.model.BlackboardResponse;
 import shop.serve.ShopNServe.model.Capability;
 import shop.serve.ShopNServe.model.MessageEventRequest;
+import shop.serve.ShopNServe.model.OrderPlacedPayload;
 import shop.serve.ShopNServe.service.OrderService;
-import com.fasterxml.jackson.databind.ObjectMapper;
-
+import shop.serve.ShopNServe.service.StockReservations;
 
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 
@@ -15,10 +18,11 @@ import java.util.Map;
 public class OrderPlacedHandler implements CapabilityHandler {
 
     private final OrderService orderService;
-    private final ObjectMapper mapper = new ObjectMapper();
+    private final StockReservations stock;
 
-    public OrderPlacedHandler(OrderService orderService) {
+    public OrderPlacedHandler(OrderService orderService, StockReservations stock) {
         this.orderService = orderService;
+        this.stock = stock;
     }
 
     @Override
@@ -28,40 +32,52 @@ public class OrderPlacedHandler implements CapabilityHandler {
 
     @Override
     public BlackboardResponse handle(MessageEventRequest event) {
+        return new BlackboardResponse(false, Map.of("error", "OrderPlaced requires an authenticated user"));
+    }
 
-        Map<String,Object> payload =
-                (Map<String,Object>) event.payload();
-
-        List<Map<String,Object>> items =
-                (List<Map<String,Object>>) payload.get("items");
+    @Override
+    public BlackboardResponse handle(MessageEventRequest event, String username) {
+        if (username == null || username.isBlank()) return handle(event);
 
-        String username = event.sender().component();
+        OrderPlacedPayload payload = event.payload(Capability.OrderPlaced, OrderPlacedPayload.class);
+        if (payload == null) {
+            return new BlackboardResponse(false, Map.of("error", "items required"));
+        }
 
         int totalCents = 0;
-
-        for (Map<String,Object> i : items) {
-
-            Map<String,Object> product =
-                    (Map<String,Object>) i.get("product");
-
-            int price = Integer.parseInt(product.get("price_cents").toString());
-            int qty = Integer.parseInt(i.get("quantity").toString());
-
-            totalCents += price * qty;
+        List<OrderService.OrderLine> lines = new ArrayList<>(payload.items().size());
+        Map<Long, Integer> quantities = new HashMap<>();
+
+        // quantities and prices were checked while the body was parsed
+        for (OrderPlacedPayload.Item item : payload.items()) {
+            OrderPlacedPayload.Product product = item.product();
+            totalCents += product.priceCents() * item.quantity();
+            quantities.merge(product.id(), item.quantity(), Integer::sum);
+            lines.add(new OrderService.OrderLine(product.id(), product.name(), product.priceCents(), item.quantity()));
         }
 
-        String itemsJson;
+        StockReservations.Result reservation = stock.reserve(quantities);
+        if (!reservation.ok()) {
+            Map<String, Object> data = new LinkedHashMap<>();
+            data.put("error", reservation.unknownProduct() ? "Unknown product" : "Insufficient stock");
+            data.put("productId", reservation.productId());
+            data.put("available", reservation.available());
+            // not an authentication failure: the client keeps its session and can change the cart
+            data.put(BlackboardResponse.CONFLICT, true);
+            return new BlackboardResponse(false, data);
+        }
 
+        long orderId;
         try {
-            itemsJson = mapper.writeValueAsString(items);
-        } catch (Exception e) {
-            return new BlackboardResponse(false, Map.of("error", "JSON conversion failed"));
+            orderId = orderService.createOrder(username, totalCents, lines);
+        } catch (RuntimeException e) {
+            stock.release(quantities);
+            throw e;
         }
 
-        orderService.createOrder(username, totalCents, itemsJson);
-
         return new BlackboardResponse(true, Map.of(
-                "message", "Order stored successfully"
+                "message", "Order stored successfully",
+                "orderId", orderId
         ));
     }
 }
\ No newline at end of file
@@ -4,18 +4,26 @@ import org.springframework.stereotype.Component;
 import shop.serve.ShopNServe.model.BlackboardResponse;
 import shop.serve.ShopNServe.model.Capability;
 import shop.serve.ShopNServe.model.MessageEventRequest;
-import shop.serve.ShopNServe.model.ProductEntity;
+import shop.serve.ShopNServe.model.ProductListPayload;
+import shop.serve.ShopNServe.model.ProductSummary;
+import shop.serve.ShopNServe.model.ProductView;
+import shop.serve.ShopNServe.service.ProductCatalog;
 import shop.serve.ShopNServe.service.ProductService;
 
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 
 @Component
 public class ProductListHandler implements CapabilityHandler {
 
+    private static final ProductListPayload NO_PARAMS = new ProductListPayload(null, null, null, null, null);
+
+    private final ProductCatalog catalog;
     private final ProductService productService;
 
-    public ProductListHandler(ProductService productService) {
+    public ProductListHandler(ProductCatalog catalog, ProductService productService) {
+        this.catalog = catalog;
         this.productService = productService;
     }
 
@@ -24,30 +32,56 @@ public class ProductListHandler implements CapabilityHandler {
         return Capability.ProductList;
     }
 
+    @Override
+    public boolean readOnly() {
+        return true;
+    }
+
     @Override
     public BlackboardResponse handle(MessageEventRequest event) {
-        // optional: check action
-        String action = null;
-        try {
-            Object payload = event != null ? event.payload() : null;
-            if (payload instanceof Map<?, ?> m) {
-                Object a = m.get("action");
-                action = a != null ? String.valueOf(a) : null;
-            }
-        } catch (Exception ignored) {}
-
-        if (action != null && !action.equalsIgnoreCase("listProducts")) {
-            return new BlackboardResponse(false, Map.of(
-                    "error", "Unknown action for ProductList: " + action
-            ));
+        ProductListPayload params = event.payload(Capability.ProductList, ProductListPayload.class);
+        if (params == null) params = NO_PARAMS;
+
+        if (params.paged()) {
+            return page(params);
         }
 
-        List<ProductEntity> products = productService.listAll();
+        ProductCatalog.Snapshot snapshot = catalog.snapshot();
+
+        // client already holds this version: skip the list
+        if (params.knownVersion() != null && params.knownVersion() == snapshot.version()) {
+            return new BlackboardResponse(true, Map.of(
+                    "unchanged", true,
+                    "catalogVersion", snapshot.version(),
+                    "backend", "ProductService"
+            ));
+        }
 
         // Frontend erwartet: json.data.productList
         return new BlackboardResponse(true, Map.of(
-                "productList", products,
+                "productList", snapshot.products(),
+                "catalogVersion", snapshot.version(),
                 "backend", "ProductService"
         ));
     }
-}
\ No newline at end of file
+
+    // keyset page, bounds were checked while the body was parsed
+    private BlackboardResponse page(ProductListPayload params) {
+        long after = params.after() != null ? params.after() : 0L;
+        int pageSize = params.pageSize() != null ? params.pageSize() : 0;
+
+        List<?> products = productService.page(after, pageSize, params.fullFields());
+
+        Object nextCursor = null;
+        if (pageSize > 0 && products.size() == pageSize) {
+            Object last = products.get(products.size() - 1);
+            nextCursor = last instanceof ProductView v ? v.id() : ((ProductSummary) last).id();
+        }
+
+        Map<String, Object> data = new LinkedHashMap<>();
+        data.put("productList", products);
+        data.put("nextCursor", nextCursor);
+        data.put("backend", "ProductService");
+        return new BlackboardResponse(true, data);
+    }
+}
@@ -0,0 +1,12 @@
+package shop.serve.ShopNServe.handler;
+
+import shop.serve.ShopNServe.model.MessageEventRequest;
+
+import java.io.OutputStream;
+
+/** A capability that can also write its result incrementally as NDJSON instead of one in-memory response. */
+public interface StreamingCapabilityHandler extends CapabilityHandler {
+
+    /** Writes one JSON object per line to {@code out}; returns the number of lines written. */
+    long stream(MessageEventRequest event, String subject, OutputStream out);
+}
@@ -0,0 +1,39 @@
+package shop.serve.ShopNServe.model;
+
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import com.fasterxml.jackson.annotation.JsonInclude;
+
+/** {action: login | register | refresh | logout, username, password, token, refreshToken}. */
+@JsonIgnoreProperties(ignoreUnknown = true)
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public record AuthenticationPayload(
+        String action,
+        String username,
+        String password,
+        String token,
+        String refreshToken
+) {
+    public static final String LOGIN = "login";
+    public static final String REGISTER = "register";
+    public static final String REFRESH = "refresh";
+    public static final String LOGOUT = "logout";
+
+    public AuthenticationPayload {
+        action = action == null ? LOGIN : action.toLowerCase();
+        switch (action) {
+            case LOGIN, REGISTER -> {
+                if (username == null || username.isBlank() || password == null || password.isBlank()) {
+                    throw new IllegalArgumentException("username/password required");
+                }
+            }
+            case REFRESH -> {
+                if (refreshToken == null || refreshToken.isBlank()) {
+                    throw new IllegalArgumentException("refreshToken required");
+                }
+            }
+            case LOGOUT -> {
+            }
+            default -> throw new IllegalArgumentException("Unknown action for Authentication: " + action);
+        }
+    }
+}
@@ -5,4 +5,30 @@ import java.util.Map;
 public record BlackboardResponse(
         boolean ok,
         Map<String, Object> data
-) {}
+) {
+
+    /** Set in {@code data} by a capability that refused work because it is overloaded. */
+    public static final String RETRY_AFTER_SECONDS = "retryAfterSeconds";
+
+    /** Set in {@code data}, next to {@link #RETRY_AFTER_SECONDS}, when the caller exceeded its rate limit. */
+    public static final String RATE_LIMITED = "rateLimited";
+
+    /**
+     * Set in {@code data} when the request was understood and authorised but conflicts with the current state,
+     * e.g. an order for more units than are in stock.
+     */
+    public static final String CONFLICT = "conflict";
+
+    /** Null unless the request was refused for load and may be retried after that many seconds. */
+    public Integer retryAfterSeconds() {
+        return !ok && data != null && data.get(RETRY_AFTER_SECONDS) instanceof Integer s ? s : null;
+    }
+
+    public boolean rateLimited() {
+        return !ok && data != null && Boolean.TRUE.equals(data.get(RATE_LIMITED));
+    }
+
+    public boolean conflict() {
+        return !ok && data != null && Boolean.TRUE.equals(data.get(CONFLICT));
+    }
+}
@@ -1,9 +1,27 @@
 package shop.serve.ShopNServe.model;
 
 public enum Capability {
-    Authorization,
-    Authentication,
-    ProductList,
-    OrderHistory,
-    OrderPlaced
+    Authorization(Object.class, "AuthService"),
+    Authentication(AuthenticationPayload.class, "AuthService"),
+    ProductList(ProductListPayload.class, "ProductService"),
+    OrderHistory(OrderHistoryPayload.class, "OrderListService"),
+    OrderPlaced(OrderPlacedPayload.class, "OrderService");
+
+    private final Class<?> payloadType;
+    private final String backend;
+
+    Capability(Class<?> payloadType, String backend) {
+        this.payloadType = payloadType;
+        this.backend = backend;
+    }
+
+    /** What {@link MessageEventRequest} decodes the payload into for this capability. */
+    public Class<?> payloadType() {
+        return payloadType;
+    }
+
+    /** The {@code BackendComponent} the session graph records as handling this capability. */
+    public String backend() {
+        return backend;
+    }
 }
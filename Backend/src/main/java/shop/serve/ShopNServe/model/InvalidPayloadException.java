@@ -0,0 +1,51 @@
+package shop.serve.ShopNServe.model;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.databind.JsonMappingException;
+
+import java.util.List;
+
+/** A payload that does not fit the type of one of the requested capabilities; carries the JSON path of the problem. */
+public class InvalidPayloadException extends JsonMappingException {
+
+    private final Capability capability;
+    private final String reason;
+
+    InvalidPayloadException(JsonParser p, Capability capability, JsonMappingException cause) {
+        super(p, "Invalid " + capability.name() + " payload: " + reasonOf(cause), cause);
+        this.capability = capability;
+        this.reason = reasonOf(cause);
+        List<Reference> path = cause.getPath();
+        for (int i = path.size() - 1; i >= 0; i--) prependPath(path.get(i));
+        prependPath(MessageEventRequest.class, "payload");
+    }
+
+    public Capability capability() {
+        return capability;
+    }
+
+    public String reason() {
+        return reason;
+    }
+
+    /** {@code payload.items[0].quantity}. */
+    public String pathString() {
+        StringBuilder sb = new StringBuilder();
+        for (Reference ref : getPath()) {
+            if (ref.getFieldName() != null) {
+                if (!sb.isEmpty()) sb.append('.');
+                sb.append(ref.getFieldName());
+            } else if (ref.getIndex() >= 0) {
+                sb.append('[').append(ref.getIndex()).append(']');
+            }
+        }
+        return sb.toString();
+    }
+
+    // a failed validation in a record constructor is wrapped by Jackson; its own message is the useful part
+    private static String reasonOf(JsonMappingException e) {
+        Throwable cause = e.getCause();
+        if (cause instanceof IllegalArgumentException && cause.getMessage() != null) return cause.getMessage();
+        return e.getOriginalMessage();
+    }
+}
@@ -1,28 +1,65 @@
 package shop.serve.ShopNServe.model;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.annotation.JsonDeserialize;
 
+import java.util.EnumMap;
 import java.util.List;
 import java.util.Map;
 
+/**
+ * One blackboard message. The payload is decoded per requested capability while the body is parsed,
+ * see {@link MessageEventRequestDeserializer}; handlers read their typed view with {@link #payload(Capability, Class)}.
+ * When an event requests several capabilities, a payload that does not fit one of them is kept in
+ * {@link #invalidPayload(Capability)} and only fails that capability.
+ */
+@JsonDeserialize(using = MessageEventRequestDeserializer.class)
 public record MessageEventRequest(
         String traceId,
         Sender sender,
         List<Capability> capabilities,
-        Object payload
+        @JsonIgnore Map<Capability, Object> payloads,
+        @JsonIgnore Map<Capability, InvalidPayloadException> invalidPayloads
 ) {
     private static final ObjectMapper MAPPER = new ObjectMapper();
 
+    public MessageEventRequest {
+        payloads = payloads != null ? payloads : Map.of();
+        invalidPayloads = invalidPayloads != null ? invalidPayloads : Map.of();
+    }
+
+    /**
+     * Builds an event from an in-memory payload (a Map or any bean), decoded as if it had been sent as JSON.
+     * Request bodies never go through here.
+     */
+    public static MessageEventRequest of(String traceId, Sender sender, List<Capability> capabilities, Object payload) {
+        Map<Capability, Object> payloads = new EnumMap<>(Capability.class);
+        if (capabilities != null) {
+            for (Capability cap : capabilities) {
+                payloads.put(cap, MAPPER.convertValue(payload != null ? payload : Map.of(), cap.payloadType()));
+            }
+        }
+        return new MessageEventRequest(traceId, sender, capabilities, payloads, null);
+    }
+
     public String traceIdOrNull() {
         return (traceId == null || traceId.isBlank()) ? null : traceId;
     }
 
-    @SuppressWarnings("unchecked")
-    public Map<String, Object> payloadAsMap() {
-        if (payload == null) return Map.of();
-        if (payload instanceof Map<?, ?> m) return (Map<String, Object>) m;
-        return MAPPER.convertValue(payload, Map.class);
+    /** The payload as decoded for {@code capability}, null if the event does not request it. */
+    public Object payload(Capability capability) {
+        return payloads.get(capability);
+    }
+
+    public <T> T payload(Capability capability, Class<T> type) {
+        return type.cast(payloads.get(capability));
+    }
+
+    /** Why the payload does not fit {@code capability}, null if it decoded (or was not requested). */
+    public InvalidPayloadException invalidPayload(Capability capability) {
+        return invalidPayloads.get(capability);
     }
 
     public record Sender(String component, String application) {}
-}
\ No newline at end of file
+}
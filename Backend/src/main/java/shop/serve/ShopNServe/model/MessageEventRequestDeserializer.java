@@ -0,0 +1,100 @@
+package shop.serve.ShopNServe.model;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.DeserializationContext;
+import com.fasterxml.jackson.databind.JavaType;
+import com.fasterxml.jackson.databind.JsonMappingException;
+import com.fasterxml.jackson.databind.deser.std.StdDeserializer;
+import com.fasterxml.jackson.databind.util.TokenBuffer;
+
+import java.io.IOException;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Reads a {@link MessageEventRequest} in one pass and decodes {@code payload} straight into each requested
+ * capability's {@link Capability#payloadType()}, without building an intermediate Map.
+ * <p>
+ * When {@code capabilities} comes first and names one capability (what the shop sends), the payload is bound
+ * directly from the request stream. Otherwise its tokens are buffered and replayed once per capability.
+ * <p>
+ * A payload that does not fit the only requested capability fails the request. With several capabilities each
+ * one is held to its own payload type: one that does not fit is recorded for that capability alone, so e.g. a
+ * {@code pageSize} above ProductList's limit does not also reject the OrderHistory request next to it.
+ */
+public class MessageEventRequestDeserializer extends StdDeserializer<MessageEventRequest> {
+
+    public MessageEventRequestDeserializer() {
+        super(MessageEventRequest.class);
+    }
+
+    @Override
+    public MessageEventRequest deserialize(JsonParser p, DeserializationContext ctxt) throws IOException {
+        if (!p.isExpectedStartObjectToken()) {
+            return (MessageEventRequest) ctxt.handleUnexpectedToken(MessageEventRequest.class, p);
+        }
+        JavaType capabilitiesType = ctxt.getTypeFactory().constructCollectionType(List.class, Capability.class);
+
+        String traceId = null;
+        MessageEventRequest.Sender sender = null;
+        List<Capability> capabilities = null;
+        Map<Capability, Object> payloads = null;
+        Map<Capability, InvalidPayloadException> invalid = null;
+        TokenBuffer buffered = null;
+
+        for (String name = p.nextFieldName(); name != null; name = p.nextFieldName()) {
+            JsonToken t = p.nextToken();
+            switch (name) {
+                case "traceId" -> traceId = t == JsonToken.VALUE_NULL ? null : ctxt.readValue(p, String.class);
+                case "sender" -> sender = t == JsonToken.VALUE_NULL ? null : ctxt.readValue(p, MessageEventRequest.Sender.class);
+                case "capabilities" -> capabilities = t == JsonToken.VALUE_NULL ? null : ctxt.readValue(p, capabilitiesType);
+                case "payload" -> {
+                    if (t == JsonToken.VALUE_NULL) {
+                        buffered = null;
+                    } else if (capabilities != null && capabilities.size() == 1 && capabilities.get(0) != null) {
+                        payloads = new EnumMap<>(Capability.class);
+                        decode(p, ctxt, capabilities.get(0), payloads);
+                    } else {
+                        buffered = ctxt.bufferAsCopyOfValue(p);
+                    }
+                }
+                default -> p.skipChildren();
+            }
+        }
+
+        if (payloads == null && capabilities != null) {
+            if (buffered == null) {
+                // a missing payload decodes like {}, so required fields are still reported
+                buffered = ctxt.bufferForInputBuffering(p);
+                buffered.writeStartObject();
+                buffered.writeEndObject();
+            }
+            payloads = new EnumMap<>(Capability.class);
+            boolean several = capabilities.stream().filter(c -> c != null).distinct().count() > 1;
+            for (Capability cap : capabilities) {
+                if (cap == null || payloads.containsKey(cap) || (invalid != null && invalid.containsKey(cap))) continue;
+                try (JsonParser replay = buffered.asParserOnFirstToken()) {
+                    decode(replay, ctxt, cap, payloads);
+                } catch (InvalidPayloadException e) {
+                    if (!several) throw e;
+                    if (invalid == null) invalid = new EnumMap<>(Capability.class);
+                    invalid.put(cap, e);
+                }
+            }
+        }
+        return new MessageEventRequest(traceId, sender, capabilities, payloads, invalid);
+    }
+
+    private static void decode(JsonParser p, DeserializationContext ctxt, Capability cap, Map<Capability, Object> out)
+            throws IOException {
+        try {
+            out.put(cap, ctxt.readValue(p, cap.payloadType()));
+        } catch (InvalidPayloadException e) {
+            throw e;
+        } catch (JsonMappingException e) {
+            throw new InvalidPayloadException(p, cap, e);
+        }
+    }
+}
@@ -1,22 +1,38 @@
 package shop.serve.ShopNServe.model;
 
 import jakarta.persistence.*;
+import org.hibernate.annotations.BatchSize;
+
 import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
 
 @Entity
-@Table(name = "orders")
+@Table(name = "orders", indexes = {
+        @Index(name = "idx_orders_user_created_id", columnList = "user_name, created_at, id")
+})
 public class OrderEntity {
 
+    public static final int ID_ALLOCATION_SIZE = 50;
+
+    // pooled sequence instead of IDENTITY: ids are known before insert, so Hibernate can batch
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "orders_seq")
+    @SequenceGenerator(name = "orders_seq", sequenceName = "orders_seq", allocationSize = OrderEntity.ID_ALLOCATION_SIZE)
     private Long id;
 
     private String userName;
     private int totalCents;
 
+    // legacy orders only; new orders keep their lines in order_items
     @Column(columnDefinition = "TEXT")
     private String itemsJson;
 
+    @OneToMany(mappedBy = "order", cascade = CascadeType.ALL, orphanRemoval = true)
+    @OrderBy("id")
+    @BatchSize(size = 50)
+    private List<OrderItemEntity> items = new ArrayList<>();
+
     private Instant createdAt = Instant.now();
 
     public Long getId() { return id; }
@@ -30,5 +46,11 @@ public class OrderEntity {
     public String getItemsJson() { return itemsJson; }
     public void setItemsJson(String itemsJson) { this.itemsJson = itemsJson; }
 
+    public List<OrderItemEntity> getItems() { return items; }
+    public void addItem(OrderItemEntity item) {
+        item.setOrder(this);
+        items.add(item);
+    }
+
     public Instant getCreatedAt() { return createdAt; }
 }
\ No newline at end of file
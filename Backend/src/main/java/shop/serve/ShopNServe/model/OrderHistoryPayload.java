@@ -0,0 +1,27 @@
+package shop.serve.ShopNServe.model;
+
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import com.fasterxml.jackson.annotation.JsonInclude;
+
+/** {pageSize, before: <nextCursor of the previous page>} or {since: <since of the previous response>}. */
+@JsonIgnoreProperties(ignoreUnknown = true)
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public record OrderHistoryPayload(
+        String action,
+        Integer pageSize,
+        String before,
+        String since
+) {
+    public static final int DEFAULT_PAGE_SIZE = 50;
+    public static final int MAX_PAGE_SIZE = 200;
+
+    public OrderHistoryPayload {
+        if (pageSize != null && (pageSize < 1 || pageSize > MAX_PAGE_SIZE)) {
+            throw new IllegalArgumentException("pageSize must be between 1 and " + MAX_PAGE_SIZE);
+        }
+    }
+
+    public int pageSizeOrDefault() {
+        return pageSize != null ? pageSize : DEFAULT_PAGE_SIZE;
+    }
+}
@@ -0,0 +1,51 @@
+package shop.serve.ShopNServe.model;
+
+import jakarta.persistence.*;
+
+@Entity
+@Table(name = "order_items", indexes = {
+        @Index(name = "idx_order_items_product", columnList = "product_id")
+})
+public class OrderItemEntity {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "order_items_seq")
+    @SequenceGenerator(name = "order_items_seq", sequenceName = "order_items_seq", allocationSize = 50)
+    private Long id;
+
+    @ManyToOne(fetch = FetchType.LAZY, optional = false)
+    @JoinColumn(name = "order_id", nullable = false)
+    private OrderEntity order;
+
+    @Column(name = "product_id", nullable = false)
+    private Long productId;
+
+    // name at time of purchase, so the history does not change when the catalog does
+    @Column(name = "product_name")
+    private String productName;
+
+    @Column(name = "unit_price_cents", nullable = false)
+    private int unitPriceCents;
+
+    @Column(nullable = false)
+    private int quantity;
+
+    public OrderItemEntity() {}
+
+    public OrderItemEntity(Long productId, String productName, int unitPriceCents, int quantity) {
+        this.productId = productId;
+        this.productName = productName;
+        this.unitPriceCents = unitPriceCents;
+        this.quantity = quantity;
+    }
+
+    public Long getId() { return id; }
+
+    public OrderEntity getOrder() { return order; }
+    void setOrder(OrderEntity order) { this.order = order; }
+
+    public Long getProductId() { return productId; }
+    public String getProductName() { return productName; }
+    public int getUnitPriceCents() { return unitPriceCents; }
+    public int getQuantity() { return quantity; }
+}
@@ -0,0 +1,41 @@
+package shop.serve.ShopNServe.model;
+
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+import java.util.List;
+
+/** The cart as the shop sends it; {@code total_cents} is informational, the backend computes its own. */
+@JsonIgnoreProperties(ignoreUnknown = true)
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public record OrderPlacedPayload(
+        List<Item> items,
+        @JsonProperty("total_cents") Integer totalCents
+) {
+    public OrderPlacedPayload {
+        if (items == null || items.isEmpty()) throw new IllegalArgumentException("items required");
+        items = List.copyOf(items);
+    }
+
+    @JsonIgnoreProperties(ignoreUnknown = true)
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    public record Item(Product product, @JsonProperty(required = true) int quantity) {
+        public Item {
+            if (product == null) throw new IllegalArgumentException("product required");
+            if (quantity <= 0) throw new IllegalArgumentException("quantity must be positive");
+        }
+    }
+
+    @JsonIgnoreProperties(ignoreUnknown = true)
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    public record Product(
+            @JsonProperty(required = true) long id,
+            String name,
+            @JsonProperty(value = "price_cents", required = true) int priceCents
+    ) {
+        public Product {
+            if (priceCents < 0) throw new IllegalArgumentException("price_cents must not be negative");
+        }
+    }
+}
@@ -1,9 +1,11 @@
 package shop.serve.ShopNServe.model;
 
 import jakarta.persistence.*;
+import shop.serve.ShopNServe.service.ProductChangeListener;
 
 @Entity
 @Table(name = "products")
+@EntityListeners(ProductChangeListener.class)
 public class ProductEntity {
 
     @Id
@@ -0,0 +1,40 @@
+package shop.serve.ShopNServe.model;
+
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import com.fasterxml.jackson.annotation.JsonInclude;
+
+/**
+ * Either the whole catalog, skipped if {@code knownVersion} is current, or a keyset page:
+ * {pageSize, after: <last id seen>, fields: "summary" (no description) | "full"}.
+ */
+@JsonIgnoreProperties(ignoreUnknown = true)
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public record ProductListPayload(
+        String action,
+        Long knownVersion,
+        Integer pageSize,
+        Long after,
+        String fields
+) {
+    public static final int MAX_PAGE_SIZE = 500;
+
+    public ProductListPayload {
+        if (action != null && !action.equalsIgnoreCase("listProducts")) {
+            throw new IllegalArgumentException("Unknown action for ProductList: " + action);
+        }
+        if (pageSize != null && (pageSize < 0 || pageSize > MAX_PAGE_SIZE)) {
+            throw new IllegalArgumentException("pageSize must be between 0 (no limit) and " + MAX_PAGE_SIZE);
+        }
+        if (fields != null && !fields.equalsIgnoreCase("full") && !fields.equalsIgnoreCase("summary")) {
+            throw new IllegalArgumentException("fields must be 'full' or 'summary'");
+        }
+    }
+
+    public boolean paged() {
+        return pageSize != null || after != null || fields != null;
+    }
+
+    public boolean fullFields() {
+        return fields == null || fields.equalsIgnoreCase("full");
+    }
+}
@@ -0,0 +1,9 @@
+package shop.serve.ShopNServe.model;
+
+/** Product without its description; used as a query projection so the TEXT column is never read. */
+public record ProductSummary(
+        Long id,
+        String name,
+        Integer priceCents,
+        Integer stock
+) {}
@@ -0,0 +1,14 @@
+package shop.serve.ShopNServe.model;
+
+/** Immutable copy of a product row; serialises exactly like {@link ProductEntity}. */
+public record ProductView(
+        Long id,
+        String name,
+        Integer priceCents,
+        String description,
+        Integer stock
+) {
+    public static ProductView of(ProductEntity p) {
+        return new ProductView(p.getId(), p.getName(), p.getPriceCents(), p.getDescription(), p.getStock());
+    }
+}
@@ -1,6 +1,31 @@
 package shop.serve.ShopNServe.repository;
 
+import org.springframework.data.domain.Limit;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
 import shop.serve.ShopNServe.model.OrderEntity;
 
-public interface OrderRepository extends JpaRepository<OrderEntity, Long> {}
\ No newline at end of file
+import java.time.Instant;
+import java.util.List;
+
+// all per-user lookups are served by idx_orders_user_created_id (user_name, created_at, id)
+public interface OrderRepository extends JpaRepository<OrderEntity, Long> {
+
+    List<OrderEntity> findByUserNameOrderByCreatedAtDescIdDesc(String userName, Limit limit);
+
+    @Query("""
+            select o from OrderEntity o
+            where o.userName = :userName
+              and (o.createdAt < :createdAt or (o.createdAt = :createdAt and o.id < :id))
+            order by o.createdAt desc, o.id desc
+            """)
+    List<OrderEntity> findOlderThan(String userName, Instant createdAt, long id, Limit limit);
+
+    @Query("""
+            select o from OrderEntity o
+            where o.userName = :userName
+              and (o.createdAt > :createdAt or (o.createdAt = :createdAt and o.id > :id))
+            order by o.createdAt asc, o.id asc
+            """)
+    List<OrderEntity> findNewerThan(String userName, Instant createdAt, long id, Limit limit);
+}
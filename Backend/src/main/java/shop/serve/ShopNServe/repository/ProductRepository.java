@@ -1,7 +1,41 @@
 package shop.serve.ShopNServe.repository;
 
+import org.springframework.data.domain.Limit;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
 import shop.serve.ShopNServe.model.ProductEntity;
 
+import java.util.List;
+
 public interface ProductRepository extends JpaRepository<ProductEntity, Long> {
-}
\ No newline at end of file
+
+    interface CatalogVersion {
+        long getRowCount();
+        long getUpdatedMicros();
+    }
+
+    // both answered from idx_products_updated; the count catches deletes, MAX(updated_at) inserts and updates
+    @Query(value = """
+            SELECT COUNT(*) AS rowCount,
+                   COALESCE(CAST(UNIX_TIMESTAMP(MAX(updated_at)) * 1000000 AS SIGNED), 0) AS updatedMicros
+            FROM products
+            """, nativeQuery = true)
+    CatalogVersion catalogVersion();
+
+    interface CatalogFingerprint {
+        long getRowCount();
+        long getChecksum();
+    }
+
+    // full scan, one row back; only a rare fallback for writes that set updated_at themselves.
+    // stock is left out, it changes with every sale and has its own events (StockReservations.Changed)
+    @Query(value = """
+            SELECT COUNT(*) AS rowCount,
+                   COALESCE(BIT_XOR(CRC32(CONCAT_WS('|', id, name, price_cents, description))), 0) AS checksum
+            FROM products
+            """, nativeQuery = true)
+    CatalogFingerprint fingerprint();
+
+    // keyset page; type is ProductView or ProductSummary, only its columns are selected
+    <T> List<T> findByIdGreaterThanOrderByIdAsc(long afterId, Limit limit, Class<T> type);
+}
@@ -0,0 +1,14 @@
+package shop.serve.ShopNServe.repository;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import shop.serve.ShopNServe.model.UserEntity;
+
+import java.util.Optional;
+
+// served by uk_users_username
+public interface UserRepository extends JpaRepository<UserEntity, Long> {
+
+    Optional<UserEntity> findByUsername(String username);
+
+    boolean existsByUsername(String username);
+}
@@ -1,41 +1,148 @@
 package shop.serve.ShopNServe.service;
 
+import jakarta.annotation.PostConstruct;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataIntegrityViolationException;
 import org.springframework.stereotype.Service;
+import shop.serve.ShopNServe.model.UserEntity;
+import shop.serve.ShopNServe.repository.UserRepository;
 
-import java.util.concurrent.ConcurrentHashMap;
+import java.nio.charset.StandardCharsets;
+import java.util.Optional;
 
+/**
+ * Users live in MySQL with BCrypt hashes. Hashing runs on {@link PasswordHasher}'s bounded pool and never
+ * inside a transaction, so a slow login holds no connection. When the pool is saturated the result is
+ * {@code busy} and the caller is asked to retry.
+ */
 @Service
 public class AuthService {
 
-    private final ConcurrentHashMap<String, String> users = new ConcurrentHashMap<>();
+    private static final Logger log = LoggerFactory.getLogger(AuthService.class);
+
+    // BCrypt ignores everything after 72 bytes
+    private static final int MAX_PASSWORD_BYTES = 72;
+    private static final int MAX_USERNAME_LENGTH = 100;
+
     private final JwtService jwtService;
+    private final UserRepository users;
+    private final PasswordHasher hasher;
+    private final String demoUser;
 
-    public AuthService(JwtService jwtService) {
+    public AuthService(
+            JwtService jwtService,
+            UserRepository users,
+            PasswordHasher hasher,
+            @Value("${shopnserve.auth.demo-user:demo:demo}") String demoUser
+    ) {
         this.jwtService = jwtService;
-        users.put("demo", "demo");
+        this.users = users;
+        this.hasher = hasher;
+        this.demoUser = demoUser;
+    }
+
+    /** Creates the {@code user:password} demo account if it is configured and missing. */
+    @PostConstruct
+    public void seedDemoUser() {
+        int sep = demoUser.indexOf(':');
+        if (sep <= 0) return;
+        String username = demoUser.substring(0, sep);
+        try {
+            if (!users.existsByUsername(username)) {
+                users.save(new UserEntity(username, hasher.hashNow(demoUser.substring(sep + 1))));
+                log.info("Demo user '{}' created", username);
+            }
+        } catch (Exception e) {
+            log.warn("Could not create demo user: {}", e.getMessage());
+        }
     }
 
     public AuthResult login(String username, String password) {
-        String pw = users.get(username);
-        if (pw == null || !pw.equals(password)) {
-            return new AuthResult(false, null, null, "Invalid credentials");
+        Optional<UserEntity> user = users.findByUsername(username);
+        try {
+            if (!hasher.matches(password, user.map(UserEntity::getPasswordHash).orElse(null))) {
+                return failure("Invalid credentials");
+            }
+        } catch (PasswordHasher.BusyException e) {
+            return busy();
         }
-        String token = jwtService.generate(username);
-        return new AuthResult(true, username, token, "ok");
+        return issue(username, "ok");
     }
 
     public AuthResult register(String username, String password) {
-        if (users.containsKey(username)) {
-            return new AuthResult(false, null, null, "User already exists");
+        if (username.length() > MAX_USERNAME_LENGTH) {
+            return failure("Username must be at most " + MAX_USERNAME_LENGTH + " characters");
+        }
+        if (password.getBytes(StandardCharsets.UTF_8).length > MAX_PASSWORD_BYTES) {
+            return failure("Password must be at most " + MAX_PASSWORD_BYTES + " bytes");
+        }
+        // checked first so taken names cost no hash
+        if (users.existsByUsername(username)) {
+            return failure("User already exists");
         }
-        users.put(username, password);
-        String token = jwtService.generate(username);
-        return new AuthResult(true, username, token, "registered");
+
+        String hash;
+        try {
+            hash = hasher.hash(password);
+        } catch (PasswordHasher.BusyException e) {
+            return busy();
+        }
+        try {
+            users.save(new UserEntity(username, hash));
+        } catch (DataIntegrityViolationException e) {
+            // registered concurrently, uk_users_username decided
+            return failure("User already exists");
+        }
+        return issue(username, "registered");
+    }
+
+    /** Rotates a refresh token: the presented one is revoked and a new access/refresh pair is issued. */
+    public AuthResult refresh(String refreshToken) {
+        JwtService.Claims claims = jwtService.verifyRefresh(refreshToken);
+        if (claims == null || !jwtService.revoke(refreshToken)) {
+            return failure("Invalid refresh token");
+        }
+        return issue(claims.subject(), "refreshed");
+    }
+
+    public AuthResult logout(String accessToken, String refreshToken) {
+        boolean revoked = jwtService.revoke(accessToken);
+        revoked |= jwtService.revoke(refreshToken);
+        return revoked
+                ? new AuthResult(true, null, null, null, "logged out", false)
+                : failure("No valid token to revoke");
     }
 
     public boolean validate(String authHeaderOrToken) {
         return jwtService.validate(authHeaderOrToken);
     }
 
-    public record AuthResult(boolean success, String username, String token, String message) {}
-}
\ No newline at end of file
+    public JwtService.Claims verify(String authHeaderOrToken) {
+        return jwtService.verify(authHeaderOrToken);
+    }
+
+    public String subject(String authHeaderOrToken) {
+        return jwtService.subject(authHeaderOrToken);
+    }
+
+    private AuthResult issue(String username, String message) {
+        return new AuthResult(true, username, jwtService.generate(username), jwtService.generateRefresh(username), message, false);
+    }
+
+    private static AuthResult failure(String message) {
+        return new AuthResult(false, null, null, null, message, false);
+    }
+
+    private static AuthResult busy() {
+        return new AuthResult(false, null, null, null, "Too many logins in progress, try again shortly", true);
+    }
+
+    public PasswordHasher.Stats hasherStats() {
+        return hasher.stats();
+    }
+
+    /** {@code busy}: refused without checking the credentials because hashing is saturated. */
+    public record AuthResult(boolean success, String username, String token, String refreshToken, String message, boolean busy) {}
+}
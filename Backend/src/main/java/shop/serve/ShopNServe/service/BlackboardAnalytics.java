@@ -0,0 +1,258 @@
+package shop.serve.ShopNServe.service;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Rolling in-memory aggregates of handled capabilities, so dashboards never have to scan the session graph.
+ * <p>
+ * Time is cut into buckets of {@code bucket-seconds}, and a ring keeps the last {@code buckets} of them. Each
+ * bucket holds, per capability, backend and UI component, the request and failure counts and a latency sketch.
+ * The sketch is a log-linear histogram with 8 sub-buckets per power of two, so a percentile is at most 1/16 off,
+ * and it costs a fixed 1.6 KB. Recording takes a map lookup and a few atomic increments. A query merges the
+ * buckets in its window. {@link BlackboardAnalyticsSnapshots} writes completed buckets to Neo4j if enabled.
+ */
+@Component
+public class BlackboardAnalytics {
+
+    public record Key(String capability, String backend, String ui) {}
+
+    public record Row(
+            String capability,
+            String backend,
+            String ui,
+            long requests,
+            long failures,
+            double errorRate,
+            Double p50Ms,
+            Double p95Ms,
+            Double p99Ms,
+            Double maxMs
+    ) {}
+
+    public record Report(Instant from, Instant to, int bucketSeconds, List<Row> rows) {}
+
+    /** One completed bucket, as written by the snapshots. */
+    public record BucketRows(Instant start, List<Row> rows) {}
+
+    public static final Set<String> DIMENSIONS = Set.of("capability", "backend", "ui");
+
+    private final int bucketSeconds;
+    private final AtomicReferenceArray<Bucket> ring;
+
+    public BlackboardAnalytics(
+            @Value("${shopnserve.analytics.bucket-seconds:60}") int bucketSeconds,
+            @Value("${shopnserve.analytics.buckets:60}") int buckets
+    ) {
+        this.bucketSeconds = Math.max(1, bucketSeconds);
+        this.ring = new AtomicReferenceArray<>(Math.max(2, buckets));
+    }
+
+    public int bucketSeconds() {
+        return bucketSeconds;
+    }
+
+    /** Records every capability step of a handled message; never throws. */
+    public void record(SessionGraphIngestService.MessageTrace trace) {
+        for (SessionGraphIngestService.CapabilityTrace step : trace.steps()) {
+            Instant end = step.failedAt() != null ? step.failedAt() : step.completedAt();
+            long micros = end == null ? -1 : Math.max(0, Duration.between(step.requestedAt(), end).toNanos() / 1000);
+            record(new Key(step.capability().name(), step.backend(), trace.uiName()),
+                    step.requestedAt(), step.failedAt() != null, micros);
+        }
+    }
+
+    /** {@code micros} below zero for a request that never finished; it counts but has no latency. */
+    public void record(Key key, Instant at, boolean failed, long micros) {
+        Bucket bucket = bucket(at.getEpochSecond() / bucketSeconds);
+        if (bucket == null) return;
+        Cell cell = bucket.cells.get(key);
+        if (cell == null) cell = bucket.cells.computeIfAbsent(key, k -> new Cell());
+        cell.requests.increment();
+        if (failed) cell.failures.increment();
+        if (micros >= 0) cell.latency.record(micros);
+    }
+
+    /**
+     * Aggregates the last {@code windowSeconds} (at most the ring) grouped by {@code groupBy}, a subset of
+     * {@link #DIMENSIONS}; dimensions not grouped by come back null. Null filters match everything.
+     */
+    public Report query(long windowSeconds, Set<String> groupBy, String capability, String backend, String ui) {
+        long now = Instant.now().getEpochSecond() / bucketSeconds;
+        long span = Math.min(ring.length(), Math.max(1, (windowSeconds + bucketSeconds - 1) / bucketSeconds));
+        long first = now - span + 1;
+
+        Map<Key, Merged> groups = new HashMap<>();
+        for (long index = first; index <= now; index++) {
+            Bucket b = ring.get(slot(index));
+            if (b == null || b.index != index) continue;
+            b.cells.forEach((key, cell) -> {
+                if (!matches(key, capability, backend, ui)) return;
+                Key group = new Key(
+                        groupBy.contains("capability") ? key.capability() : null,
+                        groupBy.contains("backend") ? key.backend() : null,
+                        groupBy.contains("ui") ? key.ui() : null
+                );
+                groups.computeIfAbsent(group, g -> new Merged()).add(cell);
+            });
+        }
+
+        List<Row> rows = new ArrayList<>(groups.size());
+        groups.forEach((key, merged) -> rows.add(merged.row(key)));
+        rows.sort(Comparator.comparingLong(Row::requests).reversed());
+        return new Report(
+                Instant.ofEpochSecond(first * bucketSeconds),
+                Instant.ofEpochSecond((now + 1) * bucketSeconds),
+                bucketSeconds,
+                rows
+        );
+    }
+
+    /**
+     * Buckets started after {@code after} (exclusive), oldest first, ungrouped. Only buckets that ended at
+     * least one bucket ago, so requests that started in them have had time to finish.
+     */
+    public List<BucketRows> completedSince(Instant after) {
+        long current = Instant.now().getEpochSecond() / bucketSeconds;
+        List<BucketRows> out = new ArrayList<>();
+        for (long index = current - ring.length() + 1; index < current - 1; index++) {
+            Bucket b = ring.get(slot(index));
+            if (b == null || b.index != index) continue;
+            Instant start = Instant.ofEpochSecond(index * bucketSeconds);
+            if (after != null && !start.isAfter(after)) continue;
+
+            List<Row> rows = new ArrayList<>(b.cells.size());
+            b.cells.forEach((key, cell) -> {
+                Merged m = new Merged();
+                m.add(cell);
+                rows.add(m.row(key));
+            });
+            out.add(new BucketRows(start, rows));
+        }
+        return out;
+    }
+
+    private static boolean matches(Key key, String capability, String backend, String ui) {
+        return (capability == null || capability.equals(key.capability()))
+                && (backend == null || backend.equals(key.backend()))
+                && (ui == null || ui.equals(key.ui()));
+    }
+
+    private int slot(long index) {
+        return (int) Math.floorMod(index, (long) ring.length());
+    }
+
+    // null for a record older than the ring, e.g. a very slow request finishing after its bucket was reused
+    private Bucket bucket(long index) {
+        int slot = slot(index);
+        while (true) {
+            Bucket b = ring.get(slot);
+            if (b != null && b.index == index) return b;
+            if (b != null && b.index > index) return null;
+            Bucket fresh = new Bucket(index);
+            if (ring.compareAndSet(slot, b, fresh)) return fresh;
+        }
+    }
+
+    private static final class Bucket {
+        final long index;
+        final Map<Key, Cell> cells = new ConcurrentHashMap<>();
+
+        Bucket(long index) {
+            this.index = index;
+        }
+    }
+
+    private static final class Cell {
+        final LongAdder requests = new LongAdder();
+        final LongAdder failures = new LongAdder();
+        final LatencySketch latency = new LatencySketch();
+    }
+
+    private static final class Merged {
+        long requests;
+        long failures;
+        final long[] counts = new long[LatencySketch.SIZE];
+        long max = -1;
+
+        void add(Cell cell) {
+            requests += cell.requests.sum();
+            failures += cell.failures.sum();
+            max = Math.max(max, cell.latency.max.get());
+            for (int i = 0; i < counts.length; i++) counts[i] += cell.latency.counts.get(i);
+        }
+
+        Row row(Key key) {
+            long n = 0;
+            for (long c : counts) n += c;
+            return new Row(
+                    key.capability(),
+                    key.backend(),
+                    key.ui(),
+                    requests,
+                    failures,
+                    requests == 0 ? 0 : (double) failures / requests,
+                    percentile(n, 0.50),
+                    percentile(n, 0.95),
+                    percentile(n, 0.99),
+                    max < 0 ? null : max / 1000.0
+            );
+        }
+
+        private Double percentile(long n, double q) {
+            if (n == 0) return null;
+            long rank = Math.max(1, (long) Math.ceil(q * n));
+            long seen = 0;
+            for (int i = 0; i < counts.length; i++) {
+                seen += counts[i];
+                if (seen >= rank) return Math.min(LatencySketch.midpoint(i), max) / 1000.0;
+            }
+            return max / 1000.0;
+        }
+    }
+
+    /** Microsecond latencies in log-linear buckets: exact below 8 µs, 8 sub-buckets per power of two above. */
+    static final class LatencySketch {
+        private static final int SUB_BITS = 3;
+        private static final int SUB = 1 << SUB_BITS;
+        // about 134 s; anything slower lands in the last bucket, max still has the exact value
+        private static final long LIMIT = (1L << 27) - 1;
+        static final int SIZE = index(LIMIT) + 1;
+
+        final AtomicLongArray counts = new AtomicLongArray(SIZE);
+        final AtomicLong max = new AtomicLong(-1);
+
+        void record(long micros) {
+            counts.incrementAndGet(index(Math.min(micros, LIMIT)));
+            max.accumulateAndGet(micros, Math::max);
+        }
+
+        static int index(long v) {
+            if (v < SUB) return (int) v;
+            int e = 63 - Long.numberOfLeadingZeros(v);
+            return (e - SUB_BITS + 1) * SUB + (int) ((v >>> (e - SUB_BITS)) & (SUB - 1));
+        }
+
+        static long midpoint(int i) {
+            if (i < SUB) return i;
+            int e = i / SUB + SUB_BITS - 1;
+            long width = 1L << (e - SUB_BITS);
+            long lower = (SUB + i % SUB) * width;
+            return lower + width / 2;
+        }
+    }
+}
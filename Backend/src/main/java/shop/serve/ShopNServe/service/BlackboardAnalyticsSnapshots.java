@@ -0,0 +1,103 @@
+package shop.serve.ShopNServe.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.neo4j.core.Neo4jClient;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import shop.serve.ShopNServe.config.ConnectionGuards;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Optionally persists the completed {@link BlackboardAnalytics} buckets as {@code AnalyticsBucket} nodes, one per
+ * bucket, capability, backend and UI component, so history outlives the in-memory ring and a restart. Writes are
+ * MERGEs, so buckets written again after a restart just overwrite themselves. The retention job removes them with
+ * the rest of the old graph data.
+ */
+@Component
+public class BlackboardAnalyticsSnapshots {
+
+    private static final Logger log = LoggerFactory.getLogger(BlackboardAnalyticsSnapshots.class);
+
+    private static final String WRITE = """
+        UNWIND $rows AS row
+        MERGE (a:AnalyticsBucket {start: datetime(row.start), capability: row.capability, backend: row.backend, ui: row.ui})
+        SET a.seconds = row.seconds,
+            a.requests = row.requests,
+            a.failures = row.failures,
+            a.p50Ms = row.p50Ms,
+            a.p95Ms = row.p95Ms,
+            a.p99Ms = row.p99Ms,
+            a.maxMs = row.maxMs,
+            a.writtenAt = datetime()
+    """;
+
+    private final BlackboardAnalytics analytics;
+    private final Neo4jClient neo4j;
+    private final ConnectionGuards.Guard neo4jGuard;
+    private final boolean enabled;
+    private volatile Instant lastWritten;
+
+    public BlackboardAnalyticsSnapshots(
+            BlackboardAnalytics analytics,
+            Neo4jClient neo4j,
+            ConnectionGuards guards,
+            @Value("${shopnserve.analytics.snapshot.enabled:false}") boolean enabled
+    ) {
+        this.analytics = analytics;
+        this.neo4j = neo4j;
+        this.neo4jGuard = guards.neo4j();
+        this.enabled = enabled;
+    }
+
+    @Scheduled(
+            initialDelayString = "${shopnserve.analytics.snapshot.period-ms:300000}",
+            fixedDelayString = "${shopnserve.analytics.snapshot.period-ms:300000}"
+    )
+    public void scheduled() {
+        if (enabled) write();
+    }
+
+    /** Writes every completed bucket not written yet; returns the number of rows. */
+    public int write() {
+        List<BlackboardAnalytics.BucketRows> buckets = analytics.completedSince(lastWritten);
+        if (buckets.isEmpty()) return 0;
+
+        List<Map<String, Object>> rows = new ArrayList<>();
+        for (BlackboardAnalytics.BucketRows bucket : buckets) {
+            for (BlackboardAnalytics.Row r : bucket.rows()) {
+                // HashMap, percentiles are null without finished requests
+                Map<String, Object> row = new HashMap<>();
+                row.put("start", bucket.start().toString());
+                row.put("seconds", analytics.bucketSeconds());
+                row.put("capability", r.capability());
+                row.put("backend", r.backend() == null ? "unknown" : r.backend());
+                row.put("ui", r.ui() == null ? "unknown" : r.ui());
+                row.put("requests", r.requests());
+                row.put("failures", r.failures());
+                row.put("p50Ms", r.p50Ms());
+                row.put("p95Ms", r.p95Ms());
+                row.put("p99Ms", r.p99Ms());
+                row.put("maxMs", r.maxMs());
+                rows.add(row);
+            }
+        }
+
+        try {
+            if (!rows.isEmpty()) {
+                neo4jGuard.run(() -> neo4j.query(WRITE).bindAll(Map.of("rows", rows)).run());
+            }
+            lastWritten = buckets.get(buckets.size() - 1).start();
+            return rows.size();
+        } catch (Exception e) {
+            log.warn("Could not write analytics snapshot, retrying next run: {}", e.getMessage());
+            return 0;
+        }
+    }
+}
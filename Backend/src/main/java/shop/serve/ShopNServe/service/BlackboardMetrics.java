@@ -0,0 +1,87 @@
+package shop.serve.ShopNServe.service;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.stereotype.Component;
+
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Per-phase timers for blackboard requests, exported as {@code blackboard.phase} with phase, capability and
+ * outcome tags (histogram buckets are switched on in application.yml).
+ * <p>
+ * A {@link Timings} collects the phases of one request, possibly from several threads, and renders them as a
+ * {@code Server-Timing} header. Timers are cached per tag combination, so recording a phase is two
+ * {@code nanoTime} calls, a map lookup and a lock-free histogram update.
+ */
+@Component
+public class BlackboardMetrics {
+
+    public static final String AUTH = "auth";
+    public static final String HANDLER = "handler";
+    public static final String GRAPH = "graph";
+    public static final String SERIALIZE = "serialize";
+
+    public static final String OK = "ok";
+    public static final String ERROR = "error";
+
+    private record Key(String phase, String capability, String outcome) {}
+
+    private record Phase(String name, long nanos) {}
+
+    public final class Timings {
+        private final long startNanos = System.nanoTime();
+        private final ConcurrentLinkedQueue<Phase> phases = new ConcurrentLinkedQueue<>();
+
+        /** {@code capability} may be null for phases that are not capability specific. */
+        public void record(String phase, String capability, String outcome, long startedAtNanos) {
+            long nanos = System.nanoTime() - startedAtNanos;
+            timer(phase, capability, outcome).record(nanos, TimeUnit.NANOSECONDS);
+            phases.add(new Phase(capability == null ? phase : phase + "-" + capability, nanos));
+        }
+
+        /** e.g. {@code auth;dur=0.21, handler-ProductList;dur=3.05, graph;dur=4.80, total;dur=8.31} */
+        public String serverTiming() {
+            Map<String, Long> sums = new LinkedHashMap<>();
+            for (Phase p : phases) sums.merge(p.name(), p.nanos(), Long::sum);
+
+            StringBuilder sb = new StringBuilder();
+            sums.forEach((name, nanos) -> append(sb, name, nanos));
+            append(sb, "total", System.nanoTime() - startNanos);
+            return sb.toString();
+        }
+
+        private void append(StringBuilder sb, String name, long nanos) {
+            if (!sb.isEmpty()) sb.append(", ");
+            sb.append(name).append(";dur=").append(String.format(Locale.ROOT, "%.2f", nanos / 1_000_000.0));
+        }
+    }
+
+    private final MeterRegistry registry;
+    private final Map<Key, Timer> timers = new ConcurrentHashMap<>();
+
+    public BlackboardMetrics(MeterRegistry registry) {
+        this.registry = registry;
+    }
+
+    public Timings start() {
+        return new Timings();
+    }
+
+    private Timer timer(String phase, String capability, String outcome) {
+        Key key = new Key(phase, capability == null ? "none" : capability, outcome);
+        Timer timer = timers.get(key);
+        if (timer != null) return timer;
+        return timers.computeIfAbsent(key, k -> Timer.builder("blackboard.phase")
+                .description("Time spent per phase of a blackboard request")
+                .tag("phase", k.phase())
+                .tag("capability", k.capability())
+                .tag("outcome", k.outcome())
+                .register(registry));
+    }
+}
@@ -1,37 +1,323 @@
 package shop.serve.ShopNServe.service;
 
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 import shop.serve.ShopNServe.handler.CapabilityHandler;
+import shop.serve.ShopNServe.handler.StreamingCapabilityHandler;
 import shop.serve.ShopNServe.model.BlackboardResponse;
 import shop.serve.ShopNServe.model.Capability;
+import shop.serve.ShopNServe.model.InvalidPayloadException;
 import shop.serve.ShopNServe.model.MessageEventRequest;
 
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.EnumMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
 
 @Service
 public class BlackboardService {
 
+    private static final Logger log = LoggerFactory.getLogger(BlackboardService.class);
+
     private final Map<Capability, CapabilityHandler> handlers = new EnumMap<>(Capability.class);
     private final AuthService authService;
     private final SessionGraphIngestService sessionGraph;
+    private final BlackboardMetrics metrics;
+    private final BlackboardAnalytics analytics;
+    private final RateLimiter rateLimiter;
+    private final ObjectReader eventReader;
+    // not a bean: any Executor bean would replace Boot's applicationTaskExecutor used by async MVC
+    private final ExecutorService batchExecutor;
+    private final int batchMaxEvents;
+    // read-only capabilities of one event; they block on JDBC, so one virtual thread each
+    private final ExecutorService capabilityExecutor = Executors.newVirtualThreadPerTaskExecutor();
+    private final long capabilityTimeoutMillis;
 
     public BlackboardService(
             List<CapabilityHandler> handlerList,
             AuthService authService,
-            SessionGraphIngestService sessionGraph
+            SessionGraphIngestService sessionGraph,
+            BlackboardMetrics metrics,
+            BlackboardAnalytics analytics,
+            RateLimiter rateLimiter,
+            ObjectMapper objectMapper,
+            @Value("${shopnserve.blackboard.batch.parallelism:8}") int batchParallelism,
+            @Value("${shopnserve.blackboard.batch.max-events:50}") int batchMaxEvents,
+            @Value("${shopnserve.blackboard.capability-timeout-ms:5000}") long capabilityTimeoutMillis,
+            @Value("${spring.threads.virtual.enabled:false}") boolean virtualThreads
     ) {
         this.authService = authService;
         this.sessionGraph = sessionGraph;
+        this.metrics = metrics;
+        this.analytics = analytics;
+        this.rateLimiter = rateLimiter;
+        this.eventReader = objectMapper.readerFor(MessageEventRequest.class);
+        this.batchMaxEvents = batchMaxEvents;
+        this.capabilityTimeoutMillis = capabilityTimeoutMillis;
 
         for (CapabilityHandler h : handlerList) {
             handlers.put(h.capability(), h);
         }
+
+        if (virtualThreads) {
+            // batches are capped by max-events and connections by ConnectionGuards, so no pool is needed
+            this.batchExecutor = Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("blackboard-batch-", 0).factory());
+        } else {
+            AtomicInteger threadIds = new AtomicInteger();
+            int threads = Math.max(1, batchParallelism);
+            // a full queue runs the event on the request thread instead of failing it
+            ThreadPoolExecutor pool = new ThreadPoolExecutor(
+                    threads, threads, 60, TimeUnit.SECONDS,
+                    new ArrayBlockingQueue<>(threads * 16),
+                    r -> {
+                        Thread t = new Thread(r, "blackboard-batch-" + threadIds.incrementAndGet());
+                        t.setDaemon(true);
+                        return t;
+                    },
+                    new ThreadPoolExecutor.CallerRunsPolicy()
+            );
+            pool.allowCoreThreadTimeOut(true);
+            this.batchExecutor = pool;
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        batchExecutor.shutdown();
+        capabilityExecutor.shutdown();
     }
 
     public BlackboardResponse handle(MessageEventRequest event, String authHeader) {
+        return handle(event, authHeader, null, metrics.start());
+    }
+
+    /** {@code client} is the caller's address, which limits the requests that have no token yet. */
+    public BlackboardResponse handle(
+            MessageEventRequest event,
+            String authHeader,
+            String client,
+            BlackboardMetrics.Timings timings
+    ) {
+
+        BlackboardResponse invalid = validate(event);
+        if (invalid != null) return invalid;
+
+        JwtService.Claims claims = isAuthRequest(event) ? null : verify(authHeader, timings);
+        return handleValidated(event, claims, client, timings);
+    }
+
+    private JwtService.Claims verify(String authHeader, BlackboardMetrics.Timings timings) {
+        long t0 = System.nanoTime();
+        JwtService.Claims claims = authService.verify(authHeader);
+        timings.record(BlackboardMetrics.AUTH, null, claims != null ? BlackboardMetrics.OK : "rejected", t0);
+        return claims;
+    }
+
+    /**
+     * Handles several events with one token verification. Each element is decoded on its own, so one that does
+     * not decode only fails its own slot. Runs of consecutive read-only events are handled concurrently; any
+     * other event waits for everything before it and runs alone, so a write is visible to the events after it.
+     * Results are in request order, and each one carries its own ok/error.
+     */
+    public BlackboardResponse handleBatch(
+            List<JsonNode> elements,
+            String authHeader,
+            String client,
+            BlackboardMetrics.Timings timings
+    ) {
+        if (elements == null || elements.isEmpty()) return error("events required", null);
+        if (elements.size() > batchMaxEvents) return error("At most " + batchMaxEvents + " events per batch", null);
+
+        JwtService.Claims claims = verify(authHeader, timings);
+        BlackboardResponse[] results = new BlackboardResponse[elements.size()];
+        List<MessageEventRequest> events = new ArrayList<>(elements.size());
+        for (int i = 0; i < elements.size(); i++) {
+            events.add(decode(elements.get(i), i, results));
+        }
+
+        List<Integer> concurrent = new ArrayList<>();
+        for (int i = 0; i < events.size(); i++) {
+            if (results[i] != null) continue;
+            if (isReadOnly(events.get(i))) {
+                concurrent.add(i);
+                continue;
+            }
+            handleConcurrently(events, concurrent, claims, client, results, timings);
+            concurrent.clear();
+            results[i] = handleIsolated(events.get(i), claims, client, timings);
+        }
+        handleConcurrently(events, concurrent, claims, client, results, timings);
+
+        return new BlackboardResponse(true, Map.of("results", Arrays.asList(results)));
+    }
+
+    // null, with results[i] set, when the element is not a valid event
+    private MessageEventRequest decode(JsonNode element, int i, BlackboardResponse[] results) {
+        if (element == null || element.isNull()) {
+            results[i] = error("Missing body", null);
+            return null;
+        }
+        String traceId = element.path("traceId").isTextual() ? element.get("traceId").asText() : null;
+        try {
+            return eventReader.readValue(element);
+        } catch (InvalidPayloadException e) {
+            results[i] = invalidPayload(e, traceId);
+        } catch (IOException e) {
+            Map<String, Object> data = new LinkedHashMap<>();
+            data.put("error", "Malformed event");
+            data.put("message", e instanceof JsonProcessingException json ? json.getOriginalMessage() : e.getMessage());
+            if (traceId != null) data.put("traceId", traceId);
+            results[i] = new BlackboardResponse(false, data);
+        }
+        return null;
+    }
+
+    private void handleConcurrently(
+            List<MessageEventRequest> events,
+            List<Integer> indexes,
+            JwtService.Claims claims,
+            String client,
+            BlackboardResponse[] results,
+            BlackboardMetrics.Timings timings
+    ) {
+        if (indexes.isEmpty()) return;
+
+        List<CompletableFuture<Void>> pending = new ArrayList<>(indexes.size() - 1);
+        for (int i : indexes.subList(1, indexes.size())) {
+            pending.add(CompletableFuture.runAsync(() -> results[i] = handleIsolated(events.get(i), claims, client, timings), batchExecutor));
+        }
+        // the request thread takes the first one instead of idling
+        int first = indexes.get(0);
+        results[first] = handleIsolated(events.get(first), claims, client, timings);
+        // handleIsolated never throws, and join() makes the workers' writes to results visible
+        pending.forEach(CompletableFuture::join);
+    }
+
+    private BlackboardResponse handleIsolated(
+            MessageEventRequest event,
+            JwtService.Claims claims,
+            String client,
+            BlackboardMetrics.Timings timings
+    ) {
+        try {
+            BlackboardResponse invalid = validate(event);
+            return invalid != null ? invalid : handleValidated(event, claims, client, timings);
+        } catch (Exception e) {
+            log.warn("Batch event failed", e);
+            return error("Internal Server Error: " + e.getClass().getSimpleName(), event != null ? event.traceIdOrNull() : null);
+        }
+    }
+
+    private boolean isReadOnly(MessageEventRequest event) {
+        if (event == null || event.capabilities() == null || event.capabilities().isEmpty()) return false;
+        for (Capability cap : event.capabilities()) {
+            CapabilityHandler h = handlers.get(cap);
+            if (h == null || !h.readOnly()) return false;
+        }
+        return true;
+    }
+
+    private static boolean isAuthRequest(MessageEventRequest event) {
+        return event.capabilities().contains(Capability.Authentication);
+    }
+
+    private BlackboardResponse handleValidated(
+            MessageEventRequest event,
+            JwtService.Claims claims,
+            String client,
+            BlackboardMetrics.Timings timings
+    ) {
+        boolean isAuthRequest = isAuthRequest(event);
+        if (!isAuthRequest && claims == null) {
+            return unauthorized(event.traceIdOrNull());
+        }
+        String subject = !isAuthRequest ? claims.subject() : null;
+
+        BlackboardResponse limited = admit(event, subject, client);
+        if (limited != null) return limited;
+
+        SessionGraphIngestService.MessageTrace trace = sessionGraph.begin(event);
+        try {
+            return dispatch(event, subject, trace, timings);
+        } finally {
+            ingest(trace, timings);
+        }
+    }
+
+    /**
+     * Checks a streaming request up front, before any response bytes are written.
+     * Only single-capability events whose handler can stream are accepted.
+     */
+    public StreamRequest openStream(MessageEventRequest event, String authHeader) {
+        BlackboardResponse invalid = validate(event);
+        if (invalid != null) return new StreamRequest(event, null, null, invalid);
+
+        Capability cap = event.capabilities().get(0);
+        if (event.capabilities().size() != 1 || !(handlers.get(cap) instanceof StreamingCapabilityHandler h)) {
+            return new StreamRequest(event, null, null,
+                    error("Streaming is not supported for: " + event.capabilities(), event.traceIdOrNull()));
+        }
+
+        JwtService.Claims claims = authService.verify(authHeader);
+        if (claims == null) return new StreamRequest(event, null, null, unauthorized(event.traceIdOrNull()));
 
+        BlackboardResponse limited = admit(event, claims.subject(), null);
+        if (limited != null) return new StreamRequest(event, null, null, limited);
+
+        return new StreamRequest(event, claims.subject(), h, null);
+    }
+
+    public long stream(StreamRequest request, OutputStream out) {
+        MessageEventRequest event = request.event();
+        Capability cap = request.handler().capability();
+
+        SessionGraphIngestService.MessageTrace trace = sessionGraph.begin(event);
+        SessionGraphIngestService.CapabilityTrace step = trace.requested(cap, backendFor(cap), event.payload(cap));
+        try {
+            long written = request.handler().stream(event, request.subject(), out);
+            step.completed();
+            // the graph only gets a summary, the streamed rows would defeat the point
+            step.provided(Map.of("streamed", written));
+            return written;
+        } catch (RuntimeException e) {
+            step.failed(e.getClass().getSimpleName() + ": " + e.getMessage());
+            throw e;
+        } finally {
+            analytics.record(trace);
+            sessionGraph.ingest(trace);
+        }
+    }
+
+    public record StreamRequest(
+            MessageEventRequest event,
+            String subject,
+            StreamingCapabilityHandler handler,
+            BlackboardResponse rejection
+    ) {}
+
+    private BlackboardResponse validate(MessageEventRequest event) {
         if (event == null) return error("Missing body", null);
 
         if (event.capabilities() == null || event.capabilities().isEmpty())
@@ -40,84 +326,223 @@ public class BlackboardService {
         if (event.sender() == null || event.sender().component() == null || event.sender().component().isBlank())
             return error("sender.component required", event.traceIdOrNull());
 
-        boolean isAuthRequest = event.capabilities().contains(Capability.Authentication);
-        if (!isAuthRequest && !authService.validate(authHeader)) {
-            return unauthorized(event.traceIdOrNull());
-        }
-        String sessionId = sessionGraph.ensureSessionAndUi(event);
+        return null;
+    }
 
-        String uiName = event.sender().component().replace(".vue", "");
-        if (uiName.isBlank()) uiName = "unknown";
+    /**
+     * A single capability answers with its own response. Several capabilities answer with one entry per
+     * capability name; runs of read-only ones are handled concurrently, each with a timeout, while any other
+     * capability waits for everything before it. The first failure stops the capabilities after it.
+     */
+    private BlackboardResponse dispatch(
+            MessageEventRequest event,
+            String subject,
+            SessionGraphIngestService.MessageTrace trace,
+            BlackboardMetrics.Timings timings
+    ) {
+        String sessionId = trace.sessionId();
+        List<Capability> caps = event.capabilities();
 
-        BlackboardResponse last = null;
-        for (Capability cap : event.capabilities()) {
+        if (caps.size() == 1) {
+            return invoke(caps.get(0), event, subject, trace, timings);
+        }
 
+        Map<String, Object> merged = new LinkedHashMap<>();
+        List<Capability> concurrent = new ArrayList<>();
+        BlackboardResponse failure = null;
+
+        for (Capability cap : caps) {
             CapabilityHandler h = handlers.get(cap);
-            if (h == null) {
-                String reqId = sessionGraph.createRequestedData(
-                        sessionId,
-                        uiName,
-                        backendFor(cap),
-                        cap,
-                        event.payload()
-                );
-                sessionGraph.markRequestedFailed(reqId, "No handler for capability: " + cap.name());
-                return error("No handler for capability: " + cap.name(), sessionId);
+            if (h != null && h.readOnly()) {
+                concurrent.add(cap);
+                continue;
             }
-            String requestedId = sessionGraph.createRequestedData(
-                    sessionId,
-                    uiName,
-                    backendFor(cap),
-                    cap,
-                    event.payload()
-            );
+            failure = invokeConcurrently(concurrent, event, subject, trace, merged, timings);
+            concurrent.clear();
+            if (failure != null) break;
 
-            BlackboardResponse handlerResp;
-            try {
-                handlerResp = h.handle(event);
-            } catch (Exception ex) {
-                sessionGraph.markRequestedFailed(
-                        requestedId,
-                        ex.getClass().getSimpleName() + ": " + ex.getMessage()
-                );
-                return new BlackboardResponse(false, Map.of(
-                        "error", "Handler exception for: " + cap.name(),
-                        "message", String.valueOf(ex.getMessage()),
-                        "traceId", sessionId
-                ));
+            BlackboardResponse resp = invoke(cap, event, subject, trace, timings);
+            merged.put(cap.name(), resp);
+            if (!resp.ok()) {
+                failure = resp;
+                break;
             }
+        }
+        if (failure == null) {
+            failure = invokeConcurrently(concurrent, event, subject, trace, merged, timings);
+        }
 
-            if (handlerResp == null) {
-                sessionGraph.markRequestedFailed(requestedId, "Handler returned null for: " + cap.name());
-                return error("Handler returned null for: " + cap.name(), sessionId);
-            }
+        if (failure != null) {
+            merged.put("error", extractError(failure));
+            if (failure.conflict()) merged.put(BlackboardResponse.CONFLICT, true);
+            merged.put("traceId", sessionId);
+        }
+        return new BlackboardResponse(failure == null, merged);
+    }
 
-            last = handlerResp;
+    private BlackboardResponse invoke(
+            Capability cap,
+            MessageEventRequest event,
+            String subject,
+            SessionGraphIngestService.MessageTrace trace,
+            BlackboardMetrics.Timings timings
+    ) {
+        SessionGraphIngestService.CapabilityTrace step =
+                trace.requested(cap, backendFor(cap), event.payload(cap));
+
+        CapabilityHandler h = handlers.get(cap);
+        if (h == null) {
+            step.failed("No handler for capability: " + cap.name());
+            return error("No handler for capability: " + cap.name(), trace.sessionId());
+        }
+
+        long t0 = System.nanoTime();
+        BlackboardResponse resp;
+        try {
+            resp = complete(step, cap, handleChecked(h, cap, event, subject, trace.sessionId()), trace.sessionId());
+        } catch (Exception ex) {
+            resp = failed(step, cap, ex, trace.sessionId());
+        }
+        timings.record(BlackboardMetrics.HANDLER, cap.name(), outcomeOf(resp), t0);
+        return resp;
+    }
 
-            if (handlerResp.ok()) {
-                sessionGraph.markRequestedCompleted(requestedId);
-            } else {
-                sessionGraph.markRequestedFailed(requestedId, extractError(handlerResp));
-                return handlerResp;
+    /** Returns the first failed response, or null; the trace is only touched from the calling thread. */
+    private BlackboardResponse invokeConcurrently(
+            List<Capability> caps,
+            MessageEventRequest event,
+            String subject,
+            SessionGraphIngestService.MessageTrace trace,
+            Map<String, Object> merged,
+            BlackboardMetrics.Timings timings
+    ) {
+        if (caps.isEmpty()) return null;
+        if (caps.size() == 1) {
+            BlackboardResponse resp = invoke(caps.get(0), event, subject, trace, timings);
+            merged.put(caps.get(0).name(), resp);
+            return resp.ok() ? null : resp;
+        }
+
+        List<SessionGraphIngestService.CapabilityTrace> steps = new ArrayList<>(caps.size());
+        List<Future<BlackboardResponse>> futures = new ArrayList<>(caps.size());
+        for (Capability cap : caps) {
+            steps.add(trace.requested(cap, backendFor(cap), event.payload(cap)));
+            CapabilityHandler h = handlers.get(cap);
+            futures.add(capabilityExecutor.submit(() -> {
+                long t0 = System.nanoTime();
+                String outcome = BlackboardMetrics.ERROR;
+                try {
+                    BlackboardResponse resp = handleChecked(h, cap, event, subject, trace.sessionId());
+                    outcome = outcomeOf(resp);
+                    return resp;
+                } finally {
+                    timings.record(BlackboardMetrics.HANDLER, cap.name(), outcome, t0);
+                }
+            }));
+        }
+
+        // they run side by side, so one deadline gives each capability the full timeout
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(capabilityTimeoutMillis);
+        BlackboardResponse failure = null;
+        for (int i = 0; i < caps.size(); i++) {
+            Capability cap = caps.get(i);
+            Future<BlackboardResponse> future = futures.get(i);
+            BlackboardResponse resp;
+            try {
+                resp = complete(steps.get(i), cap,
+                        future.get(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS), trace.sessionId());
+            } catch (TimeoutException e) {
+                future.cancel(true);
+                steps.get(i).failed("Timed out after " + capabilityTimeoutMillis + " ms");
+                resp = error("Timed out: " + cap.name(), trace.sessionId());
+            } catch (ExecutionException e) {
+                resp = failed(steps.get(i), cap, e.getCause(), trace.sessionId());
+            } catch (InterruptedException | CancellationException e) {
+                Thread.currentThread().interrupt();
+                futures.forEach(f -> f.cancel(true));
+                steps.get(i).failed("Interrupted");
+                resp = error("Interrupted: " + cap.name(), trace.sessionId());
             }
+            merged.put(cap.name(), resp);
+            if (!resp.ok() && failure == null) failure = resp;
+        }
+        return failure;
+    }
+
+    // a capability whose payload did not decode fails on its own; the others in the event are unaffected
+    private static BlackboardResponse handleChecked(
+            CapabilityHandler h,
+            Capability cap,
+            MessageEventRequest event,
+            String subject,
+            String sessionId
+    ) {
+        InvalidPayloadException invalid = event.invalidPayload(cap);
+        return invalid != null ? invalidPayload(invalid, sessionId) : h.handle(event, subject);
+    }
 
-            String providedId = sessionGraph.createProvidedData(sessionId, cap, handlerResp.data());
-            sessionGraph.markProvidedCompleted(providedId);
+    /** Same shape as a request body rejected for its payload: {error, capability, path}. */
+    public static BlackboardResponse invalidPayload(InvalidPayloadException e, String traceId) {
+        Map<String, Object> data = new LinkedHashMap<>();
+        data.put("error", e.reason());
+        data.put("capability", e.capability().name());
+        data.put("path", e.pathString());
+        if (traceId != null) data.put("traceId", traceId);
+        return new BlackboardResponse(false, data);
+    }
+
+    private BlackboardResponse complete(
+            SessionGraphIngestService.CapabilityTrace step,
+            Capability cap,
+            BlackboardResponse handlerResp,
+            String sessionId
+    ) {
+        if (handlerResp == null) {
+            step.failed("Handler returned null for: " + cap.name());
+            return error("Handler returned null for: " + cap.name(), sessionId);
         }
 
-        return last != null ? last : new BlackboardResponse(true, Map.of("traceId", sessionId));
+        if (handlerResp.ok()) {
+            step.completed();
+            step.provided(handlerResp.data());
+        } else {
+            step.failed(extractError(handlerResp));
+        }
+        return handlerResp;
     }
 
-    private String backendFor(Capability cap) {
-        if (cap == null) return "UnknownService";
+    private BlackboardResponse failed(
+            SessionGraphIngestService.CapabilityTrace step,
+            Capability cap,
+            Throwable ex,
+            String sessionId
+    ) {
+        step.failed(ex.getClass().getSimpleName() + ": " + ex.getMessage());
+        return new BlackboardResponse(false, Map.of(
+                "error", "Handler exception for: " + cap.name(),
+                "message", String.valueOf(ex.getMessage()),
+                "traceId", sessionId
+        ));
+    }
+
+    private void ingest(SessionGraphIngestService.MessageTrace trace, BlackboardMetrics.Timings timings) {
+        analytics.record(trace);
+        long t0 = System.nanoTime();
+        String outcome = BlackboardMetrics.ERROR;
+        try {
+            sessionGraph.ingest(trace);
+            outcome = BlackboardMetrics.OK;
+        } finally {
+            timings.record(BlackboardMetrics.GRAPH, null, outcome, t0);
+        }
+    }
+
+    private static String outcomeOf(BlackboardResponse resp) {
+        return resp != null && resp.ok() ? BlackboardMetrics.OK : BlackboardMetrics.ERROR;
+    }
 
-        return switch (cap) {
-            case Authentication, Authorization -> "AuthService";
-            case ProductList -> "ProductService";
-            case OrderPlaced -> "OrderService";
-            case OrderHistory -> "OrderListService";
-            default -> cap.name() + "Service";
-        };
+    private String backendFor(Capability cap) {
+        return cap == null ? "UnknownService" : cap.backend();
     }
 
     private String extractError(BlackboardResponse resp) {
@@ -130,10 +555,31 @@ public class BlackboardService {
     }
 
     private BlackboardResponse error(String msg, String traceId) {
-        return new BlackboardResponse(false, Map.of("error", msg, "traceId", traceId));
+        // Map.of rejects null values; requests without traceId used to fail with an NPE here
+        return new BlackboardResponse(false, traceId == null
+                ? Map.of("error", msg)
+                : Map.of("error", msg, "traceId", traceId));
     }
 
     private BlackboardResponse unauthorized(String traceId) {
-        return new BlackboardResponse(false, Map.of("error", "Unauthorized", "traceId", traceId));
+        return error("Unauthorized", traceId);
+    }
+
+    /**
+     * One token per capability, from the subject's (or without one, the client's) and the component's bucket,
+     * all or nothing; null when admitted. Refused before anything is traced, so a flood costs neither handler
+     * work nor graph writes.
+     */
+    private BlackboardResponse admit(MessageEventRequest event, String subject, String client) {
+        RateLimiter.Refusal refusal = rateLimiter.admit(subject, client, event.sender().component(), event.capabilities());
+        if (refusal == null) return null;
+
+        Map<String, Object> data = new LinkedHashMap<>();
+        data.put("error", "Rate limit exceeded for " + refusal.capability().name());
+        data.put(BlackboardResponse.RATE_LIMITED, true);
+        data.put(BlackboardResponse.RETRY_AFTER_SECONDS,
+                (int) Math.max(1, TimeUnit.NANOSECONDS.toSeconds(refusal.waitNanos() + 999_999_999)));
+        if (event.traceIdOrNull() != null) data.put("traceId", event.traceIdOrNull());
+        return new BlackboardResponse(false, data);
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,135 @@
+package shop.serve.ShopNServe.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import shop.serve.ShopNServe.model.Capability;
+
+import java.lang.reflect.Array;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Collection;
+import java.util.EnumMap;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Decides what of a request or response payload the session graph keeps, per capability:
+ * <ul>
+ *   <li>{@code full}: the JSON as is</li>
+ *   <li>{@code truncate}: the JSON, cut after {@code max-chars}</li>
+ *   <li>{@code summary}: top-level keys with scalars kept and collections replaced by their size</li>
+ *   <li>{@code none}: nothing</li>
+ * </ul>
+ * With {@code dedupe} the result is stored once per distinct content as a {@code PayloadBlob} node keyed by
+ * its SHA-256, so e.g. the catalog is written once per catalog version rather than once per ProductList call.
+ * <p>
+ * The defaults, {@code full} without dedupe, keep the original layout: the whole JSON in the {@code payload}
+ * property of the request node. Anything else changes what graph queries find there and is opt-in.
+ */
+@Component
+public class GraphPayloads {
+
+    public enum Mode { FULL, TRUNCATE, SUMMARY, NONE }
+
+    /** {@code size} is the length of the untruncated JSON, null in summary mode where it is never built. */
+    public record Stored(String hash, String json, Integer size, boolean truncated, boolean summary) {}
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+    private static final int MAX_SUMMARY_STRING = 64;
+
+    private final boolean dedupe;
+    private final int maxChars;
+    private final Map<Capability, Mode> modes = new EnumMap<>(Capability.class);
+
+    public GraphPayloads(
+            @Value("${shopnserve.graph.payload.dedupe:false}") boolean dedupe,
+            @Value("${shopnserve.graph.payload.mode:full}") String mode,
+            @Value("${shopnserve.graph.payload.modes:}") String overrides,
+            @Value("${shopnserve.graph.payload.max-chars:16384}") int maxChars
+    ) {
+        this.dedupe = dedupe;
+        this.maxChars = Math.max(1, maxChars);
+        Mode fallback = parseMode(mode);
+        for (Capability cap : Capability.values()) modes.put(cap, fallback);
+
+        // "ProductList=summary,OrderHistory=truncate"
+        for (String entry : overrides.split(",")) {
+            if (entry.isBlank()) continue;
+            String[] kv = entry.split("=", 2);
+            if (kv.length != 2) throw new IllegalArgumentException("Expected Capability=mode, got: " + entry.trim());
+            modes.put(Capability.valueOf(kv[0].trim()), parseMode(kv[1]));
+        }
+    }
+
+    public boolean dedupe() {
+        return dedupe;
+    }
+
+    public Mode modeOf(Capability capability) {
+        return modes.get(capability);
+    }
+
+    /** Null when nothing is to be stored. */
+    public Stored store(Capability capability, Object payload) {
+        if (payload == null) return null;
+        Mode mode = modes.get(capability);
+        if (mode == Mode.NONE) return null;
+
+        String json;
+        Integer size = null;
+        boolean truncated = false;
+        if (mode == Mode.SUMMARY) {
+            json = toJson(summarize(payload));
+        } else {
+            json = toJson(payload);
+            size = json.length();
+            if (mode == Mode.TRUNCATE && json.length() > maxChars) {
+                int end = Character.isHighSurrogate(json.charAt(maxChars - 1)) ? maxChars - 1 : maxChars;
+                json = json.substring(0, end);
+                truncated = true;
+            }
+        }
+        return new Stored(dedupe ? sha256(json) : null, json, size, truncated, mode == Mode.SUMMARY);
+    }
+
+    private static Map<String, Object> summarize(Object payload) {
+        Map<?, ?> map = payload instanceof Map<?, ?> m ? m : MAPPER.convertValue(payload, Map.class);
+        Map<String, Object> summary = new LinkedHashMap<>();
+        map.forEach((k, v) -> summary.put(String.valueOf(k), summarizeValue(v)));
+        return summary;
+    }
+
+    private static Object summarizeValue(Object v) {
+        if (v == null || v instanceof Number || v instanceof Boolean) return v;
+        if (v instanceof CharSequence s) return s.length() <= MAX_SUMMARY_STRING ? s.toString() : Map.of("chars", s.length());
+        if (v instanceof Collection<?> c) return Map.of("items", c.size());
+        if (v instanceof Map<?, ?> m) return Map.of("fields", m.size());
+        if (v.getClass().isArray()) return Map.of("items", Array.getLength(v));
+        if (v instanceof Enum<?> e) return e.name();
+        return Map.of("type", v.getClass().getSimpleName());
+    }
+
+    private static String toJson(Object payload) {
+        try {
+            return MAPPER.writeValueAsString(payload);
+        } catch (Exception e) {
+            return String.valueOf(payload);
+        }
+    }
+
+    private static String sha256(String json) {
+        try {
+            return HexFormat.of().formatHex(
+                    MessageDigest.getInstance("SHA-256").digest(json.getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static Mode parseMode(String mode) {
+        return Mode.valueOf(mode.trim().toUpperCase());
+    }
+}
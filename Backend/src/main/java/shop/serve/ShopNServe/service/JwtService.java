@@ -1,136 +1,334 @@
 package shop.serve.ShopNServe.service;
 
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
 import javax.crypto.Mac;
 import javax.crypto.spec.SecretKeySpec;
 import java.nio.charset.StandardCharsets;
-import java.time.Instant;
+import java.security.SecureRandom;
+import java.util.Arrays;
 import java.util.Base64;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicReferenceArray;
 
 @Service
 public class JwtService {
+    private static final Logger log = LoggerFactory.getLogger(JwtService.class);
+
     private static final String SECRET = "CHANGE_ME_TO_A_LONG_RANDOM_SECRET_32CHARS_MIN";
     private static final String HMAC_ALG = "HmacSHA256";
+    private static final SecretKeySpec KEY =
+            new SecretKeySpec(SECRET.getBytes(StandardCharsets.UTF_8), HMAC_ALG);
 
     private static final Base64.Encoder B64_URL_ENC = Base64.getUrlEncoder().withoutPadding();
-    private static final Base64.Decoder B64_URL_DEC = Base64.getUrlDecoder();
 
-    private static final long TTL_SECONDS = 60 * 60;
+    private static final String TYP_ACCESS = "access";
+    private static final String TYP_REFRESH = "refresh";
+
+    private static final int SIG_LEN = 32;
+    // direct-mapped, one slot per signature hash; a colliding token simply evicts the previous one
+    private static final int CACHE_SIZE = 1024;
+
+    private static final byte[] EXP_NEEDLE = "\"exp\":".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] SUB_NEEDLE = "\"sub\":\"".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] TYP_NEEDLE = "\"typ\":\"".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] JTI_NEEDLE = "\"jti\":\"".getBytes(StandardCharsets.US_ASCII);
+
+    private static final SecureRandom RANDOM = new SecureRandom();
+
+    private static final int[] B64_URL_VALUES = new int[128];
+
+    static {
+        Arrays.fill(B64_URL_VALUES, -1);
+        String alphabet = "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789-_";
+        for (int i = 0; i < alphabet.length(); i++) B64_URL_VALUES[alphabet.charAt(i)] = i;
+    }
+
+    // Mac is not thread-safe and expensive to look up, so every platform thread keeps an initialised one;
+    // virtual threads live for one request, a thread-local would build a new Mac each time, so they share a pool
+    private static final ThreadLocal<Scratch> SCRATCH = ThreadLocal.withInitial(Scratch::new);
+    private static final ConcurrentLinkedQueue<Scratch> SCRATCH_POOL = new ConcurrentLinkedQueue<>();
+
+    private final AtomicReferenceArray<CachedToken> cache = new AtomicReferenceArray<>(CACHE_SIZE);
+    private final TokenDenylist denylist;
+    private final long accessTtlSeconds;
+    private final long refreshTtlSeconds;
+
+    /** {@code jti} is null for tokens minted before token ids existed; those cannot be revoked. */
+    public record Claims(String subject, long exp, String jti, boolean refresh) {}
+
+    private record CachedToken(String token, Claims claims) {}
+
+    private static final class Scratch {
+        final Mac mac;
+        final byte[] expectedSig = new byte[SIG_LEN];
+        final byte[] actualSig = new byte[SIG_LEN + 2];
+        byte[] input = new byte[512];
+        byte[] payload = new byte[256];
+
+        Scratch() {
+            try {
+                mac = Mac.getInstance(HMAC_ALG);
+                mac.init(KEY);
+            } catch (Exception e) {
+                throw new IllegalStateException("JWT signing unavailable", e);
+            }
+        }
+    }
+
+    public JwtService(
+            TokenDenylist denylist,
+            @Value("${shopnserve.auth.access-ttl-seconds:900}") long accessTtlSeconds,
+            @Value("${shopnserve.auth.refresh-ttl-seconds:604800}") long refreshTtlSeconds
+    ) {
+        this.denylist = denylist;
+        this.accessTtlSeconds = accessTtlSeconds;
+        this.refreshTtlSeconds = refreshTtlSeconds;
+    }
 
     public String generate(String username) {
-        long iat = Instant.now().getEpochSecond();
-        long exp = iat + TTL_SECONDS;
+        return generate(username, TYP_ACCESS, accessTtlSeconds);
+    }
+
+    public String generateRefresh(String username) {
+        return generate(username, TYP_REFRESH, refreshTtlSeconds);
+    }
+
+    private String generate(String username, String typ, long ttlSeconds) {
+        long iat = System.currentTimeMillis() / 1000;
+        long exp = iat + ttlSeconds;
+
+        byte[] id = new byte[12];
+        RANDOM.nextBytes(id);
+        String jti = B64_URL_ENC.encodeToString(id);
 
         String headerJson = "{\"alg\":\"HS256\",\"typ\":\"JWT\"}";
-        String payloadJson = "{\"sub\":\"" + escape(username) + "\",\"iat\":" + iat + ",\"exp\":" + exp + "}";
+        String payloadJson = "{\"sub\":\"" + escape(username) + "\",\"typ\":\"" + typ + "\",\"jti\":\"" + jti
+                + "\",\"iat\":" + iat + ",\"exp\":" + exp + "}";
 
         String header = B64_URL_ENC.encodeToString(headerJson.getBytes(StandardCharsets.UTF_8));
         String payload = B64_URL_ENC.encodeToString(payloadJson.getBytes(StandardCharsets.UTF_8));
 
         String signingInput = header + "." + payload;
-        String sig = hmacSha256Base64Url(signingInput);
+        Scratch scratch = borrowScratch();
+        String sig;
+        try {
+            sig = B64_URL_ENC.encodeToString(scratch.mac.doFinal(signingInput.getBytes(StandardCharsets.UTF_8)));
+        } finally {
+            returnScratch(scratch);
+        }
 
         return signingInput + "." + sig;
     }
 
     public boolean validate(String authHeaderOrToken) {
-        String token = extractToken(authHeaderOrToken);
-        //System.out.println("[JWT] validate() input=" + authHeaderOrToken);
-        //System.out.println("[JWT] extracted token=" + token);
+        return verify(authHeaderOrToken) != null;
+    }
 
-        if (token == null) return false;
+    public String subject(String authHeaderOrToken) {
+        Claims claims = verify(authHeaderOrToken);
+        return claims != null ? claims.subject() : null;
+    }
+
+    /**
+     * Verifies signature, expiry and revocation of an access token in a single pass over the header value.
+     * Returns the claims, or {@code null} if the token is missing, malformed, forged, expired or revoked.
+     */
+    public Claims verify(String authHeaderOrToken) {
+        Claims claims = verifyAny(authHeaderOrToken);
+        return claims != null && !claims.refresh() ? claims : null;
+    }
 
-        String[] parts = token.split("\\.");
-        //System.out.println("[JWT] parts=" + parts.length);
-        if (parts.length != 3) return false;
+    public Claims verifyRefresh(String refreshToken) {
+        Claims claims = verifyAny(refreshToken);
+        return claims != null && claims.refresh() ? claims : null;
+    }
 
-        String signingInput = parts[0] + "." + parts[1];
-        String expectedSig = hmacSha256Base64Url(signingInput);
+    /** Revokes a valid access or refresh token until it expires; returns false if it was not valid (any more). */
+    public boolean revoke(String authHeaderOrToken) {
+        Claims claims = verifyAny(authHeaderOrToken);
+        if (claims == null || claims.jti() == null) return false;
+        return denylist.revoke(claims.jti(), claims.exp());
+    }
 
-        //System.out.println("[JWT] expectedSig=" + expectedSig);
-        //System.out.println("[JWT] actualSig  =" + parts[2]);
+    private Claims verifyAny(String authHeaderOrToken) {
+        if (authHeaderOrToken == null) return null;
 
-        if (!safeEquals(expectedSig, parts[2])) {
-            System.out.println("[JWT] signature mismatch");
-            return false;
+        String s = authHeaderOrToken;
+        int start = 0;
+        int end = s.length();
+        while (start < end && s.charAt(start) <= ' ') start++;
+        while (end > start && s.charAt(end - 1) <= ' ') end--;
+        if (end - start > 7 && s.regionMatches(true, start, "Bearer ", 0, 7)) {
+            start += 7;
+            while (start < end && s.charAt(start) <= ' ') start++;
         }
+        if (start == end) return null;
 
-        String payloadJson = new String(B64_URL_DEC.decode(parts[1]), StandardCharsets.UTF_8);
-        long exp = readLongClaim(payloadJson, "exp");
-        long now = Instant.now().getEpochSecond();
+        int dot1 = s.indexOf('.', start);
+        if (dot1 < 0 || dot1 >= end) return null;
+        int dot2 = s.indexOf('.', dot1 + 1);
+        if (dot2 < 0 || dot2 >= end) return null;
+        int dot3 = s.indexOf('.', dot2 + 1);
+        if (dot3 >= 0 && dot3 < end) return null;
 
-        System.out.println("[JWT] payload=" + payloadJson);
-        System.out.println("[JWT] exp=" + exp + " now=" + now);
+        long now = System.currentTimeMillis() / 1000;
 
-        boolean ok = exp > now;
-        System.out.println("[JWT] exp check=" + ok);
-        return ok;
-    }
-    public String subject(String authHeaderOrToken) {
-        String token = extractToken(authHeaderOrToken);
-        if (token == null) return null;
-        String[] parts = token.split("\\.");
-        if (parts.length != 3) return null;
+        int slot = slotOf(s, dot2 + 1, end);
+        CachedToken cached = cache.get(slot);
+        if (cached != null
+                && cached.token().length() == end - start
+                && s.regionMatches(start, cached.token(), 0, end - start)) {
+            Claims claims = cached.claims();
+            return claims.exp() > now && !denylist.isRevoked(claims.jti(), claims.exp()) ? claims : null;
+        }
 
-        String payloadJson = new String(B64_URL_DEC.decode(parts[1]), StandardCharsets.UTF_8);
-        return readStringClaim(payloadJson, "sub");
+        Scratch scratch = borrowScratch();
+        try {
+            return verifyUncached(s, start, end, dot1, dot2, now, slot, scratch);
+        } finally {
+            returnScratch(scratch);
+        }
     }
 
-    private static String extractToken(String authHeaderOrToken) {
-        if (authHeaderOrToken == null) return null;
-        String s = authHeaderOrToken.trim();
-        if (s.isEmpty()) return null;
-
-        if (s.regionMatches(true, 0, "Bearer ", 0, 7)) {
-            s = s.substring(7).trim();
+    private Claims verifyUncached(String s, int start, int end, int dot1, int dot2, long now, int slot, Scratch scratch) {
+        int inputLen = dot2 - start;
+        if (scratch.input.length < inputLen) scratch.input = new byte[Math.max(inputLen, scratch.input.length * 2)];
+        for (int i = 0; i < inputLen; i++) {
+            char c = s.charAt(start + i);
+            if (c > 0x7F) return null;
+            scratch.input[i] = (byte) c;
         }
-        return s.isEmpty() ? null : s;
-    }
 
-    private static String hmacSha256Base64Url(String data) {
         try {
-            Mac mac = Mac.getInstance(HMAC_ALG);
-            mac.init(new SecretKeySpec(SECRET.getBytes(StandardCharsets.UTF_8), HMAC_ALG));
-            byte[] sig = mac.doFinal(data.getBytes(StandardCharsets.UTF_8));
-            return B64_URL_ENC.encodeToString(sig);
+            scratch.mac.update(scratch.input, 0, inputLen);
+            scratch.mac.doFinal(scratch.expectedSig, 0);
         } catch (Exception e) {
             throw new IllegalStateException("JWT signing failed", e);
         }
+
+        if (decodedLength(end - dot2 - 1) != SIG_LEN
+                || decode(s, dot2 + 1, end, scratch.actualSig) != SIG_LEN
+                || !constantTimeEquals(scratch.expectedSig, scratch.actualSig, SIG_LEN)) {
+            log.debug("[JWT] signature mismatch");
+            return null;
+        }
+
+        int payloadLen = decodedLength(dot2 - dot1 - 1);
+        if (payloadLen < 0) return null;
+        if (scratch.payload.length < payloadLen) scratch.payload = new byte[Math.max(payloadLen, scratch.payload.length * 2)];
+        if (decode(s, dot1 + 1, dot2, scratch.payload) != payloadLen) return null;
+
+        long exp = readLongClaim(scratch.payload, payloadLen, EXP_NEEDLE);
+        if (log.isDebugEnabled()) {
+            log.debug("[JWT] exp={} now={} ok={}", exp, now, exp > now);
+        }
+        if (exp <= now) return null;
+
+        Claims claims = new Claims(
+                readStringClaim(scratch.payload, payloadLen, SUB_NEEDLE),
+                exp,
+                readStringClaim(scratch.payload, payloadLen, JTI_NEEDLE),
+                TYP_REFRESH.equals(readStringClaim(scratch.payload, payloadLen, TYP_NEEDLE))
+        );
+        if (denylist.isRevoked(claims.jti(), exp)) return null;
+
+        cache.set(slot, new CachedToken(s.substring(start, end), claims));
+        return claims;
+    }
+
+    private static Scratch borrowScratch() {
+        if (!Thread.currentThread().isVirtual()) return SCRATCH.get();
+        Scratch scratch = SCRATCH_POOL.poll();
+        return scratch != null ? scratch : new Scratch();
+    }
+
+    private static void returnScratch(Scratch scratch) {
+        if (Thread.currentThread().isVirtual()) SCRATCH_POOL.offer(scratch);
+    }
+
+    private static int slotOf(String s, int from, int to) {
+        int h = 0;
+        for (int i = from; i < to; i++) h = 31 * h + s.charAt(i);
+        h ^= (h >>> 16);
+        return h & (CACHE_SIZE - 1);
+    }
+
+    private static int decodedLength(int chars) {
+        if (chars % 4 == 1) return -1;
+        return chars / 4 * 3 + Math.max(0, chars % 4 - 1);
+    }
+
+    /** Base64url (unpadded) decode of {@code s[from, to)} into {@code out}; returns the byte count or -1. */
+    private static int decode(String s, int from, int to, byte[] out) {
+        int n = 0;
+        int acc = 0;
+        int bits = 0;
+        for (int i = from; i < to; i++) {
+            char c = s.charAt(i);
+            int v = c < 128 ? B64_URL_VALUES[c] : -1;
+            if (v < 0) return -1;
+            acc = (acc << 6) | v;
+            bits += 6;
+            if (bits >= 8) {
+                bits -= 8;
+                if (n == out.length) return -1;
+                out[n++] = (byte) (acc >> bits);
+            }
+        }
+        return n;
     }
 
-    private static boolean safeEquals(String a, String b) {
-        if (a == null || b == null) return false;
-        if (a.length() != b.length()) return false;
+    private static boolean constantTimeEquals(byte[] a, byte[] b, int len) {
         int r = 0;
-        for (int i = 0; i < a.length(); i++) r |= a.charAt(i) ^ b.charAt(i);
+        for (int i = 0; i < len; i++) r |= a[i] ^ b[i];
         return r == 0;
     }
 
-    private static long readLongClaim(String json, String key) {
-        String needle = "\"" + key + "\":";
-        int i = json.indexOf(needle);
-        if (i < 0) return 0;
-        i += needle.length();
+    private static int indexOf(byte[] hay, int len, byte[] needle) {
+        outer:
+        for (int i = 0; i <= len - needle.length; i++) {
+            for (int k = 0; k < needle.length; k++) {
+                if (hay[i + k] != needle[k]) continue outer;
+            }
+            return i;
+        }
+        return -1;
+    }
 
-        int j = i;
-        while (j < json.length() && Character.isWhitespace(json.charAt(j))) j++;
+    private static long readLongClaim(byte[] json, int len, byte[] needle) {
+        int i = indexOf(json, len, needle);
+        if (i < 0) return 0;
+        int j = i + needle.length;
+        while (j < len && json[j] <= ' ') j++;
 
+        long v = 0;
         int start = j;
-        while (j < json.length() && Character.isDigit(json.charAt(j))) j++;
-
-        if (start == j) return 0;
-        return Long.parseLong(json.substring(start, j));
+        while (j < len && json[j] >= '0' && json[j] <= '9') v = v * 10 + (json[j++] - '0');
+        return start == j ? 0 : v;
     }
 
-    private static String readStringClaim(String json, String key) {
-        String needle = "\"" + key + "\":\"";
-        int i = json.indexOf(needle);
+    private static String readStringClaim(byte[] json, int len, byte[] needle) {
+        int i = indexOf(json, len, needle);
         if (i < 0) return null;
-        i += needle.length();
-        int j = json.indexOf("\"", i);
-        if (j < 0) return null;
-        return unescape(json.substring(i, j));
+        i += needle.length;
+
+        boolean escaped = false;
+        int j = i;
+        while (j < len && json[j] != '"') {
+            if (json[j] == '\\') {
+                escaped = true;
+                j++;
+            }
+            j++;
+        }
+        if (j >= len) return null;
+
+        String raw = new String(json, i, j - i, StandardCharsets.UTF_8);
+        return escaped ? unescape(raw) : raw;
     }
 
     private static String escape(String s) {
@@ -140,4 +338,4 @@ public class JwtService {
     private static String unescape(String s) {
         return s.replace("\\\"", "\"").replace("\\\\", "\\");
     }
-}
\ No newline at end of file
+}
@@ -1,35 +1,289 @@
 package shop.serve.ShopNServe.service;
 
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.Tuple;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Limit;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+import shop.serve.ShopNServe.model.OrderEntity;
+import shop.serve.ShopNServe.model.OrderItemEntity;
 import shop.serve.ShopNServe.repository.OrderRepository;
 
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.StringWriter;
+import java.io.UncheckedIOException;
+import java.time.Duration;
+import java.time.Instant;
 import java.util.HashMap;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.stream.Stream;
 
 @Service
 public class OrderListService {
 
+    /**
+     * One page of orders after a {@code since} cursor, oldest first. {@code since} is where the next poll starts;
+     * it may repeat orders already returned, which clients drop by id.
+     */
+    public record Delta(List<Map<String, Object>> orders, String since, boolean hasMore) {}
+
+    // a (createdAt, id) position; the opaque cursor is "<createdAt>_<id>"
+    private record Cursor(Instant createdAt, long id) implements Comparable<Cursor> {
+        static Cursor parse(String cursor) {
+            int sep = cursor.lastIndexOf('_');
+            if (sep < 0) throw new IllegalArgumentException("Invalid cursor: " + cursor);
+            return new Cursor(Instant.parse(cursor.substring(0, sep)), Long.parseLong(cursor.substring(sep + 1)));
+        }
+
+        static Cursor of(Map<String, Object> order) {
+            return new Cursor((Instant) order.get("created_at"), (Long) order.get("id"));
+        }
+
+        @Override
+        public int compareTo(Cursor o) {
+            int c = createdAt.compareTo(o.createdAt);
+            return c != 0 ? c : Long.compare(id, o.id);
+        }
+
+        @Override
+        public String toString() {
+            // full timestamp precision, the column may hold microseconds
+            return createdAt + "_" + id;
+        }
+    }
+
+    private static final JsonFactory JSON = new JsonFactory();
+
+    // scalar columns only, nothing becomes managed, so the persistence context does not grow with the result;
+    // one row per order line, consecutive rows of the same order are folded back into one object
+    private static final String STREAM_ALL = """
+            select o.id as id, o.userName as userName, o.totalCents as totalCents,
+                   o.itemsJson as itemsJson, o.createdAt as createdAt,
+                   i.productId as productId, i.productName as productName,
+                   i.unitPriceCents as unitPriceCents, i.quantity as quantity
+            from OrderEntity o left join o.items i
+            where o.userName = :userName
+            order by o.createdAt desc, o.id desc, i.id asc
+            """;
+
+    private static final String STREAM_SINCE = """
+            select o.id as id, o.userName as userName, o.totalCents as totalCents,
+                   o.itemsJson as itemsJson, o.createdAt as createdAt,
+                   i.productId as productId, i.productName as productName,
+                   i.unitPriceCents as unitPriceCents, i.quantity as quantity
+            from OrderEntity o left join o.items i
+            where o.userName = :userName
+              and (o.createdAt > :createdAt or (o.createdAt = :createdAt and o.id > :id))
+            order by o.createdAt asc, o.id asc, i.id asc
+            """;
+
     private final OrderRepository orderRepository;
+    private final EntityManager entityManager;
+    private final TransactionTemplate readOnlyTx;
+    private final int streamFetchSize;
+    private final int streamFlushEvery;
+    private final Duration deltaOverlap;
 
-    public OrderListService(OrderRepository orderRepository) {
+    public OrderListService(
+            OrderRepository orderRepository,
+            EntityManager entityManager,
+            PlatformTransactionManager transactionManager,
+            @Value("${shopnserve.orders.stream.fetch-size:500}") int streamFetchSize,
+            @Value("${shopnserve.orders.stream.flush-every:100}") int streamFlushEvery,
+            @Value("${shopnserve.orders.delta-overlap-ms:5000}") long deltaOverlapMillis
+    ) {
         this.orderRepository = orderRepository;
+        this.entityManager = entityManager;
+        this.readOnlyTx = new TransactionTemplate(transactionManager);
+        this.readOnlyTx.setReadOnly(true);
+        this.streamFetchSize = streamFetchSize;
+        this.streamFlushEvery = Math.max(1, streamFlushEvery);
+        this.deltaOverlap = Duration.ofMillis(Math.max(0, deltaOverlapMillis));
+    }
+
+    /** Newest first; {@code before} is an opaque cursor from a previous page, null for the first page. */
+    @Transactional(readOnly = true)
+    public List<Map<String, Object>> listOrders(String userName, String before, int pageSize) {
+        List<OrderEntity> orders;
+        if (before == null) {
+            orders = orderRepository.findByUserNameOrderByCreatedAtDescIdDesc(userName, Limit.of(pageSize));
+        } else {
+            Cursor cursor = Cursor.parse(before);
+            orders = orderRepository.findOlderThan(userName, cursor.createdAt(), cursor.id(), Limit.of(pageSize));
+        }
+        return orders.stream().map(OrderListService::toMap).toList();
     }
 
-    public List<Map<String, Object>> listOrders() {
+    /** Where delta polling starts after a first page fetched now. */
+    public String initialSince() {
+        return new Cursor(Instant.now().minus(deltaOverlap), 0).toString();
+    }
+
+    /**
+     * Orders after the {@code since} cursor, oldest first, so a polling client only fetches the delta.
+     * <p>
+     * Ids come from a pooled sequence and createdAt is taken before the insert, so an order can commit after
+     * a newer one was already returned. The next cursor therefore never moves past {@code now - overlap}
+     * (settled: anything created before it has committed); newer orders are sent again on the next poll.
+     * A page that is full of unsettled orders still advances, or paging could not progress.
+     */
+    @Transactional(readOnly = true)
+    public Delta listOrdersSince(String userName, String since, int pageSize) {
+        Cursor from = Cursor.parse(since);
+        List<Map<String, Object>> orders = orderRepository
+                .findNewerThan(userName, from.createdAt(), from.id(), Limit.of(pageSize))
+                .stream().map(OrderListService::toMap).toList();
+        boolean hasMore = orders.size() == pageSize;
+
+        Cursor settled = new Cursor(Instant.now().minus(deltaOverlap), 0);
+        Cursor next = from;
+        for (Map<String, Object> order : orders) {
+            Cursor c = Cursor.of(order);
+            if (c.compareTo(settled) > 0) break;
+            next = c;
+        }
+        if (hasMore && next.equals(from)) {
+            next = Cursor.of(orders.get(orders.size() - 1));
+        } else if (!hasMore && settled.compareTo(next) > 0) {
+            // nothing settled is left after the page, so the cursor can catch up with the clock
+            next = settled;
+        }
+        return new Delta(orders, next.toString(), hasMore);
+    }
 
-        return orderRepository.findAll().stream().map(order -> {
+    /**
+     * Writes the user's orders as NDJSON, one order per line, straight from a JDBC cursor.
+     * {@code items} is embedded as raw JSON for legacy orders and built from order_items otherwise.
+     * Returns the number of orders written.
+     */
+    public long streamOrders(String userName, String since, OutputStream out) {
+        Cursor from = since == null ? null : Cursor.parse(since);
+        Long written = readOnlyTx.execute(status -> {
+            var query = entityManager.createQuery(from == null ? STREAM_ALL : STREAM_SINCE, Tuple.class)
+                    .setParameter("userName", userName)
+                    .setHint("org.hibernate.fetchSize", streamFetchSize);
+            if (from != null) {
+                query.setParameter("createdAt", from.createdAt());
+                query.setParameter("id", from.id());
+            }
 
-            Map<String, Object> o = new HashMap<>();
+            long n = 0;
+            try (Stream<Tuple> rows = query.getResultStream();
+                 JsonGenerator gen = JSON.createGenerator(out)) {
+                // the servlet stream is closed by the container, not by us
+                gen.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+                gen.setRootValueSeparator(null);
+
+                Long current = null;
+                boolean openItems = false;
+                for (Iterator<Tuple> it = rows.iterator(); it.hasNext(); ) {
+                    Tuple row = it.next();
+                    Long id = row.get("id", Long.class);
+                    if (!id.equals(current)) {
+                        if (current != null) {
+                            endOrder(gen, openItems);
+                            if (++n % streamFlushEvery == 0) gen.flush();
+                        }
+                        current = id;
+                        openItems = startOrder(gen, row);
+                    }
+                    Long productId = row.get("productId", Long.class);
+                    if (openItems && productId != null) {
+                        writeItem(gen, productId, row.get("productName", String.class),
+                                row.get("unitPriceCents", Integer.class), row.get("quantity", Integer.class));
+                    }
+                }
+                if (current != null) {
+                    endOrder(gen, openItems);
+                    n++;
+                }
+                gen.flush();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            return n;
+        });
+        return written != null ? written : 0;
+    }
+
+    /** Returns true if the items array was left open for the order's lines. */
+    private static boolean startOrder(JsonGenerator gen, Tuple row) throws IOException {
+        gen.writeStartObject();
+        gen.writeNumberField("id", row.get("id", Long.class));
+        gen.writeStringField("user_name", row.get("userName", String.class));
+        gen.writeNumberField("total_cents", row.get("totalCents", Integer.class));
+
+        Instant createdAt = row.get("createdAt", Instant.class);
+        gen.writeStringField("created_at", createdAt != null ? createdAt.toString() : null);
+
+        String itemsJson = row.get("itemsJson", String.class);
+        gen.writeFieldName("items");
+        if (itemsJson == null) {
+            gen.writeStartArray();
+            return true;
+        }
+        if (itemsJson.isBlank()) {
+            gen.writeNull();
+        } else {
+            gen.writeRawValue(itemsJson);
+        }
+        return false;
+    }
+
+    private static void endOrder(JsonGenerator gen, boolean openItems) throws IOException {
+        if (openItems) gen.writeEndArray();
+        gen.writeEndObject();
+        gen.writeRaw('\n');
+    }
+
+    // same shape the client posts with OrderPlaced, and legacy items_json holds
+    private static void writeItem(JsonGenerator gen, long productId, String productName, int unitPriceCents, int quantity)
+            throws IOException {
+        gen.writeStartObject();
+        gen.writeObjectFieldStart("product");
+        gen.writeNumberField("id", productId);
+        gen.writeStringField("name", productName);
+        gen.writeNumberField("price_cents", unitPriceCents);
+        gen.writeEndObject();
+        gen.writeNumberField("quantity", quantity);
+        gen.writeEndObject();
+    }
+
+    private static String itemsJson(List<OrderItemEntity> items) {
+        StringWriter out = new StringWriter();
+        try (JsonGenerator gen = JSON.createGenerator(out)) {
+            gen.writeStartArray();
+            for (OrderItemEntity item : items) {
+                writeItem(gen, item.getProductId(), item.getProductName(), item.getUnitPriceCents(), item.getQuantity());
+            }
+            gen.writeEndArray();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return out.toString();
+    }
+
+    public static String cursorOf(Map<String, Object> order) {
+        return Cursor.of(order).toString();
+    }
 
-            o.put("id", order.getId());
-            o.put("user_name", order.getUserName());
-            o.put("total_cents", order.getTotalCents());
-            o.put("items", order.getItemsJson());
-            o.put("created_at", order.getCreatedAt());
+    static Map<String, Object> toMap(OrderEntity order) {
+        Map<String, Object> o = new HashMap<>();
 
-            return o;
+        o.put("id", order.getId());
+        o.put("user_name", order.getUserName());
+        o.put("total_cents", order.getTotalCents());
+        o.put("items", order.getItemsJson() != null ? order.getItemsJson() : itemsJson(order.getItems()));
+        o.put("created_at", order.getCreatedAt());
 
-        }).toList();
+        return o;
     }
-}
\ No newline at end of file
+}
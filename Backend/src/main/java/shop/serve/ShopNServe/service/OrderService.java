@@ -1,25 +1,81 @@
 package shop.serve.ShopNServe.service;
 
+import jakarta.annotation.PostConstruct;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
 import shop.serve.ShopNServe.model.OrderEntity;
+import shop.serve.ShopNServe.model.OrderItemEntity;
 import shop.serve.ShopNServe.repository.OrderRepository;
 
+import java.util.List;
+import java.util.Map;
+
 @Service
 public class OrderService {
 
+    private static final Logger log = LoggerFactory.getLogger(OrderService.class);
+
     private final OrderRepository orderRepository;
+    private final JdbcTemplate jdbc;
+    private final ApplicationEventPublisher events;
 
-    public OrderService(OrderRepository orderRepository) {
+    public OrderService(OrderRepository orderRepository, JdbcTemplate jdbc, ApplicationEventPublisher events) {
         this.orderRepository = orderRepository;
+        this.jdbc = jdbc;
+        this.events = events;
     }
 
-    public void createOrder(String username, int totalCents, String itemsJson) {
+    public record OrderLine(long productId, String productName, int unitPriceCents, int quantity) {}
+
+    /** Application event for a stored order, {@code order} in the OrderHistory shape. */
+    public record OrderCreated(String userName, Map<String, Object> order) {}
+
+    /** Order row plus its lines; with a pooled id and ordered inserts this is two JDBC batches. */
+    @Transactional
+    public long createOrder(String username, int totalCents, List<OrderLine> lines) {
 
         OrderEntity order = new OrderEntity();
         order.setUserName(username);
         order.setTotalCents(totalCents);
-        order.setItemsJson(itemsJson);
+        for (OrderLine line : lines) {
+            order.addItem(new OrderItemEntity(line.productId(), line.productName(), line.unitPriceCents(), line.quantity()));
+        }
+
+        OrderEntity saved = orderRepository.save(order);
+        // delivered after commit, see UpdateBroadcaster
+        events.publishEvent(new OrderCreated(username, OrderListService.toMap(saved)));
+        return saved.getId();
+    }
+
+    /**
+     * Brings databases created before order_items up to date. ddl-auto=update adds tables but never relaxes
+     * items_json, and orders used to get AUTO_INCREMENT ids: the emulated sequence is moved past them,
+     * otherwise the pooled optimizer, which derives its block as [value - allocation + 1, value], would hand
+     * out ids that already exist. A column that is already nullable is left alone; any failure stops startup,
+     * since a sequence left behind would fail order inserts with duplicate keys.
+     */
+    @PostConstruct
+    public void migrateOrderSchema() {
+        Integer notNull = jdbc.queryForObject("""
+                SELECT COUNT(*) FROM information_schema.COLUMNS
+                WHERE TABLE_SCHEMA = DATABASE() AND TABLE_NAME = 'orders'
+                  AND COLUMN_NAME = 'items_json' AND IS_NULLABLE = 'NO'
+                """, Integer.class);
+        if (notNull != null && notNull > 0) {
+            jdbc.execute("ALTER TABLE orders MODIFY items_json TEXT NULL");
+            log.info("orders.items_json made nullable");
+        }
 
-        orderRepository.save(order);
+        int updated = jdbc.update("""
+                UPDATE orders_seq s
+                JOIN (SELECT COALESCE(MAX(id), 0) + ? + 1 AS floor_val FROM orders) o
+                SET s.next_val = o.floor_val
+                WHERE s.next_val < o.floor_val
+                """, OrderEntity.ID_ALLOCATION_SIZE);
+        if (updated > 0) log.info("orders_seq moved past existing order ids");
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,133 @@
+package shop.serve.ShopNServe.service;
+
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * BCrypt hashing and verification on a small dedicated pool.
+ * <p>
+ * One BCrypt check at the default cost takes tens of milliseconds of CPU. A login storm running it on request
+ * threads would take every core away from ProductList and OrderHistory. Here at most {@code threads} hashes
+ * run at once and at most {@code queue-capacity} wait. Anything beyond that fails immediately with
+ * {@link BusyException}, as does a wait longer than {@code timeout-ms}. A caller never holds a request
+ * thread for long on a hash that cannot start soon.
+ */
+@Component
+public class PasswordHasher {
+
+    /** The pool is saturated; the caller should answer with a retry hint rather than wait. */
+    public static final class BusyException extends RuntimeException {
+        public BusyException(String message) {
+            super(message, null, false, false);
+        }
+    }
+
+    public record Stats(int threads, int active, int queued, int queueCapacity, long completed, long rejected, long timedOut) {}
+
+    private final BCryptPasswordEncoder encoder;
+    private final ThreadPoolExecutor pool;
+    private final int queueCapacity;
+    private final long timeoutMillis;
+    private final AtomicLong rejected = new AtomicLong();
+    private final AtomicLong timedOut = new AtomicLong();
+    // unknown users are checked against this, so their logins cost as much as real ones
+    private final String dummyHash;
+
+    public PasswordHasher(
+            @Value("${shopnserve.auth.hash.bcrypt-strength:10}") int strength,
+            @Value("${shopnserve.auth.hash.threads:0}") int threads,
+            @Value("${shopnserve.auth.hash.queue-capacity:32}") int queueCapacity,
+            @Value("${shopnserve.auth.hash.timeout-ms:2000}") long timeoutMillis
+    ) {
+        this.encoder = new BCryptPasswordEncoder(strength);
+        this.queueCapacity = Math.max(1, queueCapacity);
+        this.timeoutMillis = timeoutMillis;
+
+        // 0: half the cores, so hashing can never take all of them
+        int n = threads > 0 ? threads : Math.max(1, Runtime.getRuntime().availableProcessors() / 2);
+        AtomicInteger threadIds = new AtomicInteger();
+        this.pool = new ThreadPoolExecutor(
+                n, n, 60, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(this.queueCapacity),
+                r -> {
+                    Thread t = new Thread(r, "password-hash-" + threadIds.incrementAndGet());
+                    t.setDaemon(true);
+                    return t;
+                },
+                new ThreadPoolExecutor.AbortPolicy()
+        );
+        pool.allowCoreThreadTimeOut(true);
+        this.dummyHash = encoder.encode("not-a-password");
+    }
+
+    public String hash(String raw) {
+        return submit(() -> encoder.encode(raw));
+    }
+
+    /** {@code hash} may be null for an unknown user: the check still runs, then fails. */
+    public boolean matches(String raw, String hash) {
+        if (hash == null) {
+            submit(() -> encoder.matches(raw, dummyHash));
+            return false;
+        }
+        return submit(() -> encoder.matches(raw, hash));
+    }
+
+    /** Hashes on the calling thread, for seeding at startup. */
+    public String hashNow(String raw) {
+        return encoder.encode(raw);
+    }
+
+    public Stats stats() {
+        return new Stats(
+                pool.getMaximumPoolSize(),
+                pool.getActiveCount(),
+                pool.getQueue().size(),
+                queueCapacity,
+                pool.getCompletedTaskCount(),
+                rejected.get(),
+                timedOut.get()
+        );
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        pool.shutdown();
+    }
+
+    private <T> T submit(Callable<T> work) {
+        Future<T> future;
+        try {
+            future = pool.submit(work);
+        } catch (RejectedExecutionException e) {
+            rejected.incrementAndGet();
+            throw new BusyException("Password hashing saturated");
+        }
+        try {
+            return future.get(timeoutMillis, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            future.cancel(true);
+            timedOut.incrementAndGet();
+            throw new BusyException("Password hashing timed out after " + timeoutMillis + " ms");
+        } catch (InterruptedException e) {
+            future.cancel(true);
+            Thread.currentThread().interrupt();
+            throw new BusyException("Interrupted while waiting for password hashing");
+        } catch (ExecutionException e) {
+            throw e.getCause() instanceof RuntimeException re ? re : new IllegalStateException(e.getCause());
+        }
+    }
+}
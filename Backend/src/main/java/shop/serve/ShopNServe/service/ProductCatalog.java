@@ -0,0 +1,149 @@
+package shop.serve.ShopNServe.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import shop.serve.ShopNServe.model.ProductView;
+import shop.serve.ShopNServe.repository.ProductRepository;
+
+import java.time.Instant;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Immutable, versioned in-memory copy of the product catalog.
+ * <p>
+ * Readers never touch the database once a snapshot exists. It is rebuilt after JPA writes to products
+ * ({@link ProductChangeListener}) and when the periodic check sees out-of-band changes. That check reads the
+ * row count and {@code MAX(updated_at)} from an index; every {@code full-check-every} runs it also hashes the
+ * table, for writes that bypass {@code updated_at}.
+ */
+@Service
+public class ProductCatalog {
+
+    private static final Logger log = LoggerFactory.getLogger(ProductCatalog.class);
+
+    /** {@code stock} of the products is as of {@code loadedAt}; live levels come as {@code stock} events. */
+    public record Snapshot(long version, List<ProductView> products, long rowCount, long updatedMicros, Instant loadedAt) {}
+
+    /** Application event, published whenever a new snapshot replaces an older one. */
+    public record Changed(long version) {}
+
+    private final ProductService productService;
+    private final ProductRepository productRepository;
+    private final ApplicationEventPublisher events;
+    private final AtomicReference<Snapshot> current = new AtomicReference<>();
+    private volatile boolean dirty = true;
+    // single-flight reload; a lock rather than synchronized, which would pin a virtual thread during the query
+    private final ReentrantLock reloadLock = new ReentrantLock();
+    private final int fullCheckEvery;
+    private long checks;
+    private Long lastChecksum;
+
+    public ProductCatalog(
+            ProductService productService,
+            ProductRepository productRepository,
+            ApplicationEventPublisher events,
+            @Value("${shopnserve.catalog.full-check-every:20}") int fullCheckEvery
+    ) {
+        this.productService = productService;
+        this.productRepository = productRepository;
+        this.events = events;
+        this.fullCheckEvery = fullCheckEvery;
+    }
+
+    public Snapshot snapshot() {
+        Snapshot s = current.get();
+        return s != null && !dirty ? s : reload();
+    }
+
+    public long version() {
+        return snapshot().version();
+    }
+
+    public void invalidate() {
+        dirty = true;
+    }
+
+    /** Reloads now instead of on the next read, so subscribers hear about the change. */
+    public void refresh() {
+        invalidate();
+        reload(false);
+    }
+
+    @Scheduled(
+            initialDelayString = "${shopnserve.catalog.refresh-period-ms:30000}",
+            fixedDelayString = "${shopnserve.catalog.refresh-period-ms:30000}"
+    )
+    public void checkVersion() {
+        Snapshot s = current.get();
+        if (s == null) return;
+        try {
+            ProductRepository.CatalogVersion v = productRepository.catalogVersion();
+            if (v.getRowCount() != s.rowCount() || v.getUpdatedMicros() != s.updatedMicros()) {
+                refresh();
+                return;
+            }
+            // scheduler thread only, so checks and lastChecksum need no synchronisation
+            if (fullCheckEvery > 0 && ++checks % fullCheckEvery == 0) {
+                long checksum = productRepository.fingerprint().getChecksum();
+                if (lastChecksum != null && lastChecksum != checksum) {
+                    invalidate();
+                    reload(true);
+                }
+                lastChecksum = checksum;
+            }
+        } catch (Exception e) {
+            log.warn("Catalog version check failed: {}", e.getMessage());
+        }
+    }
+
+    private Snapshot reload() {
+        return reload(false);
+    }
+
+    // force: reload even if count and updated_at are unchanged
+    private Snapshot reload(boolean force) {
+        reloadLock.lock();
+        try {
+            return reloadLocked(force);
+        } finally {
+            reloadLock.unlock();
+        }
+    }
+
+    private Snapshot reloadLocked(boolean force) {
+        Snapshot s = current.get();
+        if (s != null && !dirty) return s;
+
+        // cleared before reading, so an invalidation racing with the load triggers another one
+        dirty = false;
+        try {
+            ProductRepository.CatalogVersion v = productRepository.catalogVersion();
+            if (!force && s != null && v.getRowCount() == s.rowCount() && v.getUpdatedMicros() == s.updatedMicros()) {
+                return s;
+            }
+
+            List<ProductView> products = productService.listAll().stream().map(ProductView::of).toList();
+            // time-based so a restarted instance never reuses a version a client may still hold
+            Snapshot next = new Snapshot(
+                    Math.max(s == null ? 0 : s.version() + 1, System.currentTimeMillis()),
+                    products,
+                    v.getRowCount(),
+                    v.getUpdatedMicros(),
+                    Instant.now()
+            );
+            current.set(next);
+            if (s != null) events.publishEvent(new Changed(next.version()));
+            log.debug("Catalog snapshot v{} loaded, {} products", next.version(), products.size());
+            return next;
+        } catch (RuntimeException e) {
+            dirty = true;
+            throw e;
+        }
+    }
+}
@@ -0,0 +1,56 @@
+package shop.serve.ShopNServe.service;
+
+import jakarta.persistence.PostPersist;
+import jakarta.persistence.PostRemove;
+import jakarta.persistence.PostUpdate;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import shop.serve.ShopNServe.model.ProductEntity;
+
+/**
+ * JPA listener on {@link ProductEntity}; once the change is committed it reloads the catalog snapshot,
+ * which notifies subscribers, and re-reads the product's stock counter.
+ */
+@Component
+public class ProductChangeListener {
+
+    private static final Logger log = LoggerFactory.getLogger(ProductChangeListener.class);
+
+    private final ProductCatalog catalog;
+    private final StockReservations stock;
+
+    public ProductChangeListener(@Lazy ProductCatalog catalog, @Lazy StockReservations stock) {
+        this.catalog = catalog;
+        this.stock = stock;
+    }
+
+    @PostPersist
+    @PostUpdate
+    @PostRemove
+    public void onChange(ProductEntity product) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    changed(product);
+                }
+            });
+        } else {
+            changed(product);
+        }
+    }
+
+    private void changed(ProductEntity product) {
+        try {
+            catalog.refresh();
+        } catch (RuntimeException e) {
+            // the snapshot stays dirty and is reloaded on the next read
+            log.warn("Catalog refresh after product change failed: {}", e.getMessage());
+        }
+        if (product.getId() != null) stock.reconcile(product.getId());
+    }
+}
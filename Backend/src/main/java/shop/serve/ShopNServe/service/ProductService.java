@@ -1,7 +1,14 @@
 package shop.serve.ShopNServe.service;
 
+import jakarta.annotation.PostConstruct;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.data.domain.Limit;
+import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.stereotype.Service;
 import shop.serve.ShopNServe.model.ProductEntity;
+import shop.serve.ShopNServe.model.ProductSummary;
+import shop.serve.ShopNServe.model.ProductView;
 import shop.serve.ShopNServe.repository.ProductRepository;
 
 import java.util.List;
@@ -9,13 +16,54 @@ import java.util.List;
 @Service
 public class ProductService {
 
+    private static final Logger log = LoggerFactory.getLogger(ProductService.class);
+
     private final ProductRepository repo;
+    private final JdbcTemplate jdbc;
 
-    public ProductService(ProductRepository repo) {
+    public ProductService(ProductRepository repo, JdbcTemplate jdbc) {
         this.repo = repo;
+        this.jdbc = jdbc;
+    }
+
+    /**
+     * Adds {@code products.updated_at} and its index to databases created before them. mysql/init only runs on
+     * an empty volume and ddl-auto never adds a column the entity does not map, yet the {@link ProductCatalog}
+     * version check and the {@link StockReservations} write-back both use it. A failure stops startup instead
+     * of leaving both of them failing on every run.
+     */
+    @PostConstruct
+    public void migrateProductSchema() {
+        if (count("COLUMNS", "COLUMN_NAME = 'updated_at'") == 0) {
+            jdbc.execute("""
+                    ALTER TABLE products ADD COLUMN updated_at TIMESTAMP(6) NOT NULL
+                        DEFAULT CURRENT_TIMESTAMP(6) ON UPDATE CURRENT_TIMESTAMP(6)
+                    """);
+            log.info("products.updated_at added");
+        }
+        if (count("STATISTICS", "INDEX_NAME = 'idx_products_updated'") == 0) {
+            jdbc.execute("CREATE INDEX idx_products_updated ON products (updated_at)");
+            log.info("products.idx_products_updated added");
+        }
+    }
+
+    private int count(String table, String condition) {
+        Integer n = jdbc.queryForObject(
+                "SELECT COUNT(*) FROM information_schema." + table
+                        + " WHERE TABLE_SCHEMA = DATABASE() AND TABLE_NAME = 'products' AND " + condition,
+                Integer.class);
+        return n == null ? 0 : n;
     }
 
     public List<ProductEntity> listAll() {
         return repo.findAll();
     }
-}
\ No newline at end of file
+
+    /** Products with id greater than {@code afterId}, ordered by id; pageSize <= 0 means no limit. */
+    public List<?> page(long afterId, int pageSize, boolean withDescription) {
+        Limit limit = pageSize > 0 ? Limit.of(pageSize) : Limit.unlimited();
+        return withDescription
+                ? repo.findByIdGreaterThanOrderByIdAsc(afterId, limit, ProductView.class)
+                : repo.findByIdGreaterThanOrderByIdAsc(afterId, limit, ProductSummary.class);
+    }
+}
@@ -0,0 +1,224 @@
+package shop.serve.ShopNServe.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import shop.serve.ShopNServe.model.Capability;
+
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Token-bucket admission per JWT subject, or per client address when there is none, and per
+ * {@code sender.component}, with its own budget per capability.
+ * <p>
+ * A bucket is a single {@code AtomicLong}, the time at which it will be full again (GCRA). Admitting a request
+ * advances that time by one emission interval with a CAS, and it is refused when the bucket would then be more
+ * than {@code burst} intervals in the future. Limits live apart from the buckets and are swapped as a whole by
+ * {@link #configure}, so changes apply to existing buckets at once.
+ * <p>
+ * An event is admitted as a whole: one token per capability from each bucket, and when any of them refuses,
+ * the tokens already taken for the event are put back.
+ * <p>
+ * The table holds {@code max-buckets} entries, and full buckets are evicted periodically. Evicting one loses
+ * nothing, because a new bucket starts full. When the table is at capacity, full buckets are evicted at once
+ * (at most every {@value #SWEEP_GAP_MILLIS} ms); if it is still full, a request that needs a new bucket is
+ * refused without touching any other one.
+ * <p>
+ * {@code sender.component} is whatever the client sends, so a made-up name starts with a full bucket. What
+ * bounds a sender is its own bucket: the user's, or for an unauthenticated request, the client address's. So
+ * spraying names gets no further than the client limit, and one client cannot use up the component budget
+ * that a login component shares with everyone else.
+ */
+@Component
+public class RateLimiter {
+
+    private static final Logger log = LoggerFactory.getLogger(RateLimiter.class);
+
+    public enum Kind { USER, CLIENT, COMPONENT }
+
+    /** {@code ratePerSecond} tokens are added per second, up to {@code burst}. */
+    public record Limit(double ratePerSecond, int burst) {
+        public Limit {
+            if (!(ratePerSecond > 0) || burst < 1) {
+                throw new IllegalArgumentException("Expected rate > 0 and burst >= 1, got " + ratePerSecond + ":" + burst);
+            }
+        }
+
+        long intervalNanos() {
+            return Math.max(1, (long) (TimeUnit.SECONDS.toNanos(1) / ratePerSecond));
+        }
+    }
+
+    /** Limits per kind; capabilities without an entry are not limited for that kind. */
+    public record Limits(Map<Capability, Limit> user, Map<Capability, Limit> client, Map<Capability, Limit> component) {}
+
+    /** {@code overflowed} counts requests refused because the table was full. */
+    public record Stats(boolean enabled, int buckets, int maxBuckets, long admitted, long rejected, long overflowed, Limits limits) {}
+
+    /** The capability that was refused, and the nanoseconds until it would be admitted. */
+    public record Refusal(Capability capability, long waitNanos) {}
+
+    private record Key(Kind kind, String id, Capability capability) {}
+
+    // interval and tolerance precomputed, read on every request
+    private record Rule(long intervalNanos, long toleranceNanos) {}
+
+    private static final long SWEEP_GAP_MILLIS = 100;
+    private static final long SWEEP_GAP_NANOS = TimeUnit.MILLISECONDS.toNanos(SWEEP_GAP_MILLIS);
+    private static final Kind[] KINDS = Kind.values();
+
+    private final Map<Key, AtomicLong> buckets = new ConcurrentHashMap<>();
+    private final int maxBuckets;
+    private final AtomicLong lastSweep = new AtomicLong(System.nanoTime() - SWEEP_GAP_NANOS);
+    private final LongAdder admitted = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+    private final LongAdder overflowed = new LongAdder();
+    private volatile boolean enabled;
+    private volatile Limits limits;
+    private volatile Map<Kind, Map<Capability, Rule>> rules;
+
+    public RateLimiter(
+            @Value("${shopnserve.ratelimit.enabled:true}") boolean enabled,
+            @Value("${shopnserve.ratelimit.user:ProductList=20:40,OrderHistory=10:20,OrderPlaced=2:5,Authorization=20:40}") String user,
+            @Value("${shopnserve.ratelimit.client:Authentication=5:10,ProductList=20:40}") String client,
+            @Value("${shopnserve.ratelimit.component:Authentication=50:100,ProductList=500:1000,OrderHistory=200:400,OrderPlaced=50:100,Authorization=500:1000}") String component,
+            @Value("${shopnserve.ratelimit.max-buckets:100000}") int maxBuckets
+    ) {
+        this.maxBuckets = Math.max(1, maxBuckets);
+        configure(enabled, new Limits(parse(user), parse(client), parse(component)));
+    }
+
+    /**
+     * Returns 0 when the request is admitted, otherwise the nanoseconds until it would be.
+     * {@code subject} is null for unauthenticated requests, which are then limited per {@code client} address
+     * instead; a null client is one shared address.
+     */
+    public long admit(String subject, String client, String component, Capability capability) {
+        Refusal refusal = admit(subject, client, component, List.of(capability));
+        return refusal == null ? 0 : refusal.waitNanos();
+    }
+
+    /**
+     * Admits an event that requests {@code capabilities}; null when admitted. On a refusal nothing is spent:
+     * tokens taken for earlier buckets or capabilities of the event are put back.
+     */
+    public Refusal admit(String subject, String client, String component, List<Capability> capabilities) {
+        if (!enabled) return null;
+        Map<Kind, Map<Capability, Rule>> r = rules;
+        long now = System.nanoTime();
+
+        AtomicLong[] taken = new AtomicLong[KINDS.length * capabilities.size()];
+        long[] intervals = new long[taken.length];
+        int count = 0;
+        for (Capability cap : capabilities) {
+            for (Kind kind : KINDS) {
+                if (kind == Kind.USER ? subject == null : kind == Kind.CLIENT && subject != null) continue;
+                Rule rule = r.get(kind).get(cap);
+                if (rule == null) continue;
+
+                String id = switch (kind) {
+                    case USER -> subject;
+                    case CLIENT -> client == null ? "" : client;
+                    case COMPONENT -> component;
+                };
+                AtomicLong bucket = bucket(new Key(kind, id, cap), now);
+                long wait = bucket == null ? rule.intervalNanos() : take(bucket, rule, now);
+                if (wait > 0) {
+                    for (int i = 0; i < count; i++) taken[i].getAndAdd(-intervals[i]);
+                    rejected.increment();
+                    return new Refusal(cap, wait);
+                }
+                taken[count] = bucket;
+                intervals[count++] = rule.intervalNanos();
+            }
+        }
+        admitted.increment();
+        return null;
+    }
+
+    public void configure(boolean enabled, Limits limits) {
+        Map<Kind, Map<Capability, Rule>> next = new EnumMap<>(Kind.class);
+        next.put(Kind.USER, rulesOf(limits.user()));
+        next.put(Kind.CLIENT, rulesOf(limits.client()));
+        next.put(Kind.COMPONENT, rulesOf(limits.component()));
+        this.rules = next;
+        this.limits = new Limits(Map.copyOf(limits.user()), Map.copyOf(limits.client()), Map.copyOf(limits.component()));
+        this.enabled = enabled;
+        log.info("Rate limits {}: user {}, client {}, component {}",
+                enabled ? "on" : "off", limits.user(), limits.client(), limits.component());
+    }
+
+    public Stats stats() {
+        return new Stats(enabled, buckets.size(), maxBuckets, admitted.sum(), rejected.sum(), overflowed.sum(), limits);
+    }
+
+    @Scheduled(
+            initialDelayString = "${shopnserve.ratelimit.evict-period-ms:30000}",
+            fixedDelayString = "${shopnserve.ratelimit.evict-period-ms:30000}"
+    )
+    public void evictIdle() {
+        evict(System.nanoTime());
+    }
+
+    private void evict(long now) {
+        // a full bucket holds no state; a request racing the removal costs at most one token of accuracy
+        buckets.values().removeIf(b -> b.get() - now <= 0);
+    }
+
+    // 0 or the wait in nanos; usually one CAS
+    private static long take(AtomicLong bucket, Rule rule, long now) {
+        while (true) {
+            long fullAt = bucket.get();
+            long next = Math.max(fullAt, now) + rule.intervalNanos();
+            long ahead = next - now - rule.toleranceNanos();
+            if (ahead > 0) return ahead;
+            if (bucket.compareAndSet(fullAt, next)) return 0;
+        }
+    }
+
+    // null when the table is full even after evicting what it can
+    private AtomicLong bucket(Key key, long now) {
+        AtomicLong bucket = buckets.get(key);
+        if (bucket != null) return bucket;
+        if (buckets.size() >= maxBuckets) {
+            long last = lastSweep.get();
+            // one thread sweeps; buckets of sprayed keys are full again after one interval
+            if (now - last >= SWEEP_GAP_NANOS && lastSweep.compareAndSet(last, now)) evict(now);
+            if (buckets.size() >= maxBuckets) {
+                overflowed.increment();
+                return null;
+            }
+        }
+        // nanoTime origin is arbitrary, so "full" is an explicit past instant rather than 0
+        long full = now - TimeUnit.DAYS.toNanos(1);
+        return buckets.computeIfAbsent(key, k -> new AtomicLong(full));
+    }
+
+    private static Map<Capability, Rule> rulesOf(Map<Capability, Limit> limits) {
+        Map<Capability, Rule> out = new EnumMap<>(Capability.class);
+        limits.forEach((cap, limit) -> out.put(cap, new Rule(limit.intervalNanos(), limit.intervalNanos() * limit.burst())));
+        return out;
+    }
+
+    /** {@code "ProductList=20:40,OrderPlaced=2:5"}: capability = tokens per second : burst. */
+    public static Map<Capability, Limit> parse(String spec) {
+        Map<Capability, Limit> out = new LinkedHashMap<>();
+        for (String entry : spec.split(",")) {
+            if (entry.isBlank()) continue;
+            String[] kv = entry.split("=", 2);
+            String[] rb = kv.length == 2 ? kv[1].split(":", 2) : new String[0];
+            if (rb.length != 2) throw new IllegalArgumentException("Expected Capability=rate:burst, got: " + entry.trim());
+            out.put(Capability.valueOf(kv[0].trim()), new Limit(Double.parseDouble(rb[0].trim()), Integer.parseInt(rb[1].trim())));
+        }
+        return out;
+    }
+}
@@ -1,23 +1,130 @@
 package shop.serve.ShopNServe.service;
 
-import com.fasterxml.jackson.databind.ObjectMapper;
-import org.springframework.data.neo4j.core.Neo4jClient;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 import shop.serve.ShopNServe.model.Capability;
 import shop.serve.ShopNServe.model.MessageEventRequest;
 
 import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.UUID;
 
 @Service
 public class SessionGraphIngestService {
 
-    private final Neo4jClient neo4j;
-    private static final ObjectMapper MAPPER = new ObjectMapper();
+    /**
+     * {@code SESSION}: every session merges its own {@code Capability} and {@code BackendComponent} copies.
+     * {@code SHARED}: one global node per capability and backend (extra label {@code Dimension}, so a MERGE never
+     * picks up a leftover session copy); the request nodes carry {@code sessionId}, {@code capability} and
+     * {@code backend} and link to them. {@link SessionGraphMigration} moves existing session copies over.
+     */
+    public enum Model { SESSION, SHARED }
+
+    private final SessionGraphWriter writer;
+    private final GraphPayloads payloads;
+    private final Model model;
+    private final String message;
+
+    /**
+     * Links {@code node} to the deduplicated payload described by the row keys {@code <prefix>Hash},
+     * {@code <prefix>Json}, ...; a no-op when the hash is null (payload inline, or not stored at all).
+     * MERGE on the unique hash, so concurrent writers of the same payload end up with one blob.
+     */
+    private static String linkPayload(String node, String prefix, String now) {
+        return """
+            FOREACH (h IN CASE WHEN %2$sHash IS NULL THEN [] ELSE [%2$sHash] END |
+              MERGE (blob:PayloadBlob {hash:h})
+              ON CREATE SET blob.json = %2$sJson,
+                            blob.size = %2$sSize,
+                            blob.truncated = %2$sTruncated,
+                            blob.summary = %2$sSummary,
+                            blob.createdAt = datetime(%3$s)
+              CREATE (%1$s)-[:HAS_PAYLOAD]->(blob)
+            )
+        """.formatted(node, prefix, now);
+    }
+
+    // whole message lifecycle in one statement; labels are static per capability, hence the FOREACH switches.
+    // %1$s and %2$s are the backend and capability node patterns of the graph model
+    private static final String MESSAGE = """
+        UNWIND $rows AS row
+        MERGE (s:Session {id:row.sid})
+        ON CREATE SET s.startedAt = datetime(row.now)
+
+        MERGE (ui:UIComponent {sessionId:row.sid, name:row.ui})
+        MERGE (s)-[:TRIGGERED_BY]->(ui)
+
+        WITH row, ui
+        UNWIND row.steps AS step
+        MERGE (b:%1$s)
+        MERGE (c:%2$s)
+
+        CREATE (r {
+          id:step.rid,
+          sessionId:row.sid,
+          capability:step.cap,
+          backend:step.backend,
+          payload:step.payload,
+          requestedAt: datetime(step.requestedAt),
+          completedAt: datetime(step.completedAt),
+          failedAt: datetime(step.failedAt),
+          error: step.error
+        })
+        FOREACH (_ IN CASE WHEN step.requestLabel = 'RequestedData' THEN [1] ELSE [] END | SET r:RequestedData)
+        FOREACH (_ IN CASE WHEN step.requestLabel = 'ProvidedData' THEN [1] ELSE [] END | SET r:ProvidedData)
+
+        CREATE (ui)-[:REQUESTS]->(r)
+        CREATE (r)-[:HANDLED_BY]->(b)
+        MERGE (b)-[:TRIGGERS_EVENT]->(c)
+    """ + linkPayload("r", "step.payload", "row.now") + """
+
+        WITH row, step, c
+        WHERE step.pid IS NOT NULL
+        CREATE (p {
+          id:step.pid,
+          sessionId:row.sid,
+          capability:step.cap,
+          payload:step.responsePayload,
+          providedAt: datetime(step.providedAt),
+          completedAt: datetime(step.providedAt)
+        })
+        FOREACH (_ IN CASE WHEN step.responseLabel = 'RequestedData' THEN [1] ELSE [] END | SET p:RequestedData)
+        FOREACH (_ IN CASE WHEN step.responseLabel = 'ProvidedData' THEN [1] ELSE [] END | SET p:ProvidedData)
+
+        CREATE (c)-[:PROVIDES]->(p)
+    """ + linkPayload("p", "step.responsePayload", "row.now");
+
+    public SessionGraphIngestService(
+            SessionGraphWriter writer,
+            GraphPayloads payloads,
+            @Value("${shopnserve.graph.model:session}") String model
+    ) {
+        this.writer = writer;
+        this.payloads = payloads;
+        this.model = Model.valueOf(model.trim().toUpperCase());
+
+        // the statement is fixed per model, built once
+        this.message = MESSAGE.formatted(backendNode("step.backend"), capabilityNode("step.cap"));
+    }
+
+    public Model model() {
+        return model;
+    }
+
+    private String backendNode(String name) {
+        return model == Model.SHARED
+                ? "BackendComponent:Dimension {name:" + name + "}"
+                : "BackendComponent {sessionId:row.sid, name:" + name + "}";
+    }
 
-    public SessionGraphIngestService(Neo4jClient neo4j) {
-        this.neo4j = neo4j;
+    private String capabilityNode(String name) {
+        return model == Model.SHARED
+                ? "Capability:Dimension {name:" + name + "}"
+                : "Capability {sessionId:row.sid, name:" + name + "}";
     }
 
     private boolean swapRequestedAndProvided(Capability capability) {
@@ -33,31 +140,51 @@ public class SessionGraphIngestService {
         return swapRequestedAndProvided(capability) ? "RequestedData" : "ProvidedData";
     }
 
-    public String ensureSession(String traceIdOrNull) {
-        String sid = (traceIdOrNull == null || traceIdOrNull.isBlank())
-                ? UUID.randomUUID().toString()
-                : traceIdOrNull.trim();
+    /** Starts collecting the graph lifecycle of one message; nothing is written until {@link #ingest}. */
+    public MessageTrace begin(MessageEventRequest event) {
+        return new MessageTrace(sessionIdOf(event), uiNameOf(event), Instant.now());
+    }
+
+    /** Writes session, UI, requested/provided nodes and their stamps for one message as a single statement. */
+    public void ingest(MessageTrace trace) {
+        List<Map<String, Object>> steps = new ArrayList<>(trace.steps.size());
+        for (CapabilityTrace step : trace.steps) {
+            Map<String, Object> row = row(
+                    "cap", step.capability.name(),
+                    "backend", step.backend,
+                    "rid", step.requestedId,
+                    "requestLabel", requestNodeLabel(step.capability),
+                    "requestedAt", step.requestedAt.toString(),
+                    "completedAt", step.completedAt != null ? step.completedAt.toString() : null,
+                    "failedAt", step.failedAt != null ? step.failedAt.toString() : null,
+                    "error", step.error,
+                    "pid", step.providedId,
+                    "responseLabel", responseNodeLabel(step.capability),
+                    "providedAt", step.providedAt != null ? step.providedAt.toString() : null
+            );
+            putPayload(row, "payload", step.capability, step.requestPayload);
+            if (step.providedId != null) putPayload(row, "responsePayload", step.capability, step.responsePayload);
+            steps.add(row);
+        }
 
-        String now = Instant.now().toString();
-        neo4j.query("""
-            MERGE (s:Session {id:$sid})
-            ON CREATE SET s.startedAt = datetime($now)
-        """).bindAll(Map.of(
-                "sid", sid,
-                "now", now
-        )).run();
+        writer.write(message, row(
+                "sid", trace.sessionId,
+                "ui", trace.uiName,
+                "now", trace.startedAt.toString(),
+                "steps", steps
+        ));
+    }
 
-        return sid;
+    public SessionGraphWriter.Stats writerStats() {
+        return writer.stats();
     }
 
-    public String ensureSessionAndUi(MessageEventRequest event) {
+    private static String sessionIdOf(MessageEventRequest event) {
         String sessionId = event.traceIdOrNull();
-        if (sessionId == null || sessionId.isBlank()) {
-            sessionId = UUID.randomUUID().toString();
-        } else {
-            sessionId = sessionId.trim();
-        }
+        return sessionId == null ? UUID.randomUUID().toString() : sessionId.trim();
+    }
 
+    private static String uiNameOf(MessageEventRequest event) {
         String ui = "unknown";
         try {
             if (event.sender() != null && event.sender().component() != null) {
@@ -66,147 +193,96 @@ public class SessionGraphIngestService {
             }
         } catch (Exception ignored) {
         }
+        return ui;
+    }
 
-        String now = Instant.now().toString();
+    // inline under "<key>" as before, or as "<key>Hash", "<key>Json", ... for linkPayload
+    private void putPayload(Map<String, Object> row, String key, Capability capability, Object payload) {
+        GraphPayloads.Stored stored = payloads.store(capability, payload);
+        if (stored == null || stored.hash() == null) {
+            row.put(key, stored != null ? stored.json() : null);
+            row.put(key + "Hash", null);
+            return;
+        }
+        row.put(key, null);
+        row.put(key + "Hash", stored.hash());
+        row.put(key + "Json", stored.json());
+        row.put(key + "Size", stored.size());
+        row.put(key + "Truncated", stored.truncated());
+        row.put(key + "Summary", stored.summary());
+    }
 
-        neo4j.query("""
-            MERGE (s:Session {id:$sid})
-            ON CREATE SET s.startedAt = datetime($now)
+    private static Map<String, Object> row(Object... keyValues) {
+        // HashMap, payloads may be null
+        Map<String, Object> row = new HashMap<>(keyValues.length);
+        for (int i = 0; i < keyValues.length; i += 2) {
+            row.put((String) keyValues[i], keyValues[i + 1]);
+        }
+        return row;
+    }
 
-            MERGE (ui:UIComponent {sessionId:$sid, name:$ui})
-            MERGE (s)-[:TRIGGERED_BY]->(ui)
-        """).bindAll(Map.of(
-                "sid", sessionId,
-                "ui", ui,
-                "now", now
-        )).run();
+    public static final class MessageTrace {
+        private final String sessionId;
+        private final String uiName;
+        private final Instant startedAt;
+        private final List<CapabilityTrace> steps = new ArrayList<>(2);
 
-        return sessionId;
-    }
+        private MessageTrace(String sessionId, String uiName, Instant startedAt) {
+            this.sessionId = sessionId;
+            this.uiName = uiName;
+            this.startedAt = startedAt;
+        }
 
-    public String createRequestedData(
-            String sessionId,
-            String uiComponent,
-            String backendComponent,
-            Capability capability,
-            Object requestPayload
-    ) {
-        String reqId = UUID.randomUUID().toString();
-        String now = Instant.now().toString();
+        public String sessionId() { return sessionId; }
+        public String uiName() { return uiName; }
+        public List<CapabilityTrace> steps() { return Collections.unmodifiableList(steps); }
 
-        String payload;
-        try {
-            payload = requestPayload == null ? null : MAPPER.writeValueAsString(requestPayload);
-        } catch (Exception e) {
-            payload = String.valueOf(requestPayload);
+        public CapabilityTrace requested(Capability capability, String backend, Object requestPayload) {
+            CapabilityTrace step = new CapabilityTrace(capability, backend, requestPayload);
+            steps.add(step);
+            return step;
+        }
+    }
+
+    public static final class CapabilityTrace {
+        private final Capability capability;
+        private final String backend;
+        private final String requestedId = UUID.randomUUID().toString();
+        private final Object requestPayload;
+        private final Instant requestedAt = Instant.now();
+        private Instant completedAt;
+        private Instant failedAt;
+        private String error;
+        private String providedId;
+        private Object responsePayload;
+        private Instant providedAt;
+
+        private CapabilityTrace(Capability capability, String backend, Object requestPayload) {
+            this.capability = capability;
+            this.backend = backend;
+            this.requestPayload = requestPayload;
         }
 
-        String requestLabel = requestNodeLabel(capability);
-
-        neo4j.query("""
-            MATCH (s:Session {id:$sid})-[:TRIGGERED_BY]->(ui:UIComponent {sessionId:$sid, name:$ui})
-            MERGE (b:BackendComponent {sessionId:$sid, name:$backend})
-            MERGE (c:Capability {sessionId:$sid, name:$cap})
-
-            CREATE (r:%s {
-              id:$rid,
-              sessionId:$sid,
-              payload:$payload,
-              requestedAt: datetime($now)
-            })
-
-            MERGE (ui)-[:REQUESTS]->(r)
-            MERGE (r)-[:HANDLED_BY]->(b)
-            MERGE (b)-[:TRIGGERS_EVENT]->(c)
-        """.formatted(requestLabel)).bindAll(Map.of(
-                "sid", sessionId,
-                "ui", uiComponent,
-                "backend", backendComponent,
-                "cap", capability.name(),
-                "rid", reqId,
-                "payload", payload,
-                "now", now
-        )).run();
-
-        return reqId;
-    }
-
-    public String createProvidedData(
-            String sessionId,
-            Capability capability,
-            Object responsePayload
-    ) {
-        String provId = UUID.randomUUID().toString();
-        String now = Instant.now().toString();
+        public Capability capability() { return capability; }
+        public String backend() { return backend; }
+        public Instant requestedAt() { return requestedAt; }
+        public Instant completedAt() { return completedAt; }
+        public Instant failedAt() { return failedAt; }
 
-        String payload;
-        try {
-            payload = responsePayload == null ? null : MAPPER.writeValueAsString(responsePayload);
-        } catch (Exception e) {
-            payload = String.valueOf(responsePayload);
+        public void completed() {
+            completedAt = Instant.now();
         }
 
-        String responseLabel = responseNodeLabel(capability);
-
-        neo4j.query("""
-            MATCH (c:Capability {sessionId:$sid, name:$cap})
-
-            CREATE (p:%s {
-              id:$pid,
-              sessionId:$sid,
-              payload:$payload,
-              providedAt: datetime($now)
-            })
-
-            MERGE (c)-[:PROVIDES]->(p)
-        """.formatted(responseLabel)).bindAll(Map.of(
-                "sid", sessionId,
-                "cap", capability.name(),
-                "pid", provId,
-                "payload", payload,
-                "now", now
-        )).run();
-
-        return provId;
-    }
-
-    public void markRequestedCompleted(String requestedId) {
-        neo4j.query("""
-            MATCH (n {id:$id})
-            WHERE n:RequestedData OR n:ProvidedData
-            SET n.completedAt = datetime()
-        """).bindAll(Map.of("id", requestedId)).run();
-    }
-
-    public void markRequestedFailed(String requestedId, String error) {
-        neo4j.query("""
-            MATCH (n {id:$id})
-            WHERE n:RequestedData OR n:ProvidedData
-            SET n.failedAt = datetime(),
-                n.error = $err
-        """).bindAll(Map.of(
-                "id", requestedId,
-                "err", error == null ? "" : error
-        )).run();
-    }
-
-    public void markProvidedCompleted(String providedId) {
-        neo4j.query("""
-            MATCH (n {id:$id})
-            WHERE n:RequestedData OR n:ProvidedData
-            SET n.completedAt = datetime()
-        """).bindAll(Map.of("id", providedId)).run();
-    }
-
-    public void markProvidedFailed(String providedId, String error) {
-        neo4j.query("""
-            MATCH (n {id:$id})
-            WHERE n:RequestedData OR n:ProvidedData
-            SET n.failedAt = datetime(),
-                n.error = $err
-        """).bindAll(Map.of(
-                "id", providedId,
-                "err", error == null ? "" : error
-        )).run();
-    }
-}
\ No newline at end of file
+        public void failed(String error) {
+            failedAt = Instant.now();
+            this.error = error == null ? "" : error;
+        }
+
+        /** Provided node, created already completed. */
+        public void provided(Object responsePayload) {
+            providedId = UUID.randomUUID().toString();
+            this.responsePayload = responsePayload;
+            providedAt = Instant.now();
+        }
+    }
+}
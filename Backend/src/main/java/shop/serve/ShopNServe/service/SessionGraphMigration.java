@@ -0,0 +1,211 @@
+package shop.serve.ShopNServe.service;
+
+import jakarta.annotation.PostConstruct;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.neo4j.core.Neo4jClient;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import shop.serve.ShopNServe.config.ConnectionGuards;
+import shop.serve.ShopNServe.model.Capability;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Moves a session graph written with {@code graph.model=session} over to the shared model.
+ * <p>
+ * On startup the shared {@code Capability} and {@code BackendComponent} nodes are created, one per capability
+ * and backend, so ingest only ever matches them. Then, in batches, the relationships of every per-session copy
+ * are re-pointed to its shared node and the copy is deleted. Request nodes get the {@code capability} and
+ * {@code backend} properties the shared model writes directly. Each batch is a transaction of its own, so the
+ * migration can stop anywhere and the next run carries on. Nothing happens in the session model.
+ */
+@Component
+public class SessionGraphMigration {
+
+    private static final Logger log = LoggerFactory.getLogger(SessionGraphMigration.class);
+
+    private static final String SEED = """
+        UNWIND $dimensions AS d
+        MERGE (c:Capability:Dimension {name: d.capability})
+        MERGE (b:BackendComponent:Dimension {name: d.backend})
+        MERGE (b)-[:TRIGGERS_EVENT]->(c)
+    """;
+
+    // the capability is only filled in when the session's backend handled just one
+    private static final String MIGRATE_BACKENDS = """
+        MATCH (old:BackendComponent) WHERE old.sessionId IS NOT NULL AND old.name IS NOT NULL
+        WITH old LIMIT $limit
+        MERGE (b:BackendComponent:Dimension {name: old.name})
+        WITH old, b, [(old)-[:TRIGGERS_EVENT]->(c:Capability) | c.name] AS caps
+        CALL {
+          WITH old, b, caps
+          MATCH (r)-[h:HANDLED_BY]->(old)
+          SET r.backend = coalesce(r.backend, old.name),
+              r.capability = coalesce(r.capability, CASE WHEN size(caps) = 1 THEN caps[0] END)
+          CREATE (r)-[:HANDLED_BY]->(b)
+          DELETE h
+          RETURN count(*) AS moved
+        }
+        CALL {
+          WITH b, caps
+          UNWIND caps AS name
+          MERGE (c:Capability:Dimension {name: name})
+          MERGE (b)-[:TRIGGERS_EVENT]->(c)
+          RETURN count(*) AS linked
+        }
+        DETACH DELETE old
+        RETURN count(*) AS migrated
+    """;
+
+    private static final String MIGRATE_CAPABILITIES = """
+        MATCH (old:Capability) WHERE old.sessionId IS NOT NULL AND old.name IS NOT NULL
+        WITH old LIMIT $limit
+        MERGE (c:Capability:Dimension {name: old.name})
+        WITH old, c
+        CALL {
+          WITH old, c
+          MATCH (old)-[x:PROVIDES]->(p)
+          SET p.capability = coalesce(p.capability, old.name)
+          CREATE (c)-[:PROVIDES]->(p)
+          DELETE x
+          RETURN count(*) AS moved
+        }
+        DETACH DELETE old
+        RETURN count(*) AS migrated
+    """;
+
+    public record Stats(
+            Instant lastRunAt,
+            long lastRunMillis,
+            long backendsMigrated,
+            long capabilitiesMigrated,
+            boolean complete,
+            String lastError
+    ) {}
+
+    private final Neo4jClient neo4j;
+    private final ConnectionGuards.Guard neo4jGuard;
+    private final boolean shared;
+    private final boolean enabled;
+    private final int batchSize;
+    private final long batchPauseMillis;
+    private final AtomicReference<Stats> lastRun = new AtomicReference<>();
+    private final ReentrantLock running = new ReentrantLock();
+    private volatile boolean complete;
+
+    public SessionGraphMigration(
+            Neo4jClient neo4j,
+            ConnectionGuards guards,
+            SessionGraphIngestService ingest,
+            @Value("${shopnserve.graph.migration.enabled:false}") boolean enabled,
+            @Value("${shopnserve.graph.migration.batch-size:500}") int batchSize,
+            @Value("${shopnserve.graph.migration.batch-pause-ms:50}") long batchPauseMillis
+    ) {
+        this.neo4j = neo4j;
+        this.neo4jGuard = guards.neo4j();
+        this.shared = ingest.model() == SessionGraphIngestService.Model.SHARED;
+        this.enabled = enabled;
+        this.batchSize = Math.max(1, batchSize);
+        this.batchPauseMillis = Math.max(0, batchPauseMillis);
+    }
+
+    @PostConstruct
+    public void seed() {
+        if (!shared) return;
+        List<Map<String, Object>> dimensions = new ArrayList<>();
+        for (Capability cap : Capability.values()) {
+            dimensions.add(Map.of("capability", cap.name(), "backend", cap.backend()));
+        }
+        try {
+            neo4jGuard.run(() -> neo4j.query(SEED).bindAll(Map.of("dimensions", dimensions)).run());
+        } catch (Exception e) {
+            // ingest MERGEs them as well, only without the guarantee of a single node per name
+            log.warn("Could not create shared session graph dimensions: {}", e.getMessage());
+        }
+    }
+
+    @Scheduled(
+            initialDelayString = "${shopnserve.graph.migration.initial-delay-ms:10000}",
+            fixedDelayString = "${shopnserve.graph.migration.period-ms:600000}"
+    )
+    public void scheduled() {
+        if (shared && enabled && !complete) run();
+    }
+
+    public Stats stats() {
+        return lastRun.get();
+    }
+
+    /** Migrates everything that is left; returns the previous stats while another run is in progress. */
+    public Stats run() {
+        if (!running.tryLock()) return lastRun.get();
+        try {
+            return runLocked();
+        } finally {
+            running.unlock();
+        }
+    }
+
+    private Stats runLocked() {
+        long start = System.nanoTime();
+        long backends = 0;
+        long capabilities = 0;
+        String error = null;
+        try {
+            // backends first: their TRIGGERS_EVENT edges still name the session's capabilities
+            backends = migrateInBatches(MIGRATE_BACKENDS);
+            capabilities = migrateInBatches(MIGRATE_CAPABILITIES);
+            complete = true;
+        } catch (Exception e) {
+            error = e.getClass().getSimpleName() + ": " + e.getMessage();
+            log.warn("Session graph migration failed, continuing next run: {}", error);
+        }
+
+        Stats stats = new Stats(
+                Instant.now(),
+                TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start),
+                backends,
+                capabilities,
+                complete,
+                error
+        );
+        lastRun.set(stats);
+        if (backends > 0 || capabilities > 0) {
+            log.info("Session graph migrated to shared dimensions: {} backend and {} capability copies merged in {} ms",
+                    backends, capabilities, stats.lastRunMillis());
+        }
+        return stats;
+    }
+
+    private long migrateInBatches(String cypher) {
+        long total = 0;
+        while (true) {
+            long migrated = neo4jGuard.call(() -> neo4j.query(cypher)
+                    .bindAll(Map.of("limit", batchSize))
+                    .fetchAs(Long.class)
+                    .one()
+                    .orElse(0L));
+            total += migrated;
+            if (migrated < batchSize) return total;
+            pause();
+        }
+    }
+
+    private void pause() {
+        if (batchPauseMillis == 0) return;
+        try {
+            Thread.sleep(batchPauseMillis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Migration interrupted", e);
+        }
+    }
+}
@@ -0,0 +1,355 @@
+package shop.serve.ShopNServe.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.neo4j.core.Neo4jClient;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import shop.serve.ShopNServe.config.ConnectionGuards;
+
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Keeps the session graph bounded: message data older than {@code max-age-days} is rolled up into one
+ * {@code DailyRollup} node per day, capability and backend (requests, failures, sessions, latency percentiles),
+ * then deleted.
+ * <p>
+ * Days are handled oldest first. A day's {@code RollupDay} marker is written only after its rollup, and deletion
+ * starts only after the marker, so an interrupted run resumes with the deletes instead of counting what is left
+ * a second time. Every delete is a small transaction of at most {@code batch-size} nodes with a pause in between,
+ * so ingest never waits behind one huge purge. Sessions go once nothing of theirs is left, payload blobs once no
+ * data node links to them.
+ */
+@Component
+public class SessionGraphRetention {
+
+    private static final Logger log = LoggerFactory.getLogger(SessionGraphRetention.class);
+
+    private static final List<String> DATA_LABELS = List.of("RequestedData", "ProvidedData");
+
+    private static final String OLDEST_REQUEST = """
+        CALL {
+          MATCH (n:RequestedData) WHERE n.requestedAt < datetime($before) RETURN n.requestedAt AS at
+          UNION ALL
+          MATCH (n:ProvidedData) WHERE n.requestedAt < datetime($before) RETURN n.requestedAt AS at
+        }
+        RETURN toString(date(min(at))) AS day
+    """;
+
+    private static final String ROLLED_UP = """
+        MATCH (m:RollupDay {day: date($day)}) RETURN count(m) > 0 AS done
+    """;
+
+    // latency is requested -> completed or failed; requests still open have none and only count
+    private static final String ROLLUP = """
+        CALL {
+          MATCH (r:RequestedData) WHERE r.requestedAt >= datetime($from) AND r.requestedAt < datetime($to) RETURN r
+          UNION
+          MATCH (r:ProvidedData) WHERE r.requestedAt >= datetime($from) AND r.requestedAt < datetime($to) RETURN r
+        }
+        WITH r,
+             coalesce(r.capability,
+                      head([(r)-[:HANDLED_BY]->(:BackendComponent)-[:TRIGGERS_EVENT]->(c:Capability) | c.name]),
+                      'unknown') AS capability,
+             coalesce(head([(r)-[:HANDLED_BY]->(b:BackendComponent) | b.name]), 'unknown') AS backend,
+             CASE WHEN coalesce(r.completedAt, r.failedAt) IS NULL THEN null
+                  ELSE duration.inMilliseconds(r.requestedAt, coalesce(r.completedAt, r.failedAt)).milliseconds
+             END AS ms
+        WITH capability, backend,
+             count(r) AS requests,
+             count(r.failedAt) AS failures,
+             count(DISTINCT r.sessionId) AS sessions,
+             percentileCont(ms, 0.5) AS p50,
+             percentileCont(ms, 0.95) AS p95,
+             percentileCont(ms, 0.99) AS p99,
+             max(ms) AS maxMs,
+             avg(ms) AS avgMs
+        MERGE (d:DailyRollup {day: date($day), capability: capability, backend: backend})
+        SET d.requests = requests,
+            d.failures = failures,
+            d.sessions = sessions,
+            d.p50Ms = p50,
+            d.p95Ms = p95,
+            d.p99Ms = p99,
+            d.maxMs = maxMs,
+            d.avgMs = avgMs,
+            d.rolledUpAt = datetime()
+        RETURN sum(requests) AS requests
+    """;
+
+    private static final String MARK_ROLLED_UP = """
+        MERGE (m:RollupDay {day: date($day)})
+        SET m.requests = $requests, m.rolledUpAt = datetime()
+    """;
+
+    private static final String DELETE_DATA = """
+        MATCH (n:%s) WHERE n.%s < datetime($before)
+        WITH n LIMIT $limit
+        DETACH DELETE n
+        RETURN count(*) AS deleted
+    """;
+
+    // walks sessions in id order, so sessions that must stay do not come back in every batch
+    private static final String SESSION_PAGE = """
+        MATCH (s:Session) WHERE s.id > $after
+        WITH s ORDER BY s.id LIMIT $limit
+        RETURN s.id AS id,
+               (s.startedAt IS NULL OR s.startedAt < datetime($before))
+               AND NOT EXISTS { (s)-[:TRIGGERED_BY]->(:UIComponent)-[:REQUESTS]->() } AS expired
+    """;
+
+    private static final String DELETE_SESSIONS = """
+        UNWIND $ids AS sid
+        MATCH (s:Session {id: sid})
+        OPTIONAL MATCH (s)-[:TRIGGERED_BY]->(ui:UIComponent)
+        WITH s, sid, collect(ui) AS uis
+        CALL {
+          WITH sid
+          MATCH (b:BackendComponent) WHERE b.sessionId = sid AND b.name IS NOT NULL
+          RETURN collect(b) AS backends
+        }
+        CALL {
+          WITH sid
+          MATCH (c:Capability) WHERE c.sessionId = sid AND c.name IS NOT NULL
+          RETURN collect(c) AS capabilities
+        }
+        FOREACH (n IN uis + backends + capabilities | DETACH DELETE n)
+        DETACH DELETE s
+        RETURN count(*) AS deleted
+    """;
+
+    // DELETE, not DETACH DELETE: if an ingest links the blob meanwhile, this batch fails instead of the link
+    private static final String DELETE_ORPHAN_BLOBS = """
+        MATCH (b:PayloadBlob) WHERE b.createdAt < datetime($before) AND NOT EXISTS { ()-[:HAS_PAYLOAD]->(b) }
+        WITH b LIMIT $limit
+        DELETE b
+        RETURN count(*) AS deleted
+    """;
+
+    public record Stats(
+            Instant lastRunAt,
+            long lastRunMillis,
+            String cutoff,
+            int daysRolledUp,
+            long dataDeleted,
+            long sessionsDeleted,
+            long blobsDeleted,
+            boolean budgetExhausted,
+            String lastError
+    ) {}
+
+    private final Neo4jClient neo4j;
+    private final ConnectionGuards.Guard neo4jGuard;
+    private final boolean enabled;
+    private final int maxAgeDays;
+    private final int batchSize;
+    private final long batchPauseMillis;
+    private final int maxBatchesPerRun;
+    private final AtomicReference<Stats> lastRun = new AtomicReference<>();
+    // a manual run and the scheduled one must not delete side by side
+    private final ReentrantLock running = new ReentrantLock();
+
+    public SessionGraphRetention(
+            Neo4jClient neo4j,
+            ConnectionGuards guards,
+            @Value("${shopnserve.graph.retention.enabled:true}") boolean enabled,
+            @Value("${shopnserve.graph.retention.max-age-days:30}") int maxAgeDays,
+            @Value("${shopnserve.graph.retention.batch-size:500}") int batchSize,
+            @Value("${shopnserve.graph.retention.batch-pause-ms:50}") long batchPauseMillis,
+            @Value("${shopnserve.graph.retention.max-batches-per-run:2000}") int maxBatchesPerRun
+    ) {
+        this.neo4j = neo4j;
+        this.neo4jGuard = guards.neo4j();
+        this.enabled = enabled;
+        this.maxAgeDays = Math.max(1, maxAgeDays);
+        this.batchSize = Math.max(1, batchSize);
+        this.batchPauseMillis = Math.max(0, batchPauseMillis);
+        this.maxBatchesPerRun = Math.max(1, maxBatchesPerRun);
+    }
+
+    @Scheduled(
+            initialDelayString = "${shopnserve.graph.retention.initial-delay-ms:300000}",
+            fixedDelayString = "${shopnserve.graph.retention.period-ms:3600000}"
+    )
+    public void scheduled() {
+        if (enabled) run();
+    }
+
+    public Stats stats() {
+        return lastRun.get();
+    }
+
+    /**
+     * One retention pass; stops early once {@code max-batches-per-run} delete batches have run.
+     * Returns the previous stats without doing anything while another pass is in progress.
+     */
+    public Stats run() {
+        if (!running.tryLock()) return lastRun.get();
+        try {
+            return runLocked();
+        } finally {
+            running.unlock();
+        }
+    }
+
+    private Stats runLocked() {
+        long start = System.nanoTime();
+        LocalDate cutoffDay = LocalDate.now(ZoneOffset.UTC).minusDays(maxAgeDays);
+        String cutoff = cutoffDay.atStartOfDay(ZoneOffset.UTC).toInstant().toString();
+        Run run = new Run();
+
+        String error = null;
+        try {
+            for (String day = oldestDay(cutoff); day != null && !run.exhausted(); day = oldestDay(cutoff)) {
+                if (!rolledUp(day)) {
+                    rollup(day);
+                    run.days++;
+                }
+                String dayEnd = LocalDate.parse(day).plusDays(1).atStartOfDay(ZoneOffset.UTC).toInstant().toString();
+                for (String label : DATA_LABELS) {
+                    run.data += deleteInBatches(DELETE_DATA.formatted(label, "requestedAt"), dayEnd, run);
+                }
+            }
+            // response nodes carry providedAt only
+            for (String label : DATA_LABELS) {
+                run.data += deleteInBatches(DELETE_DATA.formatted(label, "providedAt"), cutoff, run);
+            }
+            run.sessions += deleteExpiredSessions(cutoff, run);
+            run.blobs += deleteInBatches(DELETE_ORPHAN_BLOBS, cutoff, run);
+            run.data += deleteInBatches(DELETE_DATA.formatted("AnalyticsBucket", "start"), cutoff, run);
+        } catch (Exception e) {
+            error = e.getClass().getSimpleName() + ": " + e.getMessage();
+            log.warn("Session graph retention failed, continuing next run: {}", error);
+        }
+
+        Stats stats = new Stats(
+                Instant.now(),
+                TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start),
+                cutoff,
+                run.days,
+                run.data,
+                run.sessions,
+                run.blobs,
+                run.exhausted(),
+                error
+        );
+        lastRun.set(stats);
+        if (run.days > 0 || run.data > 0 || run.sessions > 0 || run.blobs > 0) {
+            log.info("Session graph retention before {}: {} days rolled up, {} data nodes, {} sessions, {} blobs deleted in {} ms",
+                    cutoff, run.days, run.data, run.sessions, run.blobs, stats.lastRunMillis());
+        }
+        return stats;
+    }
+
+    private final class Run {
+        int batches;
+        int days;
+        long data;
+        long sessions;
+        long blobs;
+
+        boolean exhausted() {
+            return batches >= maxBatchesPerRun;
+        }
+    }
+
+    private String oldestDay(String before) {
+        return neo4jGuard.call(() -> neo4j.query(OLDEST_REQUEST)
+                .bindAll(Map.of("before", before))
+                .fetch()
+                .one()
+                .map(row -> (String) row.get("day"))
+                .orElse(null));
+    }
+
+    private boolean rolledUp(String day) {
+        return neo4jGuard.call(() -> neo4j.query(ROLLED_UP)
+                .bindAll(Map.of("day", day))
+                .fetchAs(Boolean.class)
+                .one()
+                .orElse(false));
+    }
+
+    private void rollup(String day) {
+        LocalDate d = LocalDate.parse(day);
+        Map<String, Object> params = Map.of(
+                "day", day,
+                "from", d.atStartOfDay(ZoneOffset.UTC).toInstant().toString(),
+                "to", d.plusDays(1).atStartOfDay(ZoneOffset.UTC).toInstant().toString()
+        );
+        long requests = neo4jGuard.call(() -> neo4j.query(ROLLUP)
+                .bindAll(params)
+                .fetchAs(Long.class)
+                .one()
+                .orElse(0L));
+        neo4jGuard.run(() -> neo4j.query(MARK_ROLLED_UP)
+                .bindAll(Map.of("day", day, "requests", requests))
+                .run());
+        log.debug("Session graph day {} rolled up, {} requests", day, requests);
+    }
+
+    private long deleteInBatches(String cypher, String before, Run run) {
+        long total = 0;
+        while (run.batches < maxBatchesPerRun) {
+            long deleted = neo4jGuard.call(() -> neo4j.query(cypher)
+                    .bindAll(Map.of("before", before, "limit", batchSize))
+                    .fetchAs(Long.class)
+                    .one()
+                    .orElse(0L));
+            run.batches++;
+            total += deleted;
+            if (deleted < batchSize) break;
+            pause();
+        }
+        return total;
+    }
+
+    private long deleteExpiredSessions(String before, Run run) {
+        long total = 0;
+        String after = "";
+        while (run.batches < maxBatchesPerRun) {
+            String from = after;
+            List<Map<String, Object>> page = new ArrayList<>(neo4jGuard.call(() -> neo4j.query(SESSION_PAGE)
+                    .bindAll(Map.of("after", from, "before", before, "limit", batchSize))
+                    .fetch()
+                    .all()));
+            if (page.isEmpty()) break;
+
+            List<String> expired = new ArrayList<>();
+            for (Map<String, Object> row : page) {
+                if (Boolean.TRUE.equals(row.get("expired"))) expired.add((String) row.get("id"));
+            }
+            if (!expired.isEmpty()) {
+                total += neo4jGuard.call(() -> neo4j.query(DELETE_SESSIONS)
+                        .bindAll(Map.of("ids", expired))
+                        .fetchAs(Long.class)
+                        .one()
+                        .orElse(0L));
+                run.batches++;
+                pause();
+            }
+            if (page.size() < batchSize) break;
+            after = (String) page.get(page.size() - 1).get("id");
+        }
+        return total;
+    }
+
+    private void pause() {
+        if (batchPauseMillis == 0) return;
+        try {
+            Thread.sleep(batchPauseMillis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Retention interrupted", e);
+        }
+    }
+}
@@ -0,0 +1,126 @@
+package shop.serve.ShopNServe.service;
+
+import jakarta.annotation.PostConstruct;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.neo4j.core.Neo4jClient;
+import org.springframework.stereotype.Component;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Creates the constraints and indexes the session graph writes rely on and checks they are online.
+ * The message statement of {@link SessionGraphIngestService} looks nodes up only through label-scoped
+ * {@code MERGE}s (session by id, UI, backend and capability nodes by session and name, or by name for
+ * {@code Dimension} nodes); without these indexes each of them is a label scan.
+ */
+@Component
+public class SessionGraphSchemaManager {
+
+    private static final Logger log = LoggerFactory.getLogger(SessionGraphSchemaManager.class);
+
+    public enum Verify { OFF, WARN, FAIL }
+
+    record SchemaItem(String name, String cypher) {}
+
+    static final List<SchemaItem> SCHEMA = List.of(
+            new SchemaItem("session_id",
+                    "CREATE CONSTRAINT session_id IF NOT EXISTS FOR (n:Session) REQUIRE n.id IS UNIQUE"),
+            new SchemaItem("requested_data_id",
+                    "CREATE CONSTRAINT requested_data_id IF NOT EXISTS FOR (n:RequestedData) REQUIRE n.id IS UNIQUE"),
+            new SchemaItem("provided_data_id",
+                    "CREATE CONSTRAINT provided_data_id IF NOT EXISTS FOR (n:ProvidedData) REQUIRE n.id IS UNIQUE"),
+            new SchemaItem("payload_blob_hash",
+                    "CREATE CONSTRAINT payload_blob_hash IF NOT EXISTS FOR (n:PayloadBlob) REQUIRE n.hash IS UNIQUE"),
+            new SchemaItem("ui_component_session_name",
+                    "CREATE INDEX ui_component_session_name IF NOT EXISTS FOR (n:UIComponent) ON (n.sessionId, n.name)"),
+            new SchemaItem("backend_component_session_name",
+                    "CREATE INDEX backend_component_session_name IF NOT EXISTS FOR (n:BackendComponent) ON (n.sessionId, n.name)"),
+            new SchemaItem("capability_session_name",
+                    "CREATE INDEX capability_session_name IF NOT EXISTS FOR (n:Capability) ON (n.sessionId, n.name)"),
+            new SchemaItem("dimension_name",
+                    "CREATE INDEX dimension_name IF NOT EXISTS FOR (n:Dimension) ON (n.name)"),
+            // cross-session lookups by capability, e.g. all OrderPlaced failures of last week
+            new SchemaItem("requested_data_capability",
+                    "CREATE INDEX requested_data_capability IF NOT EXISTS FOR (n:RequestedData) ON (n.capability, n.requestedAt)"),
+            new SchemaItem("provided_data_capability",
+                    "CREATE INDEX provided_data_capability IF NOT EXISTS FOR (n:ProvidedData) ON (n.capability, n.requestedAt)"),
+            new SchemaItem("rollup_day_day",
+                    "CREATE CONSTRAINT rollup_day_day IF NOT EXISTS FOR (n:RollupDay) REQUIRE n.day IS UNIQUE"),
+            new SchemaItem("daily_rollup_day",
+                    "CREATE INDEX daily_rollup_day IF NOT EXISTS FOR (n:DailyRollup) ON (n.day, n.capability, n.backend)"),
+            // retention scans by time
+            new SchemaItem("requested_data_requested_at",
+                    "CREATE INDEX requested_data_requested_at IF NOT EXISTS FOR (n:RequestedData) ON (n.requestedAt)"),
+            new SchemaItem("provided_data_requested_at",
+                    "CREATE INDEX provided_data_requested_at IF NOT EXISTS FOR (n:ProvidedData) ON (n.requestedAt)"),
+            new SchemaItem("requested_data_provided_at",
+                    "CREATE INDEX requested_data_provided_at IF NOT EXISTS FOR (n:RequestedData) ON (n.providedAt)"),
+            new SchemaItem("provided_data_provided_at",
+                    "CREATE INDEX provided_data_provided_at IF NOT EXISTS FOR (n:ProvidedData) ON (n.providedAt)"),
+            new SchemaItem("analytics_bucket_start",
+                    "CREATE INDEX analytics_bucket_start IF NOT EXISTS FOR (n:AnalyticsBucket) ON (n.start, n.capability)"),
+            new SchemaItem("payload_blob_created_at",
+                    "CREATE INDEX payload_blob_created_at IF NOT EXISTS FOR (n:PayloadBlob) ON (n.createdAt)")
+    );
+
+    private final Neo4jClient neo4j;
+    private final boolean create;
+    private final Verify verify;
+
+    public SessionGraphSchemaManager(
+            Neo4jClient neo4j,
+            @Value("${shopnserve.graph.schema.create:true}") boolean create,
+            @Value("${shopnserve.graph.schema.verify:warn}") String verify
+    ) {
+        this.neo4j = neo4j;
+        this.create = create;
+        this.verify = Verify.valueOf(verify.trim().toUpperCase());
+    }
+
+    @PostConstruct
+    public void bootstrap() {
+        if (create) {
+            try {
+                for (SchemaItem item : SCHEMA) {
+                    neo4j.query(item.cypher()).run();
+                }
+            } catch (Exception e) {
+                log.warn("Could not create session graph schema: {}", e.getMessage());
+            }
+        }
+
+        if (verify == Verify.OFF) return;
+
+        List<String> missing;
+        try {
+            missing = missingOrOffline();
+        } catch (Exception e) {
+            missing = SCHEMA.stream().map(SchemaItem::name).toList();
+            log.warn("Could not read session graph indexes: {}", e.getMessage());
+        }
+
+        if (missing.isEmpty()) return;
+
+        String msg = "Session graph indexes missing or not online: " + missing;
+        if (verify == Verify.FAIL) {
+            throw new IllegalStateException(msg);
+        }
+        log.warn(msg);
+    }
+
+    public List<String> missingOrOffline() {
+        Map<String, String> states = new HashMap<>();
+        for (Map<String, Object> row : neo4j.query("SHOW INDEXES YIELD name, state").fetch().all()) {
+            states.put(String.valueOf(row.get("name")), String.valueOf(row.get("state")));
+        }
+
+        return SCHEMA.stream()
+                .map(SchemaItem::name)
+                .filter(name -> !"ONLINE".equals(states.get(name)))
+                .toList();
+    }
+}
@@ -0,0 +1,287 @@
+package shop.serve.ShopNServe.service;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.DependsOn;
+import org.springframework.data.neo4j.core.Neo4jClient;
+import org.springframework.stereotype.Service;
+import shop.serve.ShopNServe.config.ConnectionGuards;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Executes session graph writes either synchronously or write-behind.
+ * <p>
+ * Every write is a single row for an {@code UNWIND $rows AS row ...} statement. In write-behind mode rows are
+ * queued and a background drainer flushes them in batches, one {@code UNWIND} per distinct statement. Each
+ * statement writes a whole message and only {@code MERGE}s the nodes it links to, so rows of one batch never
+ * depend on each other and may run in any order.
+ * <p>
+ * Queue depth, lag and the counters of {@link Stats} are also registered as {@code graph.writer.*} meters.
+ */
+@Service
+@DependsOn("sessionGraphSchemaManager")
+public class SessionGraphWriter {
+
+    private static final Logger log = LoggerFactory.getLogger(SessionGraphWriter.class);
+
+    public enum Mode { SYNC, WRITE_BEHIND }
+
+    public enum Backpressure { BLOCK, DROP, SYNC }
+
+    public record GraphWrite(String cypher, Map<String, Object> row, long enqueuedAtNanos) {}
+
+    public record Stats(
+            Mode mode,
+            int queueDepth,
+            int queueCapacity,
+            long enqueued,
+            long dropped,
+            long syncFallbacks,
+            long flushedRows,
+            long flushedBatches,
+            long failedBatches,
+            long lastFlushMillis,
+            long lastLagMillis,
+            long maxLagMillis
+    ) {}
+
+    private final Neo4jClient neo4j;
+    private final ConnectionGuards.Guard neo4jGuard;
+    private final Mode mode;
+    private final Backpressure backpressure;
+    private final int batchSize;
+    private final long flushIntervalMillis;
+    private final long blockTimeoutMillis;
+    private final BlockingQueue<GraphWrite> queue;
+    private final ReentrantLock flushLock = new ReentrantLock();
+    private final Thread drainer;
+    private volatile boolean running = true;
+
+    private final AtomicLong enqueued = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+    private final AtomicLong syncFallbacks = new AtomicLong();
+    private final AtomicLong flushedRows = new AtomicLong();
+    private final AtomicLong flushedBatches = new AtomicLong();
+    private final AtomicLong failedBatches = new AtomicLong();
+    private final AtomicLong lastFlushMillis = new AtomicLong();
+    private final AtomicLong lastLagMillis = new AtomicLong();
+    private final AtomicLong maxLagMillis = new AtomicLong();
+
+    public SessionGraphWriter(
+            Neo4jClient neo4j,
+            ConnectionGuards guards,
+            MeterRegistry registry,
+            @Value("${shopnserve.graph.ingest.mode:sync}") String mode,
+            @Value("${shopnserve.graph.ingest.backpressure:sync}") String backpressure,
+            @Value("${shopnserve.graph.ingest.queue-capacity:10000}") int queueCapacity,
+            @Value("${shopnserve.graph.ingest.batch-size:500}") int batchSize,
+            @Value("${shopnserve.graph.ingest.flush-interval-ms:200}") long flushIntervalMillis,
+            @Value("${shopnserve.graph.ingest.block-timeout-ms:1000}") long blockTimeoutMillis
+    ) {
+        this.neo4j = neo4j;
+        this.neo4jGuard = guards.neo4j();
+        this.mode = Mode.valueOf(mode.trim().replace('-', '_').toUpperCase());
+        this.backpressure = Backpressure.valueOf(backpressure.trim().toUpperCase());
+        this.batchSize = Math.max(1, batchSize);
+        this.flushIntervalMillis = Math.max(1, flushIntervalMillis);
+        this.blockTimeoutMillis = Math.max(0, blockTimeoutMillis);
+        this.queue = new ArrayBlockingQueue<>(Math.max(1, queueCapacity));
+
+        if (this.mode == Mode.WRITE_BEHIND) {
+            drainer = new Thread(this::drainLoop, "session-graph-writer");
+            drainer.setDaemon(true);
+            drainer.start();
+        } else {
+            drainer = null;
+        }
+        registerMeters(registry);
+    }
+
+    public void write(String cypher, Map<String, Object> row) {
+        GraphWrite w = new GraphWrite(cypher, row, System.nanoTime());
+
+        if (mode == Mode.SYNC) {
+            runStatement(cypher, List.of(row));
+            return;
+        }
+
+        if (queue.offer(w)) {
+            enqueued.incrementAndGet();
+            return;
+        }
+
+        switch (backpressure) {
+            case BLOCK -> {
+                try {
+                    if (queue.offer(w, blockTimeoutMillis, TimeUnit.MILLISECONDS)) {
+                        enqueued.incrementAndGet();
+                    } else {
+                        dropped.incrementAndGet();
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    dropped.incrementAndGet();
+                }
+            }
+            case DROP -> dropped.incrementAndGet();
+            case SYNC -> {
+                syncFallbacks.incrementAndGet();
+                // the row does not depend on anything queued, so the caller only writes its own
+                flushBatch(List.of(w));
+            }
+        }
+    }
+
+    public Stats stats() {
+        return new Stats(
+                mode,
+                queue.size(),
+                queue.size() + queue.remainingCapacity(),
+                enqueued.get(),
+                dropped.get(),
+                syncFallbacks.get(),
+                flushedRows.get(),
+                flushedBatches.get(),
+                failedBatches.get(),
+                lastFlushMillis.get(),
+                lastLagMillis.get(),
+                maxLagMillis.get()
+        );
+    }
+
+    /** Flushes everything queued so far on the calling thread. */
+    public void flush() {
+        flushLock.lock();
+        try {
+            List<GraphWrite> pending = new ArrayList<>(queue.size());
+            while (queue.drainTo(pending, batchSize) > 0) {
+                flushBatch(pending);
+                pending.clear();
+            }
+        } finally {
+            flushLock.unlock();
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        running = false;
+        if (drainer != null) {
+            drainer.interrupt();
+            try {
+                drainer.join(TimeUnit.SECONDS.toMillis(5));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            flush();
+        }
+    }
+
+    private void registerMeters(MeterRegistry registry) {
+        String tag = mode.name().toLowerCase();
+        Gauge.builder("graph.writer.queue.depth", queue, BlockingQueue::size)
+                .description("Session graph rows waiting to be written").tag("mode", tag).register(registry);
+        Gauge.builder("graph.writer.lag", lastLagMillis, AtomicLong::get).baseUnit("milliseconds")
+                .description("Queue time of the oldest row in the last flushed batch").tag("mode", tag).register(registry);
+        Gauge.builder("graph.writer.lag.max", maxLagMillis, AtomicLong::get).baseUnit("milliseconds")
+                .tag("mode", tag).register(registry);
+        counter(registry, "graph.writer.enqueued", enqueued, tag);
+        counter(registry, "graph.writer.dropped", dropped, tag);
+        counter(registry, "graph.writer.sync.fallbacks", syncFallbacks, tag);
+        counter(registry, "graph.writer.flushed.rows", flushedRows, tag);
+        counter(registry, "graph.writer.failed.batches", failedBatches, tag);
+    }
+
+    private static void counter(MeterRegistry registry, String name, AtomicLong value, String mode) {
+        FunctionCounter.builder(name, value, AtomicLong::get).tag("mode", mode).register(registry);
+    }
+
+    private void drainLoop() {
+        List<GraphWrite> batch = new ArrayList<>(batchSize);
+        while (running) {
+            try {
+                GraphWrite first = queue.poll(flushIntervalMillis, TimeUnit.MILLISECONDS);
+                if (first == null) continue;
+                batch.add(first);
+
+                // size or time bound, whichever comes first
+                long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(flushIntervalMillis);
+                while (batch.size() < batchSize) {
+                    queue.drainTo(batch, batchSize - batch.size());
+                    if (batch.size() >= batchSize) break;
+                    long remaining = deadline - System.nanoTime();
+                    if (remaining <= 0) break;
+                    GraphWrite next = queue.poll(remaining, TimeUnit.NANOSECONDS);
+                    if (next == null) break;
+                    batch.add(next);
+                }
+
+                flushLocked(batch);
+            } catch (InterruptedException e) {
+                if (!running) {
+                    flushLocked(batch);
+                    break;
+                }
+            } catch (Exception e) {
+                log.warn("Session graph drainer failed", e);
+            } finally {
+                batch.clear();
+            }
+        }
+    }
+
+    private void flushLocked(List<GraphWrite> batch) {
+        flushLock.lock();
+        try {
+            flushBatch(batch);
+        } finally {
+            flushLock.unlock();
+        }
+    }
+
+    private void flushBatch(List<GraphWrite> batch) {
+        if (batch.isEmpty()) return;
+
+        long start = System.nanoTime();
+        long lag = TimeUnit.NANOSECONDS.toMillis(start - batch.get(0).enqueuedAtNanos());
+        lastLagMillis.set(lag);
+        maxLagMillis.accumulateAndGet(lag, Math::max);
+
+        // one UNWIND per distinct statement, in arrival order
+        Map<String, List<Map<String, Object>>> grouped = new LinkedHashMap<>();
+        for (GraphWrite w : batch) {
+            grouped.computeIfAbsent(w.cypher(), c -> new ArrayList<>()).add(w.row());
+        }
+
+        for (Map.Entry<String, List<Map<String, Object>>> e : grouped.entrySet()) {
+            try {
+                runStatement(e.getKey(), e.getValue());
+                flushedRows.addAndGet(e.getValue().size());
+            } catch (Exception ex) {
+                failedBatches.incrementAndGet();
+                log.warn("Session graph batch of {} rows failed", e.getValue().size(), ex);
+            }
+        }
+
+        flushedBatches.incrementAndGet();
+        lastFlushMillis.set(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+    }
+
+    private void runStatement(String cypher, List<Map<String, Object>> rows) {
+        neo4jGuard.run(() -> neo4j.query(cypher).bindAll(Map.of("rows", rows)).run());
+    }
+}
@@ -0,0 +1,372 @@
+package shop.serve.ShopNServe.service;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.actuate.health.Health;
+import org.springframework.boot.actuate.health.HealthIndicator;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.context.annotation.DependsOn;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * In-memory stock counters that accept or reject reservations without touching the database.
+ * <p>
+ * Each product's available stock is split across stripes. A buyer takes units from a random stripe and
+ * moves on to the next ones only if that stripe runs dry, so buyers of one hot product mostly CAS different
+ * cache lines. A stripe never drops below zero, so an oversell is impossible.
+ * <p>
+ * Reserved units are written back to {@code products.stock} asynchronously, with one coalesced
+ * {@code UPDATE} per product per flush. The counters are loaded from the table on startup and reconciled with
+ * it periodically and after JPA writes to a product, which picks up stock changed outside this service.
+ * The write-back keeps {@code updated_at}, so selling stock never invalidates the {@link ProductCatalog};
+ * each flush publishes {@link Changed} with the new counts instead, pushed to subscribers as {@code stock}.
+ * <p>
+ * Single instance only: the counters are the authority on what may still be sold. Two instances would each
+ * sell from their own copy and could oversell between reconciliations. Running several needs the
+ * reservation moved into the database, e.g. {@code UPDATE products SET stock = stock - ? WHERE id = ? AND
+ * stock >= ?}.
+ * <p>
+ * A failed flush keeps its deltas for the next one. Failures are counted as {@code stock.flush.failures}, units
+ * not yet written are the {@code stock.flush.pending} gauge, and after {@value #UNHEALTHY_AFTER} failures in a
+ * row the {@code stockReservations} health contributor reports {@code DOWN}, since those units are lost if the
+ * process stops.
+ */
+@Service
+@DependsOn("productService")
+public class StockReservations implements HealthIndicator {
+
+    private static final Logger log = LoggerFactory.getLogger(StockReservations.class);
+
+    // ints per stripe slot, one 64 byte cache line
+    private static final int PAD = 16;
+
+    static final int UNHEALTHY_AFTER = 5;
+
+    /** {@code productId} and {@code available} describe the first line that could not be reserved. */
+    public record Result(boolean ok, Long productId, int available, boolean unknownProduct) {
+        static final Result OK = new Result(true, null, 0, false);
+    }
+
+    /** Application event after a flush: available units of every product whose stock was written. */
+    public record Changed(Map<Long, Integer> available) {}
+
+    private static final class Stock {
+        final AtomicIntegerArray stripes;
+        // units reserved and released since startup; persisted is only touched under the flush lock
+        final LongAdder reserved = new LongAdder();
+        final LongAdder released = new LongAdder();
+        long persisted;
+
+        Stock(int stripeCount, int initial) {
+            stripes = new AtomicIntegerArray(stripeCount * PAD);
+            int n = stripeCount;
+            for (int i = 0; i < n; i++) {
+                stripes.set(i * PAD, initial / n + (i < initial % n ? 1 : 0));
+            }
+        }
+
+        int count() {
+            return stripes.length() / PAD;
+        }
+
+        int available() {
+            int sum = 0;
+            for (int i = 0; i < count(); i++) sum += stripes.get(i * PAD);
+            return sum;
+        }
+
+        /** Takes exactly {@code qty} units or none. */
+        boolean take(int qty) {
+            int n = count();
+            int start = ThreadLocalRandom.current().nextInt(n);
+            int taken = 0;
+            for (int k = 0; k < n && taken < qty; k++) {
+                int idx = ((start + k) % n) * PAD;
+                int cur;
+                int part;
+                do {
+                    cur = stripes.get(idx);
+                    part = Math.min(cur, qty - taken);
+                    if (part <= 0) break;
+                } while (!stripes.compareAndSet(idx, cur, cur - part));
+                if (part > 0) taken += part;
+            }
+            if (taken < qty) {
+                if (taken > 0) stripes.addAndGet(start * PAD, taken);
+                return false;
+            }
+            return true;
+        }
+
+        void give(int qty) {
+            stripes.addAndGet(ThreadLocalRandom.current().nextInt(count()) * PAD, qty);
+        }
+
+        /** Adds a signed correction; a negative one is taken best effort, never below zero. */
+        void adjust(int delta) {
+            if (delta > 0) {
+                give(delta);
+                return;
+            }
+            int remaining = -delta;
+            for (int i = 0; i < count() && remaining > 0; i++) {
+                int idx = i * PAD;
+                int cur;
+                int part;
+                do {
+                    cur = stripes.get(idx);
+                    part = Math.min(cur, remaining);
+                    if (part <= 0) break;
+                } while (!stripes.compareAndSet(idx, cur, cur - part));
+                if (part > 0) remaining -= part;
+            }
+        }
+    }
+
+    private final JdbcTemplate jdbc;
+    private final TransactionTemplate tx;
+    private final ApplicationEventPublisher events;
+    private final int stripeCount;
+    private final ConcurrentHashMap<Long, Stock> stocks = new ConcurrentHashMap<>();
+    // not synchronized: the flush does JDBC, which would pin a virtual carrier thread
+    private final ReentrantLock flushLock = new ReentrantLock();
+    private final AtomicLong flushFailures = new AtomicLong();
+    private final AtomicInteger failuresInARow = new AtomicInteger();
+    private volatile String lastFlushError;
+
+    public StockReservations(
+            JdbcTemplate jdbc,
+            PlatformTransactionManager transactionManager,
+            ApplicationEventPublisher events,
+            MeterRegistry registry,
+            @Value("${shopnserve.stock.stripes:0}") int stripes
+    ) {
+        this.jdbc = jdbc;
+        this.events = events;
+        this.tx = new TransactionTemplate(transactionManager);
+        // may run from an afterCommit callback, where joining the finished transaction would never commit
+        this.tx.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        this.stripeCount = stripes > 0 ? stripes : Runtime.getRuntime().availableProcessors();
+
+        FunctionCounter.builder("stock.flush.failures", flushFailures, AtomicLong::get)
+                .description("Stock write-backs that failed and were left for the next flush").register(registry);
+        Gauge.builder("stock.flush.pending", this, StockReservations::pendingUnits)
+                .description("Reserved units not yet written to products.stock").register(registry);
+    }
+
+    @PostConstruct
+    public void load() {
+        try {
+            reconcileAll();
+            log.info("Stock counters loaded for {} products", stocks.size());
+        } catch (Exception e) {
+            log.warn("Could not load stock counters, products are loaded on first use: {}", e.getMessage());
+        }
+    }
+
+    /** All or nothing over the given product quantities. */
+    public Result reserve(Map<Long, Integer> quantities) {
+        // fixed order, so two carts with the same products cannot starve each other half way
+        Map<Long, Integer> ordered = new TreeMap<>(quantities);
+        List<Map.Entry<Long, Integer>> taken = new ArrayList<>(ordered.size());
+
+        for (Map.Entry<Long, Integer> line : ordered.entrySet()) {
+            Stock stock = stockOf(line.getKey());
+            if (stock == null || !stock.take(line.getValue())) {
+                release(taken);
+                return stock == null
+                        ? new Result(false, line.getKey(), 0, true)
+                        : new Result(false, line.getKey(), stock.available(), false);
+            }
+            stock.reserved.add(line.getValue());
+            taken.add(line);
+        }
+        return Result.OK;
+    }
+
+    /** Undoes a successful {@link #reserve}, e.g. when the order could not be stored. */
+    public void release(Map<Long, Integer> quantities) {
+        release(new ArrayList<>(quantities.entrySet()));
+    }
+
+    private void release(List<Map.Entry<Long, Integer>> lines) {
+        for (Map.Entry<Long, Integer> line : lines) {
+            Stock stock = stocks.get(line.getKey());
+            if (stock == null) continue;
+            // given back before it is counted, see apply()
+            stock.give(line.getValue());
+            stock.released.add(line.getValue());
+        }
+    }
+
+    public Integer available(long productId) {
+        Stock stock = stocks.get(productId);
+        return stock != null ? stock.available() : null;
+    }
+
+    @Scheduled(fixedDelayString = "${shopnserve.stock.flush-interval-ms:200}")
+    public void flush() {
+        flushLock.lock();
+        try {
+            flushLocked();
+        } finally {
+            flushLock.unlock();
+        }
+    }
+
+    @Scheduled(
+            initialDelayString = "${shopnserve.stock.reconcile-period-ms:60000}",
+            fixedDelayString = "${shopnserve.stock.reconcile-period-ms:60000}"
+    )
+    public void reconcile() {
+        try {
+            reconcileAll();
+        } catch (Exception e) {
+            log.warn("Stock reconciliation failed: {}", e.getMessage());
+        }
+    }
+
+    /** Re-reads one product, after it was changed through JPA or removed. */
+    public void reconcile(long productId) {
+        flushLock.lock();
+        try {
+            flushLocked();
+            List<Integer> rows = jdbc.queryForList("SELECT stock FROM products WHERE id = ?", Integer.class, productId);
+            if (rows.isEmpty()) {
+                stocks.remove(productId);
+            } else {
+                apply(productId, rows.get(0));
+            }
+        } finally {
+            flushLock.unlock();
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        flush();
+    }
+
+    @Override
+    public Health health() {
+        int failures = failuresInARow.get();
+        Health.Builder health = failures >= UNHEALTHY_AFTER ? Health.down() : Health.up();
+        health.withDetail("pendingUnits", pendingUnits()).withDetail("failedFlushesInARow", failures);
+        if (failures > 0 && lastFlushError != null) health.withDetail("lastError", lastFlushError);
+        return health.build();
+    }
+
+    /** Units reserved (net of releases) but not yet written back. */
+    public long pendingUnits() {
+        long pending = 0;
+        for (Stock stock : stocks.values()) {
+            pending += stock.reserved.sum() - stock.released.sum() - stock.persisted;
+        }
+        return pending;
+    }
+
+    private void reconcileAll() {
+        flushLock.lock();
+        try {
+            flushLocked();
+            Map<Long, Integer> db = new HashMap<>();
+            jdbc.query("SELECT id, stock FROM products", rs -> {
+                db.put(rs.getLong(1), rs.getInt(2));
+            });
+            db.forEach(this::apply);
+            stocks.keySet().retainAll(db.keySet());
+        } finally {
+            flushLock.unlock();
+        }
+    }
+
+    // caller holds flushLock and has just flushed, so the row already contains every persisted unit
+    private void apply(long productId, int dbStock) {
+        Stock stock = stocks.computeIfAbsent(productId, id -> new Stock(stripeCount, dbStock));
+        // read order released, available, reserved: against take-then-count reservations and
+        // give-then-count releases, a race can only make the target too low, never too high
+        long released = stock.released.sum();
+        int available = stock.available();
+        long pending = stock.reserved.sum() - released - stock.persisted;
+        int target = (int) Math.max(0, dbStock - pending);
+        if (target != available) stock.adjust(target - available);
+    }
+
+    private Stock stockOf(long productId) {
+        Stock stock = stocks.get(productId);
+        if (stock != null) return stock;
+        // queried outside computeIfAbsent, whose bin lock would pin a virtual thread during the query
+        List<Integer> rows = jdbc.queryForList("SELECT stock FROM products WHERE id = ?", Integer.class, productId);
+        if (rows.isEmpty()) return null;
+        Stock loaded = new Stock(stripeCount, rows.get(0));
+        Stock raced = stocks.putIfAbsent(productId, loaded);
+        return raced != null ? raced : loaded;
+    }
+
+    private void flushLocked() {
+        List<Object[]> updates = new ArrayList<>();
+        List<Long> ids = new ArrayList<>();
+        List<Stock> touched = new ArrayList<>();
+        List<Long> totals = new ArrayList<>();
+
+        stocks.forEach((id, stock) -> {
+            long total = stock.reserved.sum() - stock.released.sum();
+            long delta = total - stock.persisted;
+            if (delta == 0) return;
+            updates.add(new Object[]{delta, id});
+            ids.add(id);
+            touched.add(stock);
+            totals.add(total);
+        });
+        if (updates.isEmpty()) return;
+
+        try {
+            // updated_at assigned to itself so MySQL does not bump it: stock is not part of the catalog version
+            tx.executeWithoutResult(status -> jdbc.batchUpdate(
+                    "UPDATE products SET stock = stock - ?, updated_at = updated_at WHERE id = ?", updates));
+            for (int i = 0; i < touched.size(); i++) touched.get(i).persisted = totals.get(i);
+            failuresInARow.set(0);
+            log.debug("Persisted stock for {} products", updates.size());
+        } catch (Exception e) {
+            // nothing is marked persisted, the next flush retries the same deltas
+            flushFailures.incrementAndGet();
+            lastFlushError = e.getMessage();
+            int failures = failuresInARow.incrementAndGet();
+            if (failures == UNHEALTHY_AFTER) {
+                log.error("Stock flush failed {} times in a row, {} units not written: {}",
+                        failures, pendingUnits(), e.getMessage());
+            } else {
+                log.warn("Stock flush failed: {}", e.getMessage());
+            }
+            return;
+        }
+
+        Map<Long, Integer> available = new HashMap<>();
+        for (int i = 0; i < ids.size(); i++) available.put(ids.get(i), touched.get(i).available());
+        events.publishEvent(new Changed(available));
+    }
+}
@@ -0,0 +1,77 @@
+package shop.serve.ShopNServe.service;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.security.SecureRandom;
+import java.util.Base64;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Short-lived, single-use tickets for {@code GET /subscribe}. EventSource cannot set headers, and a bearer
+ * token in the URL would end up in access and proxy logs. A client trades its access token for a ticket with
+ * a normal POST and opens the stream with {@code ?ticket=}; the ticket is worthless once used or after
+ * {@code ticket-ttl-ms}. The stream itself still ends when the access token behind the ticket expires.
+ */
+@Component
+public class SubscribeTickets {
+
+    private static final SecureRandom RANDOM = new SecureRandom();
+    private static final Base64.Encoder B64_URL_ENC = Base64.getUrlEncoder().withoutPadding();
+
+    private record Ticket(JwtService.Claims claims, long expiresAtNanos) {}
+
+    private final Map<String, Ticket> tickets = new ConcurrentHashMap<>();
+    private final TokenDenylist denylist;
+    private final long ttlNanos;
+    private final int maxTickets;
+
+    public SubscribeTickets(
+            TokenDenylist denylist,
+            @Value("${shopnserve.events.ticket-ttl-ms:30000}") long ttlMillis,
+            @Value("${shopnserve.events.max-tickets:10000}") int maxTickets
+    ) {
+        this.denylist = denylist;
+        this.ttlNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(1, ttlMillis));
+        this.maxTickets = Math.max(1, maxTickets);
+    }
+
+    public long ttlSeconds() {
+        return Math.max(1, TimeUnit.NANOSECONDS.toSeconds(ttlNanos));
+    }
+
+    /** A new ticket for the owner of {@code claims}, or null while too many are outstanding. */
+    public String issue(JwtService.Claims claims) {
+        if (tickets.size() >= maxTickets) {
+            purgeExpired();
+            if (tickets.size() >= maxTickets) return null;
+        }
+        byte[] id = new byte[24];
+        RANDOM.nextBytes(id);
+        String ticket = B64_URL_ENC.encodeToString(id);
+        tickets.put(ticket, new Ticket(claims, System.nanoTime() + ttlNanos));
+        return ticket;
+    }
+
+    /** The claims the ticket was issued for; null if it is unknown, used, expired, or its token is no longer valid. */
+    public JwtService.Claims redeem(String ticket) {
+        if (ticket == null) return null;
+        Ticket t = tickets.remove(ticket);
+        if (t == null || t.expiresAtNanos() - System.nanoTime() <= 0) return null;
+        JwtService.Claims c = t.claims();
+        if (c.exp() <= System.currentTimeMillis() / 1000 || denylist.isRevoked(c.jti(), c.exp())) return null;
+        return c;
+    }
+
+    @Scheduled(
+            initialDelayString = "${shopnserve.events.ticket-ttl-ms:30000}",
+            fixedDelayString = "${shopnserve.events.ticket-ttl-ms:30000}"
+    )
+    public void purgeExpired() {
+        long now = System.nanoTime();
+        tickets.values().removeIf(t -> t.expiresAtNanos() - now <= 0);
+    }
+}
@@ -0,0 +1,119 @@
+package shop.serve.ShopNServe.service;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Revoked token ids, bucketed by token expiry.
+ * <p>
+ * Each expiry bucket gets its own fixed-size Bloom filter in a ring; a bucket whose tokens have all expired
+ * is simply overwritten by a later one, so entries age out without a sweeper. A Bloom hit is confirmed
+ * against an exact set, which only ever holds ids of revoked, not yet expired tokens.
+ */
+@Component
+public class TokenDenylist {
+
+    private static final int HASHES = 4;
+
+    private record Bucket(long index, AtomicLongArray bits) {}
+
+    private final long bucketSeconds;
+    private final int bitsPerBucket;
+    private final AtomicReferenceArray<Bucket> ring;
+    private final ConcurrentHashMap<String, Long> exact = new ConcurrentHashMap<>();
+    private volatile long lastPurgeEpochSecond;
+
+    public TokenDenylist(
+            @Value("${shopnserve.auth.refresh-ttl-seconds:604800}") long maxTtlSeconds,
+            @Value("${shopnserve.auth.denylist.bucket-seconds:3600}") long bucketSeconds,
+            @Value("${shopnserve.auth.denylist.bits-per-bucket:65536}") int bitsPerBucket
+    ) {
+        this.bucketSeconds = Math.max(1, bucketSeconds);
+        // round up to whole longs, power of two so the hash can be masked
+        this.bitsPerBucket = Integer.highestOneBit(Math.max(64, bitsPerBucket - 1) << 1);
+        this.ring = new AtomicReferenceArray<>((int) (maxTtlSeconds / this.bucketSeconds) + 2);
+    }
+
+    /** Returns false if the id was already revoked (or has expired anyway). */
+    public boolean revoke(String jti, long exp) {
+        if (jti == null) return false;
+
+        long now = System.currentTimeMillis() / 1000;
+        if (exp <= now) return false;
+
+        if (exact.putIfAbsent(jti, exp) != null) return false;
+
+        long index = exp / bucketSeconds;
+        int slot = (int) (index % ring.length());
+        Bucket bucket = ring.get(slot);
+        while (bucket == null || bucket.index() < index) {
+            Bucket fresh = new Bucket(index, new AtomicLongArray(bitsPerBucket / 64));
+            if (ring.compareAndSet(slot, bucket, fresh)) {
+                bucket = fresh;
+            } else {
+                bucket = ring.get(slot);
+            }
+        }
+        // a newer bucket in this slot means exp lies beyond the configured max ttl window
+        if (bucket.index() != index) return true;
+
+        long h = hash(jti);
+        int h1 = (int) h;
+        int h2 = (int) (h >>> 32);
+        for (int i = 0; i < HASHES; i++) {
+            int bit = (h1 + i * h2) & (bitsPerBucket - 1);
+            long mask = 1L << bit;
+            int word = bit >>> 6;
+            long prev;
+            do {
+                prev = bucket.bits().get(word);
+                if ((prev & mask) != 0) break;
+            } while (!bucket.bits().compareAndSet(word, prev, prev | mask));
+        }
+
+        purgeExpired(now);
+        return true;
+    }
+
+    /** Lock-free and allocation-free; only a Bloom hit touches the exact set. */
+    public boolean isRevoked(String jti, long exp) {
+        if (jti == null) return false;
+
+        long index = exp / bucketSeconds;
+        Bucket bucket = ring.get((int) (index % ring.length()));
+        if (bucket == null || bucket.index() != index) return false;
+
+        long h = hash(jti);
+        int h1 = (int) h;
+        int h2 = (int) (h >>> 32);
+        for (int i = 0; i < HASHES; i++) {
+            int bit = (h1 + i * h2) & (bitsPerBucket - 1);
+            if ((bucket.bits().get(bit >>> 6) & (1L << bit)) == 0) return false;
+        }
+        return exact.containsKey(jti);
+    }
+
+    public int size() {
+        return exact.size();
+    }
+
+    private void purgeExpired(long now) {
+        if (now - lastPurgeEpochSecond < bucketSeconds) return;
+        lastPurgeEpochSecond = now;
+        exact.values().removeIf(exp -> exp <= now);
+    }
+
+    // 64-bit FNV-1a over the chars, no intermediate byte[]
+    private static long hash(String s) {
+        long h = 0xcbf29ce484222325L;
+        for (int i = 0; i < s.length(); i++) {
+            h ^= s.charAt(i);
+            h *= 0x100000001b3L;
+        }
+        return h ^ (h >>> 29);
+    }
+}
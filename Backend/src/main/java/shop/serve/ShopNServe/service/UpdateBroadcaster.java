@@ -0,0 +1,315 @@
+package shop.serve.ShopNServe.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.http.MediaType;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.event.TransactionalEventListener;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Pushes catalog changes, stock levels and a user's new orders to SSE subscribers.
+ * <p>
+ * An idle subscriber is only an async servlet response and a map entry, with no thread. Each event is
+ * serialised once and appended to the queue of every subscriber that gets it. A subscriber with pending
+ * events is drained by one virtual thread at a time, so its events stay in order, and a client that stops
+ * reading only parks its own drain. Its queue is bounded by {@code subscriber-queue}; a subscriber that falls
+ * further behind is closed and resumes with {@code Last-Event-ID} when it reconnects.
+ * <p>
+ * A stream lives as long as the access token it was opened with. Expired or revoked ones get an
+ * {@code expired} event and are closed, checked on every heartbeat.
+ * <p>
+ * The last {@code replay-size} events are kept in a ring. A reconnect with {@code Last-Event-ID} gets what
+ * it missed, or a {@code reset} event if that is no longer possible (ring overrun, or a restart, since ids
+ * carry the boot epoch).
+ */
+@Service
+public class UpdateBroadcaster {
+
+    private static final Logger log = LoggerFactory.getLogger(UpdateBroadcaster.class);
+
+    public static final String CATALOG = "catalog";
+    public static final String STOCK = "stock";
+    public static final String ORDER = "order";
+    public static final String RESET = "reset";
+    public static final String READY = "ready";
+    public static final String EXPIRED = "expired";
+
+    /** {@code user} is null for events every subscriber gets. */
+    private record Event(long seq, String name, String user, String json) {}
+
+    private static final class Subscriber {
+        final SseEmitter emitter;
+        final JwtService.Claims claims;
+        final Queue<SseEmitter.SseEventBuilder> pending = new ConcurrentLinkedQueue<>();
+        final AtomicInteger pendingCount = new AtomicInteger();
+        final AtomicBoolean draining = new AtomicBoolean();
+        final AtomicBoolean removed = new AtomicBoolean();
+        // completed by the drain once everything queued before is written
+        volatile boolean completeWhenDrained;
+        volatile boolean closed;
+
+        Subscriber(SseEmitter emitter, JwtService.Claims claims) {
+            this.emitter = emitter;
+            this.claims = claims;
+        }
+
+        String user() {
+            return claims.subject();
+        }
+    }
+
+    public record Stats(int subscribers, long published, long lastEventSeq, long dropped, long overflowed, long expired) {}
+
+    private final ObjectMapper objectMapper;
+    private final TokenDenylist denylist;
+    private final long emitterTimeoutMillis;
+    private final int maxSubscribers;
+    private final int queueCapacity;
+    private final String epoch = Long.toString(System.currentTimeMillis(), 36);
+
+    private final Event[] ring;
+    private long seq;
+    // guards ring and seq, and orders enqueues with them
+    private final ReentrantLock lock = new ReentrantLock();
+
+    private final Set<Subscriber> subscribers = ConcurrentHashMap.newKeySet();
+    // a drain may block on a slow socket; on a virtual thread that costs no platform thread
+    private final ExecutorService drains = Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("sse-drain-", 0).factory());
+    private final AtomicInteger subscriberCount = new AtomicInteger();
+    private final AtomicLong published = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+    private final AtomicLong overflowed = new AtomicLong();
+    private final AtomicLong expired = new AtomicLong();
+
+    public UpdateBroadcaster(
+            ObjectMapper objectMapper,
+            TokenDenylist denylist,
+            @Value("${shopnserve.events.replay-size:1024}") int replaySize,
+            @Value("${shopnserve.events.subscriber-queue:256}") int queueCapacity,
+            @Value("${shopnserve.events.emitter-timeout-ms:1800000}") long emitterTimeoutMillis,
+            @Value("${shopnserve.events.max-subscribers:10000}") int maxSubscribers
+    ) {
+        this.objectMapper = objectMapper;
+        this.denylist = denylist;
+        this.ring = new Event[Math.max(1, replaySize)];
+        this.queueCapacity = Math.max(1, queueCapacity);
+        this.emitterTimeoutMillis = emitterTimeoutMillis;
+        this.maxSubscribers = maxSubscribers;
+    }
+
+    /**
+     * Registers a subscriber for the owner of {@code claims}; returns null when the subscriber limit is reached.
+     * {@code lastEventId} is the id the client saw last, null for a fresh subscription.
+     */
+    public SseEmitter subscribe(JwtService.Claims claims, String lastEventId) {
+        if (subscriberCount.incrementAndGet() > maxSubscribers) {
+            subscriberCount.decrementAndGet();
+            return null;
+        }
+
+        SseEmitter emitter = new SseEmitter(emitterTimeoutMillis);
+        Subscriber sub = new Subscriber(emitter, claims);
+        emitter.onCompletion(() -> remove(sub));
+        emitter.onTimeout(() -> remove(sub));
+        emitter.onError(e -> remove(sub));
+
+        lock.lock();
+        try {
+            List<Event> replay = new ArrayList<>();
+            // a replay longer than the queue would overflow at once, a reset is cheaper for both sides
+            boolean reset = lastEventId != null && (!replayable(lastEventId, replay, claims.subject())
+                    || replay.size() >= queueCapacity);
+            long current = seq;
+            subscribers.add(sub);
+
+            // enqueued under the lock, so the replay is written before any event published after it
+            if (reset) {
+                enqueue(sub, SseEmitter.event().name(RESET).id(idOf(current)).data("{}", MediaType.APPLICATION_JSON));
+            } else {
+                for (Event e : replay) enqueue(sub, e);
+            }
+            enqueue(sub, SseEmitter.event().name(READY).id(idOf(current)).data("{}", MediaType.APPLICATION_JSON));
+        } finally {
+            lock.unlock();
+        }
+        return emitter;
+    }
+
+    @EventListener
+    public void onCatalogChanged(ProductCatalog.Changed changed) {
+        publish(CATALOG, null, Map.of("version", changed.version()));
+    }
+
+    // one event per stock flush, {productId: available}; the catalog version does not change with stock
+    @EventListener
+    public void onStockChanged(StockReservations.Changed changed) {
+        publish(STOCK, null, changed.available());
+    }
+
+    // after commit only, a subscriber must never see an order that was rolled back
+    @TransactionalEventListener
+    public void onOrderCreated(OrderService.OrderCreated created) {
+        publish(ORDER, created.userName(), created.order());
+    }
+
+    public void publish(String name, String user, Object data) {
+        String json;
+        try {
+            json = objectMapper.writeValueAsString(data);
+        } catch (JsonProcessingException e) {
+            log.warn("Could not serialise {} event: {}", name, e.getMessage());
+            return;
+        }
+
+        lock.lock();
+        try {
+            Event event = new Event(++seq, name, user, json);
+            ring[(int) (event.seq() % ring.length)] = event;
+            published.incrementAndGet();
+            for (Subscriber sub : subscribers) {
+                if (event.user() == null || event.user().equals(sub.user())) enqueue(sub, event);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /** Heartbeat, and the end of streams whose access token expired or was revoked. */
+    @Scheduled(
+            initialDelayString = "${shopnserve.events.heartbeat-ms:15000}",
+            fixedDelayString = "${shopnserve.events.heartbeat-ms:15000}"
+    )
+    public void heartbeat() {
+        long now = System.currentTimeMillis() / 1000;
+        for (Subscriber sub : subscribers) {
+            JwtService.Claims c = sub.claims;
+            if (c.exp() <= now || denylist.isRevoked(c.jti(), c.exp())) {
+                expired.incrementAndGet();
+                // the client reconnects with a refreshed token and resumes from the last id
+                sub.completeWhenDrained = true;
+                enqueue(sub, SseEmitter.event().name(EXPIRED).data("{}", MediaType.APPLICATION_JSON));
+                continue;
+            }
+            // a comment line keeps proxies from closing the idle connection and surfaces dead clients
+            enqueue(sub, SseEmitter.event().comment("hb"));
+        }
+    }
+
+    public Stats stats() {
+        lock.lock();
+        try {
+            return new Stats(subscriberCount.get(), published.get(), seq, dropped.get(), overflowed.get(), expired.get());
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        for (Subscriber sub : subscribers) sub.emitter.complete();
+        drains.shutdown();
+    }
+
+    // caller holds the lock; false if the client has missed events the ring no longer has
+    private boolean replayable(String lastEventId, List<Event> out, String user) {
+        int sep = lastEventId.indexOf('-');
+        if (sep < 0 || !epoch.equals(lastEventId.substring(0, sep))) return false;
+        long last;
+        try {
+            last = Long.parseLong(lastEventId.substring(sep + 1));
+        } catch (NumberFormatException e) {
+            return false;
+        }
+        if (last > seq) return false;
+        if (seq - last > ring.length) return false;
+
+        for (long s = last + 1; s <= seq; s++) {
+            Event e = ring[(int) (s % ring.length)];
+            if (e.user() == null || e.user().equals(user)) out.add(e);
+        }
+        return true;
+    }
+
+    private String idOf(long s) {
+        return epoch + "-" + s;
+    }
+
+    private void enqueue(Subscriber sub, Event event) {
+        enqueue(sub, SseEmitter.event().id(idOf(event.seq())).name(event.name()).data(event.json(), MediaType.APPLICATION_JSON));
+    }
+
+    // never blocks: appends and makes sure one drain is running
+    private void enqueue(Subscriber sub, SseEmitter.SseEventBuilder event) {
+        if (sub.closed) return;
+        if (sub.pendingCount.incrementAndGet() > queueCapacity) {
+            overflowed.incrementAndGet();
+            log.debug("Closing SSE subscriber of {}, more than {} events behind", sub.user(), queueCapacity);
+            fail(sub, new IOException("Subscriber queue overflow"));
+            return;
+        }
+        sub.pending.add(event);
+        if (sub.draining.compareAndSet(false, true)) drains.execute(() -> drain(sub));
+    }
+
+    private void drain(Subscriber sub) {
+        while (true) {
+            SseEmitter.SseEventBuilder event;
+            while ((event = sub.pending.poll()) != null) {
+                sub.pendingCount.decrementAndGet();
+                if (!sub.closed) send(sub, event);
+            }
+            if (sub.completeWhenDrained && !sub.closed) {
+                remove(sub);
+                sub.emitter.complete();
+            }
+            sub.draining.set(false);
+            // an enqueue between the last poll and the reset found draining set and did not start a drain
+            if (sub.pending.isEmpty() || !sub.draining.compareAndSet(false, true)) return;
+        }
+    }
+
+    // drain thread of the subscriber only
+    private void send(Subscriber sub, SseEmitter.SseEventBuilder event) {
+        try {
+            sub.emitter.send(event);
+        } catch (IOException | IllegalStateException e) {
+            fail(sub, e);
+        }
+    }
+
+    private void fail(Subscriber sub, Exception e) {
+        dropped.incrementAndGet();
+        remove(sub);
+        sub.pending.clear();
+        sub.emitter.completeWithError(e);
+    }
+
+    private void remove(Subscriber sub) {
+        sub.closed = true;
+        if (!sub.removed.compareAndSet(false, true)) return;
+        subscribers.remove(sub);
+        subscriberCount.decrementAndGet();
+    }
+}
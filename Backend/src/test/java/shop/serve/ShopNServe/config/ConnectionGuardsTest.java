@@ -0,0 +1,79 @@
+package shop.serve.ShopNServe.config;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class ConnectionGuardsTest {
+
+    @Test
+    void admitsUpToThePermitsAndFailsFastAfterTheTimeout() {
+        ConnectionGuards.Guard guard = new ConnectionGuards(2, 10, 20).jdbc();
+
+        assertThat(guard.tryAcquire()).isTrue();
+        assertThat(guard.tryAcquire()).isTrue();
+        assertThat(guard.tryAcquire()).isFalse();
+
+        ConnectionGuards.Stats stats = guard.stats();
+        assertThat(stats.permits()).isEqualTo(2);
+        assertThat(stats.available()).isZero();
+        assertThat(stats.acquired()).isEqualTo(2);
+        assertThat(stats.rejected()).isEqualTo(1);
+
+        guard.release();
+        assertThat(guard.tryAcquire()).isTrue();
+    }
+
+    @Test
+    void callReleasesItsPermitEvenWhenTheWorkFails() {
+        ConnectionGuards.Guard guard = new ConnectionGuards(10, 1, 20).neo4j();
+
+        assertThat(guard.call(() -> 42)).isEqualTo(42);
+        assertThatThrownBy(() -> guard.run(() -> {
+            throw new IllegalArgumentException("boom");
+        })).isInstanceOf(IllegalArgumentException.class);
+
+        assertThat(guard.stats().available()).isEqualTo(1);
+    }
+
+    @Test
+    void aBusyGuardNamesThePoolItProtects() {
+        ConnectionGuards.Guard guard = new ConnectionGuards(10, 1, 10).neo4j();
+        guard.tryAcquire();
+
+        assertThatThrownBy(() -> guard.call(() -> 1))
+                .isInstanceOf(IllegalStateException.class)
+                .hasMessage("Neo4j busy, no connection within 10 ms");
+    }
+
+    @Test
+    void aWaiterGetsThePermitOnceItIsReleased() throws Exception {
+        ConnectionGuards.Guard guard = new ConnectionGuards(1, 10, 5000).jdbc();
+        guard.tryAcquire();
+        CountDownLatch waiting = new CountDownLatch(1);
+        ExecutorService pool = Executors.newSingleThreadExecutor();
+        try {
+            Future<Boolean> waiter = pool.submit(() -> {
+                waiting.countDown();
+                return guard.tryAcquire();
+            });
+            waiting.await();
+            Thread.sleep(50);
+            assertThat(guard.stats().waiting()).isEqualTo(1);
+
+            guard.release();
+
+            assertThat(waiter.get(5, TimeUnit.SECONDS)).isTrue();
+            assertThat(guard.stats().maxWaitMillis()).isGreaterThanOrEqualTo(40);
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+}
@@ -0,0 +1,78 @@
+package shop.serve.ShopNServe.handler;
+
+import org.junit.jupiter.api.Test;
+import shop.serve.ShopNServe.model.BlackboardResponse;
+import shop.serve.ShopNServe.model.Capability;
+import shop.serve.ShopNServe.model.MessageEventRequest;
+import shop.serve.ShopNServe.service.OrderService;
+import shop.serve.ShopNServe.service.StockReservations;
+
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class OrderPlacedHandlerTest {
+
+    private final OrderService orderService = mock(OrderService.class);
+    private final StockReservations stock = mock(StockReservations.class);
+    private final OrderPlacedHandler handler = new OrderPlacedHandler(orderService, stock);
+
+    private static MessageEventRequest order(long productId, int quantity) {
+        Map<String, Object> item = Map.of(
+                "product", Map.of("id", productId, "name", "Tea", "price_cents", 50),
+                "quantity", quantity);
+        return MessageEventRequest.of("t", new MessageEventRequest.Sender("Shop", "test"), List.of(Capability.OrderPlaced),
+                Map.of("items", List.of(item)));
+    }
+
+    @Test
+    void storesAReservedOrder() {
+        when(stock.reserve(Map.of(1L, 3))).thenReturn(new StockReservations.Result(true, null, 0, false));
+        when(orderService.createOrder("alice", 150, List.of(new OrderService.OrderLine(1L, "Tea", 50, 3)))).thenReturn(42L);
+
+        BlackboardResponse resp = handler.handle(order(1L, 3), "alice");
+
+        assertThat(resp.ok()).isTrue();
+        assertThat(resp.data()).containsEntry("orderId", 42L);
+    }
+
+    @Test
+    void aSoldOutItemIsAConflictNotAnAuthenticationFailure() {
+        when(stock.reserve(Map.of(1L, 3))).thenReturn(new StockReservations.Result(false, 1L, 2, false));
+
+        BlackboardResponse resp = handler.handle(order(1L, 3), "alice");
+
+        assertThat(resp.ok()).isFalse();
+        assertThat(resp.conflict()).isTrue();
+        assertThat(resp.retryAfterSeconds()).isNull();
+        assertThat(resp.data()).containsEntry("error", "Insufficient stock").containsEntry("available", 2);
+        verify(orderService, never()).createOrder(anyString(), anyInt(), anyList());
+    }
+
+    @Test
+    void anUnknownProductIsAConflictToo() {
+        when(stock.reserve(any())).thenReturn(new StockReservations.Result(false, 9L, 0, true));
+
+        BlackboardResponse resp = handler.handle(order(9L, 1), "alice");
+
+        assertThat(resp.conflict()).isTrue();
+        assertThat(resp.data()).containsEntry("error", "Unknown product").containsEntry("productId", 9L);
+    }
+
+    @Test
+    void anAnonymousOrderIsStillRefusedWithoutTheConflictFlag() {
+        BlackboardResponse resp = handler.handle(order(1L, 1), null);
+
+        assertThat(resp.ok()).isFalse();
+        assertThat(resp.conflict()).isFalse();
+    }
+}
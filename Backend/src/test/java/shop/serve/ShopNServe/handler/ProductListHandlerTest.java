@@ -0,0 +1,83 @@
+package shop.serve.ShopNServe.handler;
+
+import org.junit.jupiter.api.Test;
+import shop.serve.ShopNServe.model.BlackboardResponse;
+import shop.serve.ShopNServe.model.Capability;
+import shop.serve.ShopNServe.model.MessageEventRequest;
+import shop.serve.ShopNServe.model.ProductSummary;
+import shop.serve.ShopNServe.model.ProductView;
+import shop.serve.ShopNServe.service.ProductCatalog;
+import shop.serve.ShopNServe.service.ProductService;
+
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.anyBoolean;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class ProductListHandlerTest {
+
+    private static final List<ProductView> PRODUCTS = List.of(
+            new ProductView(1L, "Tea", 50, "Green", 10),
+            new ProductView(2L, "Coffee", 80, "Dark", 5));
+
+    private final ProductCatalog catalog = mock(ProductCatalog.class);
+    private final ProductService productService = mock(ProductService.class);
+    private final ProductListHandler handler = new ProductListHandler(catalog, productService);
+
+    private static MessageEventRequest event(Map<String, Object> payload) {
+        return MessageEventRequest.of("t", new MessageEventRequest.Sender("Shop", "test"), List.of(Capability.ProductList), payload);
+    }
+
+    @Test
+    void returnsTheWholeSnapshotUnlessTheClientHasIt() {
+        when(catalog.snapshot()).thenReturn(new ProductCatalog.Snapshot(7, PRODUCTS, 2, 0, Instant.now()));
+
+        BlackboardResponse full = handler.handle(event(Map.of()));
+        assertThat(full.data()).containsEntry("productList", PRODUCTS).containsEntry("catalogVersion", 7L);
+
+        BlackboardResponse stale = handler.handle(event(Map.of("knownVersion", 6)));
+        assertThat(stale.data()).containsEntry("productList", PRODUCTS);
+
+        BlackboardResponse unchanged = handler.handle(event(Map.of("knownVersion", 7)));
+        assertThat(unchanged.data()).containsEntry("unchanged", true).doesNotContainKey("productList");
+    }
+
+    @Test
+    void aFullPageCarriesTheCursorOfItsLastProduct() {
+        List<ProductSummary> page = List.of(new ProductSummary(3L, "Tea", 50, 10), new ProductSummary(4L, "Mate", 60, 1));
+        doReturn(page).when(productService).page(2L, 2, false);
+
+        BlackboardResponse resp = handler.handle(event(Map.of("pageSize", 2, "after", 2, "fields", "summary")));
+
+        assertThat(resp.data()).containsEntry("productList", page).containsEntry("nextCursor", 4L);
+        verify(catalog, never()).snapshot();
+    }
+
+    @Test
+    void aShortPageIsTheLast() {
+        doReturn(List.of(PRODUCTS.get(1))).when(productService).page(1L, 2, true);
+
+        BlackboardResponse resp = handler.handle(event(Map.of("pageSize", 2, "after", 1)));
+
+        assertThat(resp.data()).containsEntry("nextCursor", null);
+    }
+
+    @Test
+    void pageSizeZeroReturnsEverythingAfterTheCursor() {
+        doReturn(PRODUCTS).when(productService).page(anyLong(), anyInt(), anyBoolean());
+
+        BlackboardResponse resp = handler.handle(event(Map.of("pageSize", 0)));
+
+        assertThat(resp.data()).containsEntry("productList", PRODUCTS).containsEntry("nextCursor", null);
+        verify(productService).page(0L, 0, true);
+    }
+}
@@ -0,0 +1,98 @@
+package shop.serve.ShopNServe.model;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class MessageEventRequestDeserializerTest {
+
+    private final ObjectMapper mapper = new ObjectMapper();
+
+    private MessageEventRequest read(String json) throws Exception {
+        return mapper.readValue(json.replace('\'', '"'), MessageEventRequest.class);
+    }
+
+    @Test
+    void decodesTheOnlyCapabilityFromTheStream() throws Exception {
+        MessageEventRequest event = read("""
+                {'traceId':'t1','sender':{'component':'Shop'},'capabilities':['ProductList'],
+                 'payload':{'pageSize':20,'after':7,'fields':'summary'}}""");
+
+        assertThat(event.traceIdOrNull()).isEqualTo("t1");
+        assertThat(event.sender().component()).isEqualTo("Shop");
+        ProductListPayload p = event.payload(Capability.ProductList, ProductListPayload.class);
+        assertThat(p.pageSize()).isEqualTo(20);
+        assertThat(p.after()).isEqualTo(7L);
+        assertThat(p.fullFields()).isFalse();
+    }
+
+    @Test
+    void payloadBeforeCapabilitiesIsReplayed() throws Exception {
+        MessageEventRequest event = read("""
+                {'payload':{'pageSize':5},'capabilities':['OrderHistory'],'sender':{'component':'Shop'}}""");
+
+        assertThat(event.payload(Capability.OrderHistory, OrderHistoryPayload.class).pageSize()).isEqualTo(5);
+    }
+
+    @Test
+    void invalidPayloadOfTheOnlyCapabilityFailsTheRequest() {
+        assertThatThrownBy(() -> read("""
+                {'capabilities':['OrderPlaced'],'payload':{'items':[{'product':{'id':1,'price_cents':100},'quantity':0}]}}"""))
+                .isInstanceOfSatisfying(InvalidPayloadException.class, e -> {
+                    assertThat(e.capability()).isEqualTo(Capability.OrderPlaced);
+                    assertThat(e.reason()).isEqualTo("quantity must be positive");
+                    assertThat(e.pathString()).isEqualTo("payload.items[0]");
+                });
+    }
+
+    @Test
+    void missingPayloadStillReportsRequiredFields() {
+        assertThatThrownBy(() -> read("{'capabilities':['OrderPlaced']}"))
+                .isInstanceOfSatisfying(InvalidPayloadException.class,
+                        e -> assertThat(e.reason()).isEqualTo("items required"));
+    }
+
+    @Test
+    void severalCapabilitiesDecodeTheSamePayloadEach() throws Exception {
+        MessageEventRequest event = read("""
+                {'capabilities':['ProductList','OrderHistory'],'payload':{'pageSize':100}}""");
+
+        assertThat(event.payload(Capability.ProductList, ProductListPayload.class).pageSize()).isEqualTo(100);
+        assertThat(event.payload(Capability.OrderHistory, OrderHistoryPayload.class).pageSize()).isEqualTo(100);
+        assertThat(event.invalidPayload(Capability.ProductList)).isNull();
+        assertThat(event.invalidPayload(Capability.OrderHistory)).isNull();
+    }
+
+    @Test
+    void oneCapabilitysBoundsDoNotRejectTheOther() throws Exception {
+        // 300 is a valid ProductList page but above OrderHistory's maximum
+        MessageEventRequest event = read("""
+                {'capabilities':['ProductList','OrderHistory'],'payload':{'pageSize':300}}""");
+
+        assertThat(event.payload(Capability.ProductList, ProductListPayload.class).pageSize()).isEqualTo(300);
+        assertThat(event.invalidPayload(Capability.ProductList)).isNull();
+
+        assertThat(event.payload(Capability.OrderHistory)).isNull();
+        InvalidPayloadException invalid = event.invalidPayload(Capability.OrderHistory);
+        assertThat(invalid).isNotNull();
+        assertThat(invalid.capability()).isEqualTo(Capability.OrderHistory);
+        assertThat(invalid.reason()).isEqualTo("pageSize must be between 1 and " + OrderHistoryPayload.MAX_PAGE_SIZE);
+    }
+
+    @Test
+    void aRepeatedCapabilityIsStillTheOnlyOne() {
+        assertThatThrownBy(() -> read("""
+                {'capabilities':['OrderHistory','OrderHistory'],'payload':{'pageSize':300}}"""))
+                .isInstanceOf(InvalidPayloadException.class);
+    }
+
+    @Test
+    void unknownFieldsAreSkipped() throws Exception {
+        MessageEventRequest event = read("""
+                {'extra':{'nested':[1,2]},'capabilities':['ProductList'],'payload':{}}""");
+
+        assertThat(event.payload(Capability.ProductList, ProductListPayload.class).paged()).isFalse();
+    }
+}
@@ -0,0 +1,119 @@
+package shop.serve.ShopNServe.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Instant;
+import java.util.List;
+import java.util.Set;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.within;
+
+class BlackboardAnalyticsTest {
+
+    private static final BlackboardAnalytics.Key PRODUCTS = new BlackboardAnalytics.Key("ProductList", "Shop", "web");
+    private static final BlackboardAnalytics.Key ORDERS = new BlackboardAnalytics.Key("OrderPlaced", "Shop", "app");
+
+    @Test
+    void sketchIsExactForSmallValuesAndWithinOneSixteenthAbove() {
+        for (long v = 0; v < 8; v++) {
+            assertThat(BlackboardAnalytics.LatencySketch.midpoint(BlackboardAnalytics.LatencySketch.index(v))).isEqualTo(v);
+        }
+        int previous = -1;
+        for (long v = 8; v < 50_000_000; v += 1 + v / 97) {
+            int i = BlackboardAnalytics.LatencySketch.index(v);
+            assertThat(i).isGreaterThanOrEqualTo(previous).isLessThan(BlackboardAnalytics.LatencySketch.SIZE);
+            long mid = BlackboardAnalytics.LatencySketch.midpoint(i);
+            assertThat((double) Math.abs(mid - v) / v).isLessThanOrEqualTo(1.0 / 16);
+            previous = i;
+        }
+    }
+
+    @Test
+    void sketchClampsHugeValuesButKeepsTheExactMax() {
+        BlackboardAnalytics.LatencySketch sketch = new BlackboardAnalytics.LatencySketch();
+        sketch.record(Long.MAX_VALUE / 2);
+
+        assertThat(sketch.counts.get(BlackboardAnalytics.LatencySketch.SIZE - 1)).isEqualTo(1);
+        assertThat(sketch.max.get()).isEqualTo(Long.MAX_VALUE / 2);
+    }
+
+    @Test
+    void percentilesComeFromTheMergedSketch() {
+        BlackboardAnalytics analytics = new BlackboardAnalytics(60, 10);
+        Instant now = Instant.now();
+        for (int ms = 1; ms <= 100; ms++) analytics.record(PRODUCTS, now, false, ms * 1000L);
+
+        BlackboardAnalytics.Row row = analytics.query(60, Set.of("capability"), null, null, null).rows().get(0);
+
+        assertThat(row.requests()).isEqualTo(100);
+        assertThat(row.p50Ms()).isCloseTo(50, within(50 / 16.0));
+        assertThat(row.p95Ms()).isCloseTo(95, within(95 / 16.0));
+        assertThat(row.p99Ms()).isCloseTo(99, within(99 / 16.0));
+        // a percentile never reports more than the slowest request
+        assertThat(row.p99Ms()).isLessThanOrEqualTo(row.maxMs());
+        assertThat(row.maxMs()).isEqualTo(100.0);
+    }
+
+    @Test
+    void groupsAndFiltersByDimension() {
+        BlackboardAnalytics analytics = new BlackboardAnalytics(60, 10);
+        Instant now = Instant.now();
+        analytics.record(PRODUCTS, now, false, 1000);
+        analytics.record(PRODUCTS, now, true, 3000);
+        analytics.record(ORDERS, now, false, 2000);
+        // never finished: counted, but without a latency
+        analytics.record(ORDERS, now, true, -1);
+
+        List<BlackboardAnalytics.Row> byCapability = analytics.query(60, Set.of("capability"), null, null, null).rows();
+        assertThat(byCapability).extracting(BlackboardAnalytics.Row::capability)
+                .containsExactlyInAnyOrder("ProductList", "OrderPlaced");
+        assertThat(byCapability).allSatisfy(r -> {
+            assertThat(r.backend()).isNull();
+            assertThat(r.requests()).isEqualTo(2);
+            assertThat(r.errorRate()).isEqualTo(0.5);
+        });
+        BlackboardAnalytics.Row orders = byCapability.stream().filter(r -> r.capability().equals("OrderPlaced")).findFirst().orElseThrow();
+        assertThat(orders.maxMs()).isEqualTo(2.0);
+
+        List<BlackboardAnalytics.Row> all = analytics.query(60, Set.of(), null, null, null).rows();
+        assertThat(all).singleElement().satisfies(r -> {
+            assertThat(r.requests()).isEqualTo(4);
+            assertThat(r.failures()).isEqualTo(2);
+        });
+
+        List<BlackboardAnalytics.Row> web = analytics.query(60, Set.of("ui"), null, null, "web").rows();
+        assertThat(web).singleElement().satisfies(r -> {
+            assertThat(r.ui()).isEqualTo("web");
+            assertThat(r.requests()).isEqualTo(2);
+        });
+    }
+
+    @Test
+    void recordsOutsideTheWindowOrRingAreLeftOut() {
+        BlackboardAnalytics analytics = new BlackboardAnalytics(1, 10);
+        Instant now = Instant.now();
+        analytics.record(PRODUCTS, now.minusSeconds(5), false, 1000);
+        analytics.record(PRODUCTS, now.minusSeconds(3600), false, 1000);
+
+        assertThat(analytics.query(1, Set.of(), null, null, null).rows()).isEmpty();
+        assertThat(analytics.query(3600, Set.of(), null, null, null).rows())
+                .singleElement().extracting(BlackboardAnalytics.Row::requests).isEqualTo(1L);
+    }
+
+    @Test
+    void completedBucketsExcludeTheCurrentAndPreviousOne() {
+        BlackboardAnalytics analytics = new BlackboardAnalytics(1, 10);
+        Instant now = Instant.now();
+        analytics.record(PRODUCTS, now, false, 1000);
+        analytics.record(ORDERS, now.minusSeconds(5), false, 1000);
+
+        List<BlackboardAnalytics.BucketRows> done = analytics.completedSince(null);
+
+        assertThat(done).singleElement().satisfies(b -> {
+            assertThat(b.start().getEpochSecond()).isEqualTo(now.getEpochSecond() - 5);
+            assertThat(b.rows()).extracting(BlackboardAnalytics.Row::capability).containsExactly("OrderPlaced");
+        });
+        assertThat(analytics.completedSince(done.get(0).start())).isEmpty();
+    }
+}
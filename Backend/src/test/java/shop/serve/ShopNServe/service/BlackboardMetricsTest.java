@@ -0,0 +1,52 @@
+package shop.serve.ShopNServe.service;
+
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class BlackboardMetricsTest {
+
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+    private final BlackboardMetrics metrics = new BlackboardMetrics(registry);
+
+    @Test
+    void serverTimingSumsRepeatedPhasesAndEndsWithTheTotal() {
+        BlackboardMetrics.Timings timings = metrics.start();
+        long now = System.nanoTime();
+        timings.record(BlackboardMetrics.AUTH, null, BlackboardMetrics.OK, now - TimeUnit.MILLISECONDS.toNanos(1));
+        timings.record(BlackboardMetrics.HANDLER, "ProductList", BlackboardMetrics.OK, now - TimeUnit.MILLISECONDS.toNanos(2));
+        timings.record(BlackboardMetrics.GRAPH, null, BlackboardMetrics.OK, now - TimeUnit.MILLISECONDS.toNanos(3));
+        timings.record(BlackboardMetrics.GRAPH, null, BlackboardMetrics.OK, now - TimeUnit.MILLISECONDS.toNanos(4));
+
+        String header = timings.serverTiming();
+
+        assertThat(header).matches(
+                "auth;dur=\\d+\\.\\d\\d, handler-ProductList;dur=\\d+\\.\\d\\d, graph;dur=\\d+\\.\\d\\d, total;dur=\\d+\\.\\d\\d");
+        // each phase is timed from its own start, the two graph phases are added up
+        double graph = Double.parseDouble(header.replaceAll(".*graph;dur=([0-9.]+).*", "$1"));
+        assertThat(graph).isGreaterThanOrEqualTo(7.0);
+    }
+
+    @Test
+    void phasesAreExportedAsTaggedTimers() {
+        BlackboardMetrics.Timings timings = metrics.start();
+        timings.record(BlackboardMetrics.HANDLER, "OrderPlaced", BlackboardMetrics.ERROR, System.nanoTime());
+        metrics.start().record(BlackboardMetrics.HANDLER, "OrderPlaced", BlackboardMetrics.ERROR, System.nanoTime());
+        metrics.start().record(BlackboardMetrics.AUTH, null, BlackboardMetrics.OK, System.nanoTime());
+
+        Timer handler = registry.get("blackboard.phase")
+                .tags("phase", "handler", "capability", "OrderPlaced", "outcome", "error").timer();
+        assertThat(handler.count()).isEqualTo(2);
+        Timer auth = registry.get("blackboard.phase").tags("phase", "auth", "capability", "none").timer();
+        assertThat(auth.count()).isEqualTo(1);
+    }
+
+    @Test
+    void anEmptyRequestOnlyReportsTheTotal() {
+        assertThat(metrics.start().serverTiming()).matches("total;dur=\\d+\\.\\d\\d");
+    }
+}
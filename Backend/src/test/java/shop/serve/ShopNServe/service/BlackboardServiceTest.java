@@ -0,0 +1,234 @@
+package shop.serve.ShopNServe.service;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import shop.serve.ShopNServe.config.ConnectionGuards;
+import shop.serve.ShopNServe.handler.CapabilityHandler;
+import shop.serve.ShopNServe.model.BlackboardResponse;
+import shop.serve.ShopNServe.model.Capability;
+import shop.serve.ShopNServe.model.MessageEventRequest;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class BlackboardServiceTest {
+
+    private static final String AUTH = "Bearer valid";
+    private static final ObjectMapper JSON = new ObjectMapper();
+
+    private final AuthService auth = mock(AuthService.class);
+    private final BlackboardMetrics metrics = new BlackboardMetrics(new SimpleMeterRegistry());
+    private final List<String> calls = Collections.synchronizedList(new ArrayList<>());
+    private BlackboardService service;
+
+    private static final class Handler implements CapabilityHandler {
+        final Capability capability;
+        final boolean readOnly;
+        final Function<MessageEventRequest, BlackboardResponse> body;
+
+        Handler(Capability capability, boolean readOnly, Function<MessageEventRequest, BlackboardResponse> body) {
+            this.capability = capability;
+            this.readOnly = readOnly;
+            this.body = body;
+        }
+
+        @Override
+        public Capability capability() {
+            return capability;
+        }
+
+        @Override
+        public BlackboardResponse handle(MessageEventRequest event) {
+            return body.apply(event);
+        }
+
+        @Override
+        public boolean readOnly() {
+            return readOnly;
+        }
+    }
+
+    private BlackboardService service(CapabilityHandler... handlers) {
+        when(auth.verify(AUTH)).thenReturn(new JwtService.Claims("alice", Long.MAX_VALUE, "jti", false));
+        SessionGraphWriter writer = new SessionGraphWriter(
+                null, new ConnectionGuards(10, 10, 1000), new SimpleMeterRegistry(), "sync", "sync", 1, 1, 1000, 0) {
+            @Override
+            public void write(String cypher, Map<String, Object> row) {
+            }
+        };
+        service = new BlackboardService(
+                List.of(handlers),
+                auth,
+                new SessionGraphIngestService(writer, new GraphPayloads(false, "full", "", 16384), "shared"),
+                metrics,
+                new BlackboardAnalytics(60, 60),
+                new RateLimiter(false, "", "", "", 1000),
+                JSON,
+                4,
+                10,
+                5000,
+                false
+        );
+        return service;
+    }
+
+    @AfterEach
+    void tearDown() {
+        if (service != null) service.shutdown();
+    }
+
+    private Handler recording(Capability capability, boolean readOnly) {
+        return new Handler(capability, readOnly, event -> {
+            calls.add("start " + event.traceId());
+            if (readOnly) sleep(50);
+            calls.add("end " + event.traceId());
+            return new BlackboardResponse(true, Map.of("handled", capability.name()));
+        });
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static List<JsonNode> elements(String json) throws Exception {
+        List<JsonNode> out = new ArrayList<>();
+        JSON.readTree(json.replace('\'', '"')).forEach(out::add);
+        return out;
+    }
+
+    private static String event(String traceId, String capabilities, String payload) {
+        return "{'traceId':'" + traceId + "','sender':{'component':'Shop'},'capabilities':[" + capabilities
+                + "],'payload':" + payload + "}";
+    }
+
+    @SuppressWarnings("unchecked")
+    private static List<BlackboardResponse> results(BlackboardResponse batch) {
+        assertThat(batch.ok()).isTrue();
+        return (List<BlackboardResponse>) batch.data().get("results");
+    }
+
+    @Test
+    void badBatchElementsFailOnlyTheirOwnSlot() throws Exception {
+        service(recording(Capability.ProductList, true), recording(Capability.OrderPlaced, false));
+
+        List<BlackboardResponse> results = results(service.handleBatch(elements("[" +
+                event("a", "'ProductList'", "{}") + "," +
+                event("b", "'OrderPlaced'", "{'items':[{'product':{'id':1,'price_cents':5},'quantity':-1}]}") + "," +
+                "42," +
+                "null," +
+                event("c", "'ProductList'", "{'pageSize':'many'}") + "," +
+                event("d", "'OrderPlaced'", "{'items':[{'product':{'id':1,'price_cents':5},'quantity':1}]}") +
+                "]"), AUTH, null, metrics.start()));
+
+        assertThat(results).hasSize(6);
+        assertThat(results.get(0).ok()).isTrue();
+        assertThat(results.get(1).ok()).isFalse();
+        assertThat(results.get(1).data())
+                .containsEntry("error", "quantity must be positive")
+                .containsEntry("capability", "OrderPlaced")
+                .containsEntry("path", "payload.items[0]")
+                .containsEntry("traceId", "b");
+        assertThat(results.get(2).data()).containsEntry("error", "Malformed event");
+        assertThat(results.get(3).data()).containsEntry("error", "Missing body");
+        assertThat(results.get(4).data()).containsEntry("capability", "ProductList").containsEntry("traceId", "c");
+        assertThat(results.get(5).ok()).isTrue();
+        assertThat(calls).containsOnly("start a", "end a", "start d", "end d");
+    }
+
+    @Test
+    void batchSizeIsChecked() throws Exception {
+        service(recording(Capability.ProductList, true));
+
+        assertThat(service.handleBatch(List.of(), AUTH, null, metrics.start()).data())
+                .containsEntry("error", "events required");
+
+        StringBuilder many = new StringBuilder("[");
+        for (int i = 0; i < 11; i++) many.append(i > 0 ? "," : "").append(event("e" + i, "'ProductList'", "{}"));
+        assertThat(service.handleBatch(elements(many + "]"), AUTH, null, metrics.start()).data())
+                .containsEntry("error", "At most 10 events per batch");
+    }
+
+    @Test
+    void writesWaitForTheReadsBeforeThemAndRunAlone() throws Exception {
+        service(recording(Capability.ProductList, true), recording(Capability.OrderPlaced, false));
+        String order = "{'items':[{'product':{'id':1,'price_cents':5},'quantity':1}]}";
+
+        List<BlackboardResponse> results = results(service.handleBatch(elements("[" +
+                event("r1", "'ProductList'", "{}") + "," +
+                event("r2", "'ProductList'", "{}") + "," +
+                event("w", "'OrderPlaced'", order) + "," +
+                event("r3", "'ProductList'", "{}") +
+                "]"), AUTH, null, metrics.start()));
+
+        assertThat(results).allMatch(BlackboardResponse::ok);
+        int write = calls.indexOf("start w");
+        assertThat(calls.indexOf("end r1")).isLessThan(write);
+        assertThat(calls.indexOf("end r2")).isLessThan(write);
+        assertThat(calls.indexOf("start r3")).isGreaterThan(calls.indexOf("end w"));
+    }
+
+    @Test
+    void unauthenticatedBatchFailsEveryEvent() throws Exception {
+        service(recording(Capability.ProductList, true));
+
+        List<BlackboardResponse> results = results(service.handleBatch(elements("[" +
+                event("a", "'ProductList'", "{}") + "," + event("b", "'ProductList'", "{}") + "]"),
+                "Bearer nope", null, metrics.start()));
+
+        assertThat(results).allSatisfy(r -> assertThat(r.data()).containsEntry("error", "Unauthorized"));
+        assertThat(calls).isEmpty();
+    }
+
+    @Test
+    void readOnlyCapabilitiesOfOneEventRunConcurrently() {
+        // each handler only succeeds if the other one is running at the same time
+        CountDownLatch both = new CountDownLatch(2);
+        Function<MessageEventRequest, BlackboardResponse> meet = event -> {
+            both.countDown();
+            try {
+                return new BlackboardResponse(both.await(2, TimeUnit.SECONDS), Map.of());
+            } catch (InterruptedException e) {
+                throw new IllegalStateException(e);
+            }
+        };
+        service(new Handler(Capability.ProductList, true, meet), new Handler(Capability.OrderHistory, true, meet));
+
+        BlackboardResponse resp = service.handle(MessageEventRequest.of("t", new MessageEventRequest.Sender("Shop", "test"),
+                List.of(Capability.ProductList, Capability.OrderHistory), Map.of()), AUTH);
+
+        assertThat(resp.ok()).isTrue();
+        assertThat(resp.data()).containsKeys("ProductList", "OrderHistory");
+    }
+
+    @Test
+    void aPayloadThatDoesNotFitOneCapabilityFailsOnlyThatOne() throws Exception {
+        service(recording(Capability.ProductList, true), recording(Capability.OrderHistory, true));
+        MessageEventRequest event = JSON.readValue(
+                event("m", "'ProductList','OrderHistory'", "{'pageSize':300}").replace('\'', '"'), MessageEventRequest.class);
+
+        BlackboardResponse resp = service.handle(event, AUTH);
+
+        assertThat(resp.ok()).isFalse();
+        assertThat(((BlackboardResponse) resp.data().get("ProductList")).ok()).isTrue();
+        BlackboardResponse history = (BlackboardResponse) resp.data().get("OrderHistory");
+        assertThat(history.ok()).isFalse();
+        assertThat(history.data()).containsEntry("capability", "OrderHistory").containsEntry("path", "payload");
+        assertThat(calls).containsExactly("start m", "end m");
+    }
+}
@@ -0,0 +1,66 @@
+package shop.serve.ShopNServe.service;
+
+import org.junit.jupiter.api.Test;
+import shop.serve.ShopNServe.model.Capability;
+
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class GraphPayloadsTest {
+
+    private static final Map<String, Object> CATALOG = Map.of("products", List.of(1, 2, 3), "version", 7);
+
+    @Test
+    void defaultsKeepTheFullJsonInline() {
+        GraphPayloads payloads = new GraphPayloads(false, "full", "", 16384);
+
+        GraphPayloads.Stored stored = payloads.store(Capability.ProductList, CATALOG);
+        assertThat(stored.hash()).isNull();
+        assertThat(stored.truncated()).isFalse();
+        assertThat(stored.summary()).isFalse();
+        assertThat(stored.json()).contains("\"products\":[1,2,3]").contains("\"version\":7");
+        assertThat(stored.size()).isEqualTo(stored.json().length());
+        assertThat(payloads.store(Capability.ProductList, null)).isNull();
+    }
+
+    @Test
+    void dedupeKeysEqualContentByHash() {
+        GraphPayloads payloads = new GraphPayloads(true, "full", "", 16384);
+
+        String a = payloads.store(Capability.ProductList, Map.of("version", 7)).hash();
+        String b = payloads.store(Capability.OrderHistory, Map.of("version", 7)).hash();
+        String c = payloads.store(Capability.ProductList, Map.of("version", 8)).hash();
+        assertThat(a).hasSize(64).isEqualTo(b).isNotEqualTo(c);
+    }
+
+    @Test
+    void truncateCutsAfterMaxChars() {
+        GraphPayloads payloads = new GraphPayloads(false, "truncate", "", 10);
+
+        GraphPayloads.Stored stored = payloads.store(Capability.ProductList, CATALOG);
+        assertThat(stored.json()).hasSize(10);
+        assertThat(stored.truncated()).isTrue();
+        assertThat(stored.size()).isGreaterThan(10);
+
+        assertThat(payloads.store(Capability.ProductList, Map.of("a", 1)).truncated()).isFalse();
+    }
+
+    @Test
+    void overridesApplyPerCapability() {
+        GraphPayloads payloads = new GraphPayloads(false, "full", "ProductList=summary, OrderHistory=none", 16384);
+
+        assertThat(payloads.modeOf(Capability.OrderPlaced)).isEqualTo(GraphPayloads.Mode.FULL);
+        assertThat(payloads.store(Capability.OrderHistory, CATALOG)).isNull();
+
+        GraphPayloads.Stored summary = payloads.store(Capability.ProductList, CATALOG);
+        assertThat(summary.summary()).isTrue();
+        assertThat(summary.size()).isNull();
+        assertThat(summary.json()).contains("\"products\":{\"items\":3}").contains("\"version\":7");
+
+        assertThatThrownBy(() -> new GraphPayloads(false, "full", "ProductList", 1))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+}
@@ -0,0 +1,112 @@
+package shop.serve.ShopNServe.service;
+
+import org.junit.jupiter.api.Test;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class JwtServiceTest {
+
+    private final TokenDenylist denylist = new TokenDenylist(604800, 3600, 65536);
+    private final JwtService jwt = new JwtService(denylist, 900, 604800);
+
+    private static String b64(String s) {
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(s.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static String sign(String secret, String header, String payload) throws Exception {
+        Mac mac = Mac.getInstance("HmacSHA256");
+        mac.init(new SecretKeySpec(secret.getBytes(StandardCharsets.UTF_8), "HmacSHA256"));
+        String input = b64(header) + "." + b64(payload);
+        return input + "." + Base64.getUrlEncoder().withoutPadding()
+                .encodeToString(mac.doFinal(input.getBytes(StandardCharsets.US_ASCII)));
+    }
+
+    @Test
+    void verifiesItsOwnAccessToken() {
+        String token = jwt.generate("alice");
+
+        JwtService.Claims claims = jwt.verify(token);
+        assertThat(claims).isNotNull();
+        assertThat(claims.subject()).isEqualTo("alice");
+        assertThat(claims.refresh()).isFalse();
+        assertThat(claims.jti()).isNotBlank();
+        assertThat(claims.exp()).isBetween(System.currentTimeMillis() / 1000 + 890, System.currentTimeMillis() / 1000 + 910);
+
+        // second call is served from the cache and must agree
+        assertThat(jwt.verify(token)).isEqualTo(claims);
+    }
+
+    @Test
+    void acceptsTheAuthorizationHeaderForm() {
+        String token = jwt.generate("alice");
+
+        assertThat(jwt.subject("Bearer " + token)).isEqualTo("alice");
+        assertThat(jwt.subject("  bearer   " + token + " ")).isEqualTo("alice");
+        assertThat(jwt.verify("Bearer ")).isNull();
+        assertThat(jwt.verify("")).isNull();
+        assertThat(jwt.verify(null)).isNull();
+    }
+
+    @Test
+    void keepsAccessAndRefreshTokensApart() {
+        String access = jwt.generate("alice");
+        String refresh = jwt.generateRefresh("alice");
+
+        assertThat(jwt.verifyRefresh(access)).isNull();
+        assertThat(jwt.verify(refresh)).isNull();
+        JwtService.Claims claims = jwt.verifyRefresh(refresh);
+        assertThat(claims).isNotNull();
+        assertThat(claims.refresh()).isTrue();
+    }
+
+    @Test
+    void rejectsTamperedAndMalformedTokens() {
+        String token = jwt.generate("alice");
+        int dot2 = token.lastIndexOf('.');
+        String forgedPayload = token.substring(0, token.indexOf('.') + 1)
+                + b64("{\"sub\":\"mallory\",\"typ\":\"access\",\"exp\":" + (System.currentTimeMillis() / 1000 + 900) + "}")
+                + token.substring(dot2);
+
+        assertThat(jwt.verify(forgedPayload)).isNull();
+        // the first signature char carries six signature bits, unlike the last one
+        char first = token.charAt(dot2 + 1);
+        assertThat(jwt.verify(token.substring(0, dot2 + 1) + (first == 'A' ? 'B' : 'A') + token.substring(dot2 + 2))).isNull();
+        assertThat(jwt.verify(token + ".x")).isNull();
+        assertThat(jwt.verify("a.b")).isNull();
+        assertThat(jwt.verify("not a token")).isNull();
+    }
+
+    @Test
+    void rejectsTokensSignedWithAnotherKey() throws Exception {
+        String token = sign("some-other-secret-that-is-long-enough", "{\"alg\":\"HS256\",\"typ\":\"JWT\"}",
+                "{\"sub\":\"alice\",\"typ\":\"access\",\"exp\":" + (System.currentTimeMillis() / 1000 + 900) + "}");
+
+        assertThat(jwt.verify(token)).isNull();
+    }
+
+    @Test
+    void rejectsExpiredTokens() {
+        JwtService expired = new JwtService(denylist, -1, -1);
+
+        assertThat(expired.verify(expired.generate("alice"))).isNull();
+        assertThat(expired.verifyRefresh(expired.generateRefresh("alice"))).isNull();
+    }
+
+    @Test
+    void revokedTokensAreRejectedEvenWhenCached() {
+        String token = jwt.generate("alice");
+        assertThat(jwt.verify(token)).isNotNull();
+
+        assertThat(jwt.revoke("Bearer " + token)).isTrue();
+        assertThat(jwt.verify(token)).isNull();
+        assertThat(jwt.revoke(token)).isFalse();
+
+        // other tokens of the same user are unaffected
+        assertThat(jwt.verify(jwt.generate("alice"))).isNotNull();
+    }
+}
@@ -0,0 +1,143 @@
+package shop.serve.ShopNServe.service;
+
+import jakarta.persistence.EntityManager;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.domain.Limit;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.PlatformTransactionManager;
+import shop.serve.ShopNServe.model.OrderEntity;
+import shop.serve.ShopNServe.model.OrderItemEntity;
+import shop.serve.ShopNServe.repository.OrderRepository;
+
+import java.time.Instant;
+import java.time.format.DateTimeParseException;
+import java.time.temporal.ChronoUnit;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class OrderListServiceTest {
+
+    private static final long OVERLAP_MS = 5000;
+
+    private final OrderRepository repository = mock(OrderRepository.class);
+    private final OrderListService service = new OrderListService(
+            repository, mock(EntityManager.class), mock(PlatformTransactionManager.class), 500, 100, OVERLAP_MS);
+
+    private static OrderEntity order(long id, Instant createdAt) {
+        OrderEntity o = new OrderEntity();
+        ReflectionTestUtils.setField(o, "id", id);
+        ReflectionTestUtils.setField(o, "createdAt", createdAt);
+        o.setUserName("alice");
+        o.setTotalCents(100);
+        o.addItem(new OrderItemEntity(7L, "Tea", 50, 2));
+        return o;
+    }
+
+    @Test
+    void firstPageIsTheNewestOrders() {
+        Instant t = Instant.parse("2026-01-01T10:00:00Z");
+        when(repository.findByUserNameOrderByCreatedAtDescIdDesc("alice", Limit.of(2)))
+                .thenReturn(List.of(order(2, t), order(1, t)));
+
+        List<Map<String, Object>> page = service.listOrders("alice", null, 2);
+
+        assertThat(page).extracting(o -> o.get("id")).containsExactly(2L, 1L);
+        assertThat(page.get(0).get("items"))
+                .isEqualTo("[{\"product\":{\"id\":7,\"name\":\"Tea\",\"price_cents\":50},\"quantity\":2}]");
+    }
+
+    @Test
+    void nextPageContinuesBelowTheCursor() {
+        Instant t = Instant.parse("2026-01-01T10:00:00.123456Z");
+        Map<String, Object> last = OrderListService.toMap(order(41, t));
+        String cursor = OrderListService.cursorOf(last);
+        assertThat(cursor).isEqualTo("2026-01-01T10:00:00.123456Z_41");
+
+        when(repository.findOlderThan(eq("alice"), eq(t), eq(41L), eq(Limit.of(10)))).thenReturn(List.of());
+        assertThat(service.listOrders("alice", cursor, 10)).isEmpty();
+        verify(repository).findOlderThan("alice", t, 41L, Limit.of(10));
+    }
+
+    @Test
+    void invalidCursorsAreRejected() {
+        assertThatThrownBy(() -> service.listOrders("alice", "nope", 10)).isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> service.listOrders("alice", "yesterday_1", 10)).isInstanceOf(DateTimeParseException.class);
+        assertThatThrownBy(() -> service.listOrdersSince("alice", "2026-01-01T10:00:00Z_x", 10))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    void deltaCursorStopsBeforeUnsettledOrders() {
+        Instant now = Instant.now();
+        Instant old = now.minus(1, ChronoUnit.MINUTES);
+        Instant fresh = now.minusMillis(100);
+        String since = old.minusSeconds(1) + "_0";
+        when(repository.findNewerThan(eq("alice"), any(), anyLong(), eq(Limit.of(2))))
+                .thenReturn(List.of(order(10, old), order(60, fresh)));
+
+        OrderListService.Delta delta = service.listOrdersSince("alice", since, 2);
+
+        assertThat(delta.orders()).extracting(o -> o.get("id")).containsExactly(10L, 60L);
+        assertThat(delta.hasMore()).isTrue();
+        // order 60 may still have older, uncommitted neighbours, so it is sent again on the next poll
+        assertThat(delta.since()).isEqualTo(old + "_10");
+    }
+
+    @Test
+    void lastDeltaPageMovesTheCursorToTheSettledPoint() {
+        Instant now = Instant.now();
+        Instant old = now.minus(1, ChronoUnit.MINUTES);
+        Instant fresh = now.minusMillis(100);
+        when(repository.findNewerThan(eq("alice"), any(), anyLong(), eq(Limit.of(3))))
+                .thenReturn(List.of(order(10, old), order(60, fresh)));
+
+        OrderListService.Delta delta = service.listOrdersSince("alice", old.minusSeconds(1) + "_0", 3);
+
+        assertThat(delta.hasMore()).isFalse();
+        // everything before now - overlap has committed, the fresh order is still after the cursor
+        Instant next = Instant.parse(delta.since().split("_")[0]);
+        assertThat(next).isAfter(old).isBefore(fresh);
+    }
+
+    @Test
+    void deltaCursorCatchesUpWithTheClockWhenNothingIsLeft() {
+        Instant before = Instant.now().minusMillis(OVERLAP_MS);
+        when(repository.findNewerThan(eq("alice"), any(), anyLong(), eq(Limit.of(3)))).thenReturn(List.of());
+
+        OrderListService.Delta delta = service.listOrdersSince("alice", "2026-01-01T10:00:00Z_5", 3);
+
+        assertThat(delta.orders()).isEmpty();
+        String[] parts = delta.since().split("_");
+        assertThat(Instant.parse(parts[0])).isBetween(before, Instant.now().minusMillis(OVERLAP_MS));
+        assertThat(parts[1]).isEqualTo("0");
+    }
+
+    @Test
+    void fullPageOfUnsettledOrdersStillAdvances() {
+        Instant fresh = Instant.now();
+        String since = fresh.minusMillis(10) + "_0";
+        when(repository.findNewerThan(eq("alice"), any(), anyLong(), eq(Limit.of(2))))
+                .thenReturn(List.of(order(1, fresh), order(2, fresh)));
+
+        OrderListService.Delta delta = service.listOrdersSince("alice", since, 2);
+
+        assertThat(delta.hasMore()).isTrue();
+        assertThat(delta.since()).isEqualTo(fresh + "_2");
+    }
+
+    @Test
+    void initialSinceLiesOneOverlapInThePast() {
+        Instant before = Instant.now().minusMillis(OVERLAP_MS);
+        Instant since = Instant.parse(service.initialSince().split("_")[0]);
+        assertThat(since).isBetween(before, Instant.now().minusMillis(OVERLAP_MS));
+    }
+}
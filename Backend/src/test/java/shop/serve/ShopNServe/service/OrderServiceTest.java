@@ -0,0 +1,56 @@
+package shop.serve.ShopNServe.service;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import shop.serve.ShopNServe.model.OrderEntity;
+import shop.serve.ShopNServe.repository.OrderRepository;
+
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.contains;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class OrderServiceTest {
+
+    private final JdbcTemplate jdbc = mock(JdbcTemplate.class);
+    private final OrderService service = new OrderService(mock(OrderRepository.class), jdbc, mock(ApplicationEventPublisher.class));
+
+    private void itemsJsonNotNull(int columns) {
+        when(jdbc.queryForObject(contains("information_schema.COLUMNS"), eq(Integer.class))).thenReturn(columns);
+    }
+
+    @Test
+    void anOldDatabaseGetsANullableItemsJsonAndAMovedSequence() {
+        itemsJsonNotNull(1);
+
+        service.migrateOrderSchema();
+
+        verify(jdbc).execute("ALTER TABLE orders MODIFY items_json TEXT NULL");
+        verify(jdbc).update(contains("UPDATE orders_seq"), eq(OrderEntity.ID_ALLOCATION_SIZE));
+    }
+
+    @Test
+    void anAlreadyNullableColumnIsLeftAlone() {
+        itemsJsonNotNull(0);
+
+        service.migrateOrderSchema();
+
+        verify(jdbc, never()).execute(anyString());
+        verify(jdbc).update(contains("UPDATE orders_seq"), eq(OrderEntity.ID_ALLOCATION_SIZE));
+    }
+
+    @Test
+    void aFailedSequenceStepStopsStartup() {
+        itemsJsonNotNull(0);
+        when(jdbc.update(contains("UPDATE orders_seq"), eq(OrderEntity.ID_ALLOCATION_SIZE)))
+                .thenThrow(new DataAccessResourceFailureException("UPDATE command denied"));
+
+        assertThatThrownBy(service::migrateOrderSchema).isInstanceOf(DataAccessResourceFailureException.class);
+    }
+}
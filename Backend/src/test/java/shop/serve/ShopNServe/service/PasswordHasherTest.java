@@ -0,0 +1,64 @@
+package shop.serve.ShopNServe.service;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class PasswordHasherTest {
+
+    private PasswordHasher hasher;
+
+    @AfterEach
+    void tearDown() {
+        hasher.shutdown();
+    }
+
+    // the pool counts a task as completed only just after its result is handed over
+    private void awaitCompleted(long n) throws InterruptedException {
+        for (int i = 0; i < 100 && hasher.stats().completed() < n; i++) Thread.sleep(10);
+        assertThat(hasher.stats().completed()).isEqualTo(n);
+    }
+
+    @Test
+    void hashesAndVerifiesOnThePool() throws Exception {
+        hasher = new PasswordHasher(4, 2, 8, 5000);
+
+        String hash = hasher.hash("secret");
+
+        assertThat(hash).startsWith("$2a$04$");
+        assertThat(hasher.matches("secret", hash)).isTrue();
+        assertThat(hasher.matches("wrong", hash)).isFalse();
+        assertThat(hasher.matches("secret", hasher.hashNow("secret"))).isTrue();
+        awaitCompleted(4);
+    }
+
+    @Test
+    void unknownUsersAreCheckedAgainstADummyHash() throws Exception {
+        hasher = new PasswordHasher(4, 1, 8, 5000);
+
+        assertThat(hasher.matches("not-a-password", null)).isFalse();
+        // the check still ran, so an unknown user costs as much as a known one
+        awaitCompleted(1);
+    }
+
+    @Test
+    void aSaturatedPoolFailsFastInsteadOfWaiting() {
+        // a strength 14 hash takes far longer than the 1 ms timeout
+        hasher = new PasswordHasher(14, 1, 1, 1);
+
+        assertThatThrownBy(() -> hasher.hash("a")).isInstanceOf(PasswordHasher.BusyException.class)
+                .hasMessageContaining("timed out");
+        // the first hash still occupies the only thread, the second one fills the queue
+        assertThatThrownBy(() -> hasher.hash("b")).isInstanceOf(PasswordHasher.BusyException.class)
+                .hasMessageContaining("timed out");
+        assertThatThrownBy(() -> hasher.hash("c")).isInstanceOf(PasswordHasher.BusyException.class)
+                .hasMessageContaining("saturated");
+
+        PasswordHasher.Stats stats = hasher.stats();
+        assertThat(stats.threads()).isEqualTo(1);
+        assertThat(stats.timedOut()).isEqualTo(2);
+        assertThat(stats.rejected()).isEqualTo(1);
+    }
+}
@@ -0,0 +1,107 @@
+package shop.serve.ShopNServe.service;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.context.ApplicationEventPublisher;
+import shop.serve.ShopNServe.repository.ProductRepository;
+
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class ProductCatalogTest {
+
+    private final ProductService productService = mock(ProductService.class);
+    private final ProductRepository repository = mock(ProductRepository.class);
+    private final ApplicationEventPublisher events = mock(ApplicationEventPublisher.class);
+    private ProductCatalog catalog;
+
+    @BeforeEach
+    void setUp() {
+        when(productService.listAll()).thenReturn(List.of());
+        version(3, 1000);
+        fingerprint(3, 42);
+        catalog = new ProductCatalog(productService, repository, events, 2);
+    }
+
+    private void version(long rows, long updatedMicros) {
+        ProductRepository.CatalogVersion v = mock(ProductRepository.CatalogVersion.class);
+        when(v.getRowCount()).thenReturn(rows);
+        when(v.getUpdatedMicros()).thenReturn(updatedMicros);
+        when(repository.catalogVersion()).thenReturn(v);
+    }
+
+    private void fingerprint(long rows, long checksum) {
+        ProductRepository.CatalogFingerprint f = mock(ProductRepository.CatalogFingerprint.class);
+        when(f.getRowCount()).thenReturn(rows);
+        when(f.getChecksum()).thenReturn(checksum);
+        when(repository.fingerprint()).thenReturn(f);
+    }
+
+    @Test
+    void readsAreServedFromTheSnapshot() {
+        ProductCatalog.Snapshot first = catalog.snapshot();
+
+        assertThat(catalog.snapshot()).isSameAs(first);
+        assertThat(first.rowCount()).isEqualTo(3);
+        assertThat(first.updatedMicros()).isEqualTo(1000);
+        verify(productService, times(1)).listAll();
+        // the first load replaces nothing, so nobody is told
+        verify(events, never()).publishEvent(any(Object.class));
+    }
+
+    @Test
+    void anInvalidationWithoutAnActualChangeKeepsTheSnapshot() {
+        ProductCatalog.Snapshot first = catalog.snapshot();
+
+        catalog.invalidate();
+
+        assertThat(catalog.snapshot()).isSameAs(first);
+        verify(productService, times(1)).listAll();
+    }
+
+    @Test
+    void aNewerUpdatedAtReloadsAndAnnouncesANewVersion() {
+        ProductCatalog.Snapshot first = catalog.snapshot();
+        version(3, 2000);
+
+        catalog.checkVersion();
+
+        ProductCatalog.Snapshot next = catalog.snapshot();
+        assertThat(next.version()).isGreaterThan(first.version());
+        assertThat(next.updatedMicros()).isEqualTo(2000);
+        verify(events).publishEvent(new ProductCatalog.Changed(next.version()));
+    }
+
+    @Test
+    void theChecksumCatchesWritesThatBypassUpdatedAt() {
+        ProductCatalog.Snapshot first = catalog.snapshot();
+
+        catalog.checkVersion();
+        catalog.checkVersion();
+        assertThat(catalog.snapshot()).isSameAs(first);
+
+        fingerprint(3, 43);
+        catalog.checkVersion();
+        catalog.checkVersion();
+
+        assertThat(catalog.snapshot().version()).isGreaterThan(first.version());
+        verify(productService, times(2)).listAll();
+    }
+
+    @Test
+    void aFailedLoadIsRetriedOnTheNextRead() {
+        when(productService.listAll()).thenThrow(new IllegalStateException("db down")).thenReturn(List.of());
+
+        assertThatThrownBy(() -> catalog.snapshot()).isInstanceOf(IllegalStateException.class);
+
+        assertThat(catalog.snapshot().products()).isEmpty();
+    }
+}
@@ -0,0 +1,55 @@
+package shop.serve.ShopNServe.service;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import shop.serve.ShopNServe.repository.ProductRepository;
+
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.contains;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class ProductServiceTest {
+
+    private final JdbcTemplate jdbc = mock(JdbcTemplate.class);
+    private final ProductService service = new ProductService(mock(ProductRepository.class), jdbc);
+
+    private void existing(int columns, int indexes) {
+        when(jdbc.queryForObject(contains("information_schema.COLUMNS"), eq(Integer.class))).thenReturn(columns);
+        when(jdbc.queryForObject(contains("information_schema.STATISTICS"), eq(Integer.class))).thenReturn(indexes);
+    }
+
+    @Test
+    void anOldDatabaseGetsUpdatedAtAndItsIndex() {
+        existing(0, 0);
+
+        service.migrateProductSchema();
+
+        verify(jdbc).execute(contains("ADD COLUMN updated_at TIMESTAMP(6) NOT NULL"));
+        verify(jdbc).execute("CREATE INDEX idx_products_updated ON products (updated_at)");
+    }
+
+    @Test
+    void anUpToDateDatabaseIsLeftAlone() {
+        existing(1, 1);
+
+        service.migrateProductSchema();
+
+        verify(jdbc, never()).execute(anyString());
+    }
+
+    @Test
+    void aFailedMigrationStopsStartup() {
+        existing(0, 0);
+        doThrow(new DataAccessResourceFailureException("ALTER command denied"))
+                .when(jdbc).execute(contains("ADD COLUMN"));
+
+        assertThatThrownBy(service::migrateProductSchema).isInstanceOf(DataAccessResourceFailureException.class);
+    }
+}
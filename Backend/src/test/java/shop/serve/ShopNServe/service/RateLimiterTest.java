@@ -0,0 +1,151 @@
+package shop.serve.ShopNServe.service;
+
+import org.junit.jupiter.api.Test;
+import shop.serve.ShopNServe.model.Capability;
+
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class RateLimiterTest {
+
+    // slow enough that no token comes back during a test
+    private static final String SLOW = "0.001";
+
+    private static RateLimiter limiter(String user, String component, int maxBuckets) {
+        return new RateLimiter(true, user, "", component, maxBuckets);
+    }
+
+    @Test
+    void admitsTheBurstThenRefuses() {
+        RateLimiter limiter = limiter("ProductList=" + SLOW + ":3", "", 100);
+
+        for (int i = 0; i < 3; i++) assertThat(limiter.admit("alice", null, "Shop", Capability.ProductList)).isZero();
+        assertThat(limiter.admit("alice", null, "Shop", Capability.ProductList)).isPositive();
+        // buckets are per subject
+        assertThat(limiter.admit("bob", null, "Shop", Capability.ProductList)).isZero();
+
+        RateLimiter.Stats stats = limiter.stats();
+        assertThat(stats.admitted()).isEqualTo(4);
+        assertThat(stats.rejected()).isEqualTo(1);
+    }
+
+    @Test
+    void unlistedCapabilitiesAndAnonymousSubjectsSkipTheUserBucket() {
+        RateLimiter limiter = limiter("OrderPlaced=" + SLOW + ":1", "", 100);
+
+        for (int i = 0; i < 10; i++) {
+            assertThat(limiter.admit("alice", null, "Shop", Capability.ProductList)).isZero();
+            assertThat(limiter.admit(null, null, "Shop", Capability.OrderPlaced)).isZero();
+        }
+    }
+
+    @Test
+    void refusedComponentDoesNotSpendTheUserToken() {
+        RateLimiter limiter = limiter("ProductList=" + SLOW + ":2", "ProductList=" + SLOW + ":1", 100);
+
+        assertThat(limiter.admit("alice", null, "a", Capability.ProductList)).isZero();
+        assertThat(limiter.admit("alice", null, "a", Capability.ProductList)).isPositive();
+        // the refusal above gave alice's token back
+        assertThat(limiter.admit("alice", null, "b", Capability.ProductList)).isZero();
+        assertThat(limiter.admit("alice", null, "c", Capability.ProductList)).isPositive();
+    }
+
+    @Test
+    void sprayedComponentNamesStillSpendTheClientBucket() {
+        RateLimiter limiter = new RateLimiter(true, "", "Authentication=" + SLOW + ":3", "Authentication=" + SLOW + ":1", 100);
+
+        // every made-up name starts with a full component bucket, the address does not
+        for (int i = 0; i < 3; i++) assertThat(limiter.admit(null, "10.0.0.1", "Login" + i, Capability.Authentication)).isZero();
+        assertThat(limiter.admit(null, "10.0.0.1", "Login3", Capability.Authentication)).isPositive();
+        assertThat(limiter.admit(null, "10.0.0.2", "Login3", Capability.Authentication)).isZero();
+    }
+
+    @Test
+    void oneClientCannotUseUpTheSharedLoginBudget() {
+        RateLimiter limiter = new RateLimiter(true, "", "Authentication=" + SLOW + ":2", "Authentication=" + SLOW + ":5", 100);
+
+        for (int i = 0; i < 10; i++) limiter.admit(null, "10.0.0.1", "Login", Capability.Authentication);
+        assertThat(limiter.stats().admitted()).isEqualTo(2);
+        // the refused ones took nothing from the component bucket
+        for (int i = 2; i < 5; i++) assertThat(limiter.admit(null, "10.0.0." + i, "Login", Capability.Authentication)).isZero();
+    }
+
+    @Test
+    void authenticatedRequestsSkipTheClientBucket() {
+        RateLimiter limiter = new RateLimiter(true, "", "ProductList=" + SLOW + ":1", "", 100);
+
+        for (int i = 0; i < 10; i++) assertThat(limiter.admit("alice", "10.0.0.1", "Shop", Capability.ProductList)).isZero();
+        assertThat(limiter.admit(null, "10.0.0.1", "Shop", Capability.ProductList)).isZero();
+        assertThat(limiter.admit(null, "10.0.0.1", "Shop", Capability.ProductList)).isPositive();
+    }
+
+    @Test
+    void refusedEventGivesBackTokensOfItsOtherCapabilities() {
+        RateLimiter limiter = limiter("ProductList=" + SLOW + ":1,OrderHistory=" + SLOW + ":1", "", 100);
+
+        assertThat(limiter.admit("alice", null, "Shop", List.of(Capability.ProductList))).isNull();
+
+        RateLimiter.Refusal refusal = limiter.admit("alice", null, "Shop", List.of(Capability.OrderHistory, Capability.ProductList));
+        assertThat(refusal).isNotNull();
+        assertThat(refusal.capability()).isEqualTo(Capability.ProductList);
+        assertThat(refusal.waitNanos()).isPositive();
+
+        assertThat(limiter.admit("alice", null, "Shop", List.of(Capability.OrderHistory))).isNull();
+    }
+
+    @Test
+    void fullTableRefusesNewKeysWithoutTouchingOthers() {
+        RateLimiter limiter = limiter("ProductList=" + SLOW + ":5", "", 2);
+
+        assertThat(limiter.admit("alice", null, "Shop", Capability.ProductList)).isZero();
+        assertThat(limiter.admit("bob", null, "Shop", Capability.ProductList)).isZero();
+
+        for (int i = 0; i < 10; i++) assertThat(limiter.admit("mallory" + i, null, "Shop", Capability.ProductList)).isPositive();
+        assertThat(limiter.stats().overflowed()).isEqualTo(10);
+
+        // existing buckets still have their own tokens
+        for (int i = 0; i < 4; i++) assertThat(limiter.admit("alice", null, "Shop", Capability.ProductList)).isZero();
+        assertThat(limiter.admit("bob", null, "Shop", Capability.ProductList)).isZero();
+    }
+
+    @Test
+    void fullTableEvictsIdleBucketsForNewKeys() throws InterruptedException {
+        RateLimiter limiter = limiter("ProductList=1000:1", "", 2);
+
+        assertThat(limiter.admit("alice", null, "Shop", Capability.ProductList)).isZero();
+        assertThat(limiter.admit("bob", null, "Shop", Capability.ProductList)).isZero();
+        // both are full again after 1 ms, and the inline sweep runs at most every 100 ms
+        Thread.sleep(150);
+
+        assertThat(limiter.admit("carol", null, "Shop", Capability.ProductList)).isZero();
+        assertThat(limiter.stats().buckets()).isEqualTo(1);
+    }
+
+    @Test
+    void configureAppliesToExistingBuckets() {
+        RateLimiter limiter = limiter("ProductList=" + SLOW + ":1", "", 100);
+        assertThat(limiter.admit("alice", null, "Shop", Capability.ProductList)).isZero();
+        assertThat(limiter.admit("alice", null, "Shop", Capability.ProductList)).isPositive();
+
+        limiter.configure(true, new RateLimiter.Limits(RateLimiter.parse("ProductList=" + SLOW + ":3"), Map.of(), Map.of()));
+        assertThat(limiter.admit("alice", null, "Shop", Capability.ProductList)).isZero();
+
+        limiter.configure(false, limiter.stats().limits());
+        for (int i = 0; i < 10; i++) assertThat(limiter.admit("alice", null, "Shop", Capability.ProductList)).isZero();
+    }
+
+    @Test
+    void parsesLimits() {
+        Map<Capability, RateLimiter.Limit> limits = RateLimiter.parse(" ProductList = 20:40 , OrderPlaced=2:5,");
+
+        assertThat(limits).containsOnly(
+                Map.entry(Capability.ProductList, new RateLimiter.Limit(20, 40)),
+                Map.entry(Capability.OrderPlaced, new RateLimiter.Limit(2, 5)));
+        assertThatThrownBy(() -> RateLimiter.parse("ProductList=20")).isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> RateLimiter.parse("Nope=1:1")).isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> RateLimiter.parse("ProductList=0:1")).isInstanceOf(IllegalArgumentException.class);
+    }
+}
@@ -0,0 +1,113 @@
+package shop.serve.ShopNServe.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import shop.serve.ShopNServe.config.ConnectionGuards;
+import shop.serve.ShopNServe.model.Capability;
+import shop.serve.ShopNServe.model.MessageEventRequest;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class SessionGraphIngestServiceTest {
+
+    private record Write(String cypher, Map<String, Object> row) {}
+
+    private final List<Write> writes = new ArrayList<>();
+    private final SessionGraphWriter writer = new SessionGraphWriter(
+            null, new ConnectionGuards(10, 10, 1000), new SimpleMeterRegistry(), "sync", "sync", 1, 1, 1000, 0) {
+        @Override
+        public void write(String cypher, Map<String, Object> row) {
+            writes.add(new Write(cypher, row));
+        }
+    };
+
+    private SessionGraphIngestService service(boolean dedupe, String model) {
+        return new SessionGraphIngestService(writer, new GraphPayloads(dedupe, "full", "", 16384), model);
+    }
+
+    private static MessageEventRequest event(String traceId) {
+        return MessageEventRequest.of(traceId, new MessageEventRequest.Sender("ProductPage.vue", "shop"),
+                List.of(Capability.ProductList), Map.of());
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void aWholeMessageIsOneStatement() {
+        SessionGraphIngestService service = service(false, "shared");
+        SessionGraphIngestService.MessageTrace trace = service.begin(event("trace-1"));
+        SessionGraphIngestService.CapabilityTrace list = trace.requested(Capability.ProductList, "ProductService", Map.of("pageSize", 2));
+        list.provided(Map.of("productList", List.of()));
+        list.completed();
+        trace.requested(Capability.OrderPlaced, "OrderService", null).failed("out of stock");
+
+        service.ingest(trace);
+
+        assertThat(writes).singleElement().satisfies(w ->
+                assertThat(w.row()).containsEntry("sid", "trace-1").containsEntry("ui", "ProductPage"));
+        List<Map<String, Object>> steps = (List<Map<String, Object>>) writes.get(0).row().get("steps");
+        assertThat(steps).hasSize(2);
+        assertThat(steps.get(0))
+                .containsEntry("cap", "ProductList")
+                .containsEntry("requestLabel", "RequestedData")
+                .containsEntry("responseLabel", "ProvidedData")
+                .containsEntry("payload", "{\"pageSize\":2}")
+                .containsEntry("responsePayload", "{\"productList\":[]}")
+                .containsEntry("failedAt", null);
+        assertThat(steps.get(0).get("pid")).isNotNull();
+        assertThat(steps.get(0).get("completedAt")).isNotNull();
+        // OrderPlaced and Authentication keep their historical, swapped labels
+        assertThat(steps.get(1))
+                .containsEntry("cap", "OrderPlaced")
+                .containsEntry("requestLabel", "ProvidedData")
+                .containsEntry("error", "out of stock")
+                .containsEntry("pid", null)
+                .doesNotContainKey("responsePayload");
+    }
+
+    @Test
+    void theGraphModelDecidesWhichDimensionNodesAreMerged() {
+        SessionGraphIngestService shared = service(false, "shared");
+        shared.ingest(shared.begin(event("t")));
+        SessionGraphIngestService session = service(false, "session");
+        session.ingest(session.begin(event("t")));
+
+        assertThat(writes.get(0).cypher())
+                .contains("MERGE (b:BackendComponent:Dimension {name:step.backend})")
+                .contains("MERGE (c:Capability:Dimension {name:step.cap})");
+        assertThat(writes.get(1).cypher())
+                .contains("MERGE (b:BackendComponent {sessionId:row.sid, name:step.backend})")
+                .contains("MERGE (c:Capability {sessionId:row.sid, name:step.cap})");
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void dedupedPayloadsAreReferencedByHash() {
+        SessionGraphIngestService service = service(true, "shared");
+        SessionGraphIngestService.MessageTrace trace = service.begin(event("t"));
+        trace.requested(Capability.ProductList, "ProductService", Map.of("pageSize", 2));
+
+        service.ingest(trace);
+
+        Map<String, Object> step = ((List<Map<String, Object>>) writes.get(0).row().get("steps")).get(0);
+        assertThat(step).containsEntry("payload", null).containsEntry("payloadJson", "{\"pageSize\":2}");
+        assertThat((String) step.get("payloadHash")).hasSize(64);
+    }
+
+    @Test
+    void aMissingTraceIdStartsAFreshSession() {
+        SessionGraphIngestService service = service(false, "shared");
+
+        String sid = service.begin(event("  ")).sessionId();
+
+        assertThat(UUID.fromString(sid)).isNotNull();
+        assertThat(service.begin(event(null)).sessionId()).isNotEqualTo(sid);
+        assertThat(service.begin(event(" trace-2 ")).sessionId()).isEqualTo("trace-2");
+        // nothing is written before ingest
+        assertThat(writes).isEmpty();
+    }
+}
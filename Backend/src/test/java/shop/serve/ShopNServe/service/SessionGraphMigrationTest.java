@@ -0,0 +1,148 @@
+package shop.serve.ShopNServe.service;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.neo4j.core.Neo4jClient;
+import shop.serve.ShopNServe.config.ConnectionGuards;
+import shop.serve.ShopNServe.model.Capability;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyMap;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class SessionGraphMigrationTest {
+
+    private final Neo4jClient neo4j = mock(Neo4jClient.class);
+
+    // per-session copies still in the graph, and every statement run against it
+    private long backendsLeft;
+    private long capabilitiesLeft;
+    private final List<String> log = new ArrayList<>();
+    private RuntimeException failure;
+
+    @BeforeEach
+    @SuppressWarnings("unchecked")
+    void setUp() {
+        when(neo4j.query(anyString())).thenAnswer(inv -> {
+            String cypher = inv.getArgument(0);
+            Map<String, Object> params = new HashMap<>();
+            Neo4jClient.UnboundRunnableSpec spec = mock(Neo4jClient.UnboundRunnableSpec.class);
+            when(spec.bindAll(anyMap())).thenAnswer(b -> {
+                params.putAll(b.getArgument(0));
+                return spec;
+            });
+            Neo4jClient.MappingSpec<Object> value = mock(Neo4jClient.MappingSpec.class);
+            when(value.one()).thenAnswer(f -> Optional.ofNullable(execute(cypher, params)));
+            when(spec.fetchAs(any())).thenReturn(value);
+            when(spec.run()).thenAnswer(f -> {
+                execute(cypher, params);
+                return null;
+            });
+            return spec;
+        });
+    }
+
+    private SessionGraphMigration migration(String model, boolean enabled, int batchSize) {
+        return new SessionGraphMigration(neo4j, new ConnectionGuards(10, 10, 1000),
+                new SessionGraphIngestService(null, null, model), enabled, batchSize, 0);
+    }
+
+    private Object execute(String cypher, Map<String, Object> params) {
+        if (failure != null) throw failure;
+        if (cypher.contains("UNWIND $dimensions")) {
+            log.add("seed " + ((List<?>) params.get("dimensions")).size());
+            return null;
+        }
+        long limit = ((Number) params.get("limit")).longValue();
+        if (cypher.contains("MATCH (old:BackendComponent)")) {
+            long n = Math.min(limit, backendsLeft);
+            backendsLeft -= n;
+            log.add("backends " + n);
+            return n;
+        }
+        if (cypher.contains("MATCH (old:Capability)")) {
+            long n = Math.min(limit, capabilitiesLeft);
+            capabilitiesLeft -= n;
+            log.add("capabilities " + n);
+            return n;
+        }
+        throw new IllegalStateException("unexpected statement: " + cypher);
+    }
+
+    @Test
+    void migratesBackendsBeforeCapabilitiesInBatches() {
+        backendsLeft = 1200;
+        capabilitiesLeft = 300;
+
+        SessionGraphMigration.Stats stats = migration("shared", true, 500).run();
+
+        assertThat(log).containsExactly(
+                "backends 500", "backends 500", "backends 200", "capabilities 300");
+        assertThat(stats.backendsMigrated()).isEqualTo(1200);
+        assertThat(stats.capabilitiesMigrated()).isEqualTo(300);
+        assertThat(stats.complete()).isTrue();
+        assertThat(stats.lastError()).isNull();
+    }
+
+    @Test
+    void aFullLastBatchIsFollowedByAnEmptyOne() {
+        backendsLeft = 500;
+
+        migration("shared", true, 500).run();
+
+        assertThat(log).containsExactly("backends 500", "backends 0", "capabilities 0");
+    }
+
+    @Test
+    void aFailedRunIsRetriedUntilComplete() {
+        backendsLeft = 10;
+        capabilitiesLeft = 10;
+        SessionGraphMigration migration = migration("shared", true, 500);
+        failure = new IllegalStateException("database unavailable");
+
+        migration.scheduled();
+
+        assertThat(migration.stats().complete()).isFalse();
+        assertThat(migration.stats().lastError()).isEqualTo("IllegalStateException: database unavailable");
+
+        failure = null;
+        migration.scheduled();
+        assertThat(migration.stats().complete()).isTrue();
+        assertThat(backendsLeft).isZero();
+        assertThat(capabilitiesLeft).isZero();
+
+        // once complete the schedule does nothing
+        log.clear();
+        migration.scheduled();
+        assertThat(log).isEmpty();
+    }
+
+    @Test
+    void seedsOneDimensionPerCapability() {
+        migration("shared", false, 500).seed();
+
+        assertThat(log).containsExactly("seed " + Capability.values().length);
+    }
+
+    @Test
+    void doesNothingUnlessEnabledOnTheSharedModel() {
+        backendsLeft = 10;
+
+        migration("shared", false, 500).scheduled();
+        SessionGraphMigration session = migration("session", true, 500);
+        session.seed();
+        session.scheduled();
+
+        assertThat(log).isEmpty();
+        assertThat(backendsLeft).isEqualTo(10);
+    }
+}
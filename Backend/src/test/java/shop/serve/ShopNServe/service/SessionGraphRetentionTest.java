@@ -0,0 +1,204 @@
+package shop.serve.ShopNServe.service;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.neo4j.core.Neo4jClient;
+import shop.serve.ShopNServe.config.ConnectionGuards;
+
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.TreeMap;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyMap;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class SessionGraphRetentionTest {
+
+    private static final int MAX_AGE_DAYS = 30;
+
+    private final Neo4jClient neo4j = mock(Neo4jClient.class);
+
+    // a tiny stand-in for the graph: what is left per kind, and every statement run against it
+    private final TreeMap<String, Long> requestedPerDay = new TreeMap<>();
+    private final Set<String> markedDays = new HashSet<>();
+    private final Map<String, Long> left = new HashMap<>();
+    private final List<String> sessions = new ArrayList<>();
+    private final Set<String> expiredSessions = new HashSet<>();
+    private final List<String> log = new ArrayList<>();
+    private RuntimeException failure;
+
+    @BeforeEach
+    @SuppressWarnings("unchecked")
+    void setUp() {
+        when(neo4j.query(anyString())).thenAnswer(inv -> {
+            String cypher = inv.getArgument(0);
+            Map<String, Object> params = new HashMap<>();
+            Neo4jClient.UnboundRunnableSpec spec = mock(Neo4jClient.UnboundRunnableSpec.class);
+            when(spec.bindAll(anyMap())).thenAnswer(b -> {
+                params.putAll(b.getArgument(0));
+                return spec;
+            });
+            Neo4jClient.RecordFetchSpec<Map<String, Object>> rows = mock(Neo4jClient.RecordFetchSpec.class);
+            when(rows.one()).thenAnswer(f -> Optional.ofNullable((Map<String, Object>) execute(cypher, params)));
+            when(rows.all()).thenAnswer(f -> execute(cypher, params));
+            when(spec.fetch()).thenReturn(rows);
+            Neo4jClient.MappingSpec<Object> value = mock(Neo4jClient.MappingSpec.class);
+            when(value.one()).thenAnswer(f -> Optional.ofNullable(execute(cypher, params)));
+            when(spec.fetchAs(any())).thenReturn(value);
+            when(spec.run()).thenAnswer(f -> {
+                execute(cypher, params);
+                return null;
+            });
+            return spec;
+        });
+    }
+
+    private SessionGraphRetention retention(int batchSize, int maxBatches) {
+        return new SessionGraphRetention(neo4j, new ConnectionGuards(10, 10, 1000), true, MAX_AGE_DAYS, batchSize, 0, maxBatches);
+    }
+
+    private static String daysAgo(int days) {
+        return LocalDate.now(ZoneOffset.UTC).minusDays(days).toString();
+    }
+
+    private Object execute(String cypher, Map<String, Object> params) {
+        if (failure != null) throw failure;
+        if (cypher.contains("min(at)")) {
+            String day = requestedPerDay.entrySet().stream().filter(e -> e.getValue() > 0)
+                    .map(Map.Entry::getKey).findFirst().orElse(null);
+            return day == null ? null : Map.of("day", day);
+        }
+        if (cypher.contains("RollupDay") && cypher.contains("count(m)")) {
+            return markedDays.contains((String) params.get("day"));
+        }
+        if (cypher.contains("DailyRollup")) {
+            log.add("rollup " + params.get("day"));
+            return requestedPerDay.get((String) params.get("day"));
+        }
+        if (cypher.contains("MERGE (m:RollupDay")) {
+            log.add("mark " + params.get("day"));
+            markedDays.add((String) params.get("day"));
+            return null;
+        }
+        int limit = (Integer) params.getOrDefault("limit", 0);
+        if (cypher.contains("n.requestedAt <")) {
+            String day = LocalDate.parse(((String) params.get("before")).substring(0, 10)).minusDays(1).toString();
+            long n = Math.min(limit, requestedPerDay.getOrDefault(day, 0L));
+            requestedPerDay.merge(day, -n, Long::sum);
+            log.add("delete " + day + " " + n);
+            return n;
+        }
+        if (cypher.contains("s.id > $after")) {
+            String after = (String) params.get("after");
+            List<Map<String, Object>> page = new ArrayList<>();
+            for (String id : sessions) {
+                if (id.compareTo(after) > 0 && page.size() < limit) {
+                    page.add(Map.of("id", id, "expired", expiredSessions.contains(id)));
+                }
+            }
+            log.add("sessions after '" + after + "'");
+            return page;
+        }
+        if (cypher.contains("UNWIND $ids")) {
+            List<String> ids = (List<String>) params.get("ids");
+            sessions.removeAll(ids);
+            log.add("delete sessions " + ids);
+            return (long) ids.size();
+        }
+        String kind = cypher.contains("PayloadBlob") ? "blobs" : cypher.contains("AnalyticsBucket") ? "buckets" : "responses";
+        long n = Math.min(limit, left.getOrDefault(kind, 0L));
+        left.merge(kind, -n, Long::sum);
+        return n;
+    }
+
+    @Test
+    void rollsUpEachDayBeforeDeletingItInBatches() {
+        String older = daysAgo(MAX_AGE_DAYS + 2);
+        String newer = daysAgo(MAX_AGE_DAYS + 1);
+        requestedPerDay.put(older, 1200L);
+        requestedPerDay.put(newer, 300L);
+
+        SessionGraphRetention.Stats stats = retention(500, 100).run();
+
+        assertThat(log).containsSubsequence(
+                "rollup " + older, "mark " + older,
+                "delete " + older + " 500", "delete " + older + " 500", "delete " + older + " 200",
+                "rollup " + newer, "mark " + newer, "delete " + newer + " 300");
+        assertThat(stats.daysRolledUp()).isEqualTo(2);
+        assertThat(stats.dataDeleted()).isEqualTo(1500);
+        assertThat(stats.budgetExhausted()).isFalse();
+        assertThat(stats.lastError()).isNull();
+        assertThat(stats.cutoff()).startsWith(daysAgo(MAX_AGE_DAYS));
+    }
+
+    @Test
+    void aDayMarkedByAnInterruptedRunIsOnlyDeleted() {
+        String day = daysAgo(MAX_AGE_DAYS + 1);
+        requestedPerDay.put(day, 10L);
+        markedDays.add(day);
+
+        SessionGraphRetention.Stats stats = retention(500, 100).run();
+
+        assertThat(log).noneMatch(l -> l.startsWith("rollup") || l.startsWith("mark"));
+        assertThat(stats.daysRolledUp()).isZero();
+        assertThat(stats.dataDeleted()).isEqualTo(10);
+    }
+
+    @Test
+    void stopsAtTheBatchBudgetAndResumesNextRun() {
+        String day = daysAgo(MAX_AGE_DAYS + 1);
+        requestedPerDay.put(day, 2000L);
+
+        SessionGraphRetention.Stats first = retention(500, 3).run();
+
+        assertThat(first.budgetExhausted()).isTrue();
+        assertThat(first.dataDeleted()).isEqualTo(1500);
+        assertThat(requestedPerDay.get(day)).isEqualTo(500);
+
+        SessionGraphRetention.Stats second = retention(500, 3).run();
+        assertThat(second.daysRolledUp()).isZero();
+        assertThat(requestedPerDay.get(day)).isZero();
+    }
+
+    @Test
+    void walksSessionsInPagesAndDeletesOnlyExpiredOnes() {
+        sessions.addAll(List.of("s1", "s2", "s3", "s4", "s5"));
+        expiredSessions.addAll(List.of("s1", "s4", "s5"));
+        left.put("blobs", 3L);
+        left.put("buckets", 1L);
+        left.put("responses", 4L);
+
+        SessionGraphRetention.Stats stats = retention(2, 100).run();
+
+        assertThat(log).containsSubsequence(
+                "sessions after ''", "delete sessions [s1]",
+                "sessions after 's2'", "delete sessions [s4]",
+                "sessions after 's4'", "delete sessions [s5]");
+        assertThat(sessions).containsExactly("s2", "s3");
+        assertThat(stats.sessionsDeleted()).isEqualTo(3);
+        assertThat(stats.blobsDeleted()).isEqualTo(3);
+        assertThat(stats.dataDeleted()).isEqualTo(5);
+    }
+
+    @Test
+    void aFailedRunIsRecordedNotThrown() {
+        failure = new IllegalStateException("database unavailable");
+        SessionGraphRetention retention = retention(500, 100);
+
+        SessionGraphRetention.Stats stats = retention.run();
+
+        assertThat(stats.lastError()).isEqualTo("IllegalStateException: database unavailable");
+        assertThat(retention.stats()).isSameAs(stats);
+    }
+}
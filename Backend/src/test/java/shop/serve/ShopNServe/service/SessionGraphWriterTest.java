@@ -0,0 +1,203 @@
+package shop.serve.ShopNServe.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.neo4j.core.Neo4jClient;
+import shop.serve.ShopNServe.config.ConnectionGuards;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.anyMap;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class SessionGraphWriterTest {
+
+    private record Statement(String cypher, List<Map<String, Object>> rows, String thread) {}
+
+    private final Neo4jClient neo4j = mock(Neo4jClient.class);
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+    private final List<Statement> statements = Collections.synchronizedList(new ArrayList<>());
+    // statements named "slow" wait for this, so the drainer can be held up mid-flush
+    private final CountDownLatch slow = new CountDownLatch(1);
+    private SessionGraphWriter writer;
+
+    @BeforeEach
+    @SuppressWarnings("unchecked")
+    void setUp() {
+        when(neo4j.query(anyString())).thenAnswer(inv -> {
+            String cypher = inv.getArgument(0);
+            Neo4jClient.UnboundRunnableSpec spec = mock(Neo4jClient.UnboundRunnableSpec.class);
+            when(spec.bindAll(anyMap())).thenAnswer(b -> {
+                List<Map<String, Object>> rows = (List<Map<String, Object>>) ((Map<String, Object>) b.getArgument(0)).get("rows");
+                Neo4jClient.UnboundRunnableSpec bound = mock(Neo4jClient.UnboundRunnableSpec.class);
+                when(bound.run()).thenAnswer(r -> {
+                    if (cypher.equals("slow")) slow.await(5, TimeUnit.SECONDS);
+                    if (cypher.equals("broken")) throw new IllegalStateException("constraint violated");
+                    statements.add(new Statement(cypher, rows, Thread.currentThread().getName()));
+                    return null;
+                });
+                return bound;
+            });
+            return spec;
+        });
+    }
+
+    @AfterEach
+    void tearDown() {
+        slow.countDown();
+        if (writer != null) writer.shutdown();
+    }
+
+    private SessionGraphWriter writer(String mode, String backpressure, int capacity, int batchSize, long flushMillis) {
+        writer = new SessionGraphWriter(neo4j, new ConnectionGuards(10, 10, 1000), registry,
+                mode, backpressure, capacity, batchSize, flushMillis, 50);
+        return writer;
+    }
+
+    private static Map<String, Object> row(int n) {
+        return Map.of("n", n);
+    }
+
+    private static void await(BooleanSupplier condition) throws InterruptedException {
+        for (int i = 0; i < 500 && !condition.getAsBoolean(); i++) Thread.sleep(10);
+        assertThat(condition.getAsBoolean()).isTrue();
+    }
+
+    @Test
+    void syncModeRunsEveryRowRightAway() {
+        writer("sync", "sync", 10, 10, 200);
+
+        writer.write("b", row(1));
+        writer.write("a", row(2));
+
+        assertThat(statements).extracting(Statement::cypher).containsExactly("b", "a");
+        assertThat(statements.get(0).thread()).isEqualTo(Thread.currentThread().getName());
+        assertThat(writer.stats().enqueued()).isZero();
+    }
+
+    @Test
+    void syncModeFailuresReachTheCaller() {
+        writer("sync", "sync", 10, 10, 200);
+
+        assertThatThrownBy(() -> writer.write("broken", row(1))).isInstanceOf(IllegalStateException.class);
+    }
+
+    @Test
+    void writeBehindGroupsABatchByStatementInArrivalOrder() throws Exception {
+        writer("write-behind", "sync", 100, 5, 60000);
+
+        writer.write("link", row(1));
+        writer.write("node", row(1));
+        writer.write("link", row(2));
+        writer.write("later", row(1));
+        writer.write("node", row(2));
+
+        await(() -> writer.stats().flushedBatches() == 1);
+        assertThat(statements).extracting(Statement::cypher).containsExactly("link", "node", "later");
+        assertThat(statements.get(0).rows()).containsExactly(row(1), row(2));
+        assertThat(statements.get(1).rows()).containsExactly(row(1), row(2));
+        assertThat(statements.get(0).thread()).isEqualTo("session-graph-writer");
+        assertThat(writer.stats().flushedRows()).isEqualTo(5);
+    }
+
+    @Test
+    void aPartialBatchIsFlushedAfterTheInterval() throws Exception {
+        writer("write-behind", "sync", 100, 500, 20);
+
+        writer.write("node", row(1));
+
+        await(() -> writer.stats().flushedRows() == 1);
+    }
+
+    @Test
+    void aFailedStatementDoesNotStopTheRestOfTheBatch() throws Exception {
+        writer("write-behind", "sync", 100, 2, 60000);
+
+        writer.write("broken", row(1));
+        writer.write("link", row(1));
+
+        await(() -> writer.stats().flushedBatches() == 1);
+        assertThat(writer.stats().failedBatches()).isEqualTo(1);
+        assertThat(statements).extracting(Statement::cypher).containsExactly("link");
+    }
+
+    @Test
+    void dropBackpressureDiscardsRowsThatDoNotFit() throws Exception {
+        writer("write-behind", "drop", 1, 1, 60000);
+        writer.write("slow", row(0));
+        await(() -> writer.stats().queueDepth() == 0);
+
+        writer.write("node", row(1));
+        writer.write("node", row(2));
+
+        assertThat(writer.stats().dropped()).isEqualTo(1);
+        slow.countDown();
+        await(() -> writer.stats().flushedRows() == 2);
+    }
+
+    @Test
+    void blockBackpressureGivesUpAfterTheTimeout() throws Exception {
+        writer("write-behind", "block", 1, 1, 60000);
+        writer.write("slow", row(0));
+        await(() -> writer.stats().queueDepth() == 0);
+        writer.write("node", row(1));
+
+        long start = System.nanoTime();
+        writer.write("node", row(2));
+
+        assertThat(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start)).isGreaterThanOrEqualTo(40);
+        assertThat(writer.stats().dropped()).isEqualTo(1);
+    }
+
+    @Test
+    void syncBackpressureWritesTheCallersRowOnItsThread() throws Exception {
+        writer("write-behind", "sync", 1, 1, 60000);
+        writer.write("slow", row(0));
+        await(() -> writer.stats().queueDepth() == 0);
+        writer.write("node", row(1));
+
+        // the caller's row depends on nothing queued, so it need not wait for the stuck flush
+        writer.write("merge", row(2));
+
+        assertThat(writer.stats().syncFallbacks()).isEqualTo(1);
+        assertThat(statements).singleElement().satisfies(s -> {
+            assertThat(s.cypher()).isEqualTo("merge");
+            assertThat(s.thread()).isEqualTo(Thread.currentThread().getName());
+        });
+    }
+
+    @Test
+    void shutdownFlushesWhatIsStillQueued() {
+        writer("write-behind", "sync", 100, 500, 60000);
+        writer.write("node", row(1));
+        writer.write("link", row(1));
+
+        writer.shutdown();
+
+        assertThat(statements).extracting(Statement::cypher).containsExactly("node", "link");
+        assertThat(writer.stats().queueDepth()).isZero();
+    }
+
+    @Test
+    void exportsWriterMeters() {
+        writer("write-behind", "drop", 100, 500, 60000);
+        writer.write("node", row(1));
+
+        assertThat(registry.get("graph.writer.enqueued").tag("mode", "write_behind").functionCounter().count()).isEqualTo(1);
+        assertThat(registry.get("graph.writer.queue.depth").gauge()).isNotNull();
+        assertThat(registry.get("graph.writer.lag").gauge()).isNotNull();
+        assertThat(registry.get("graph.writer.dropped").functionCounter().count()).isZero();
+    }
+}
@@ -0,0 +1,200 @@
+package shop.serve.ShopNServe.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.boot.actuate.health.Status;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class StockReservationsTest {
+
+    private final JdbcTemplate jdbc = mock(JdbcTemplate.class);
+    private final ApplicationEventPublisher events = mock(ApplicationEventPublisher.class);
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+    private StockReservations stock;
+
+    @BeforeEach
+    void setUp() {
+        stock = new StockReservations(jdbc, mock(PlatformTransactionManager.class), events, registry, 4);
+        dbStock(1L, 10);
+        dbStock(2L, 3);
+        when(jdbc.queryForList(anyString(), eq(Integer.class), eq(99L))).thenReturn(List.of());
+    }
+
+    private void dbStock(long productId, int units) {
+        when(jdbc.queryForList(anyString(), eq(Integer.class), eq(productId))).thenReturn(List.of(units));
+    }
+
+    @Test
+    void reservesAcrossStripesUpToTheStock() {
+        assertThat(stock.reserve(Map.of(1L, 7)).ok()).isTrue();
+        assertThat(stock.available(1L)).isEqualTo(3);
+
+        StockReservations.Result refused = stock.reserve(Map.of(1L, 4));
+        assertThat(refused.ok()).isFalse();
+        assertThat(refused.productId()).isEqualTo(1L);
+        assertThat(refused.available()).isEqualTo(3);
+        // a refused take puts back what it had gathered from other stripes
+        assertThat(stock.available(1L)).isEqualTo(3);
+
+        assertThat(stock.reserve(Map.of(1L, 3)).ok()).isTrue();
+        assertThat(stock.available(1L)).isZero();
+    }
+
+    @Test
+    void aCartIsReservedAllOrNothing() {
+        StockReservations.Result refused = stock.reserve(Map.of(1L, 5, 2L, 4));
+
+        assertThat(refused.ok()).isFalse();
+        assertThat(refused.productId()).isEqualTo(2L);
+        assertThat(stock.available(1L)).isEqualTo(10);
+        assertThat(stock.available(2L)).isEqualTo(3);
+    }
+
+    @Test
+    void unknownProductsAreReported() {
+        StockReservations.Result refused = stock.reserve(Map.of(1L, 1, 99L, 1));
+
+        assertThat(refused.ok()).isFalse();
+        assertThat(refused.unknownProduct()).isTrue();
+        assertThat(refused.productId()).isEqualTo(99L);
+        assertThat(stock.available(1L)).isEqualTo(10);
+    }
+
+    @Test
+    void releaseGivesUnitsBack() {
+        stock.reserve(Map.of(1L, 6));
+        stock.release(Map.of(1L, 6));
+
+        assertThat(stock.available(1L)).isEqualTo(10);
+    }
+
+    @Test
+    void concurrentBuyersNeverOversell() throws Exception {
+        dbStock(3L, 1000);
+        int threads = 8;
+        AtomicInteger sold = new AtomicInteger();
+        CountDownLatch start = new CountDownLatch(1);
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<?>> buyers = new ArrayList<>();
+            for (int t = 0; t < threads; t++) {
+                buyers.add(pool.submit(() -> {
+                    start.await();
+                    for (int i = 0; i < 400; i++) {
+                        if (stock.reserve(Map.of(3L, 1)).ok()) sold.incrementAndGet();
+                    }
+                    return null;
+                }));
+            }
+            start.countDown();
+            for (Future<?> f : buyers) f.get(30, TimeUnit.SECONDS);
+        } finally {
+            pool.shutdownNow();
+        }
+
+        assertThat(sold.get()).isEqualTo(1000);
+        assertThat(stock.available(3L)).isZero();
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void flushWritesOneDeltaPerProductAndPublishesTheCounts() {
+        stock.reserve(Map.of(1L, 2));
+        stock.reserve(Map.of(1L, 3, 2L, 1));
+        stock.release(Map.of(2L, 1));
+
+        stock.flush();
+
+        ArgumentCaptor<List<Object[]>> rows = ArgumentCaptor.forClass(List.class);
+        verify(jdbc).batchUpdate(anyString(), rows.capture());
+        assertThat(rows.getValue()).hasSize(1);
+        assertThat(rows.getValue().get(0)).containsExactly(5L, 1L);
+
+        ArgumentCaptor<StockReservations.Changed> changed = ArgumentCaptor.forClass(StockReservations.Changed.class);
+        verify(events).publishEvent(changed.capture());
+        assertThat(changed.getValue().available()).containsExactly(Map.entry(1L, 5));
+
+        // nothing new to write
+        stock.flush();
+        verify(jdbc).batchUpdate(anyString(), anyList());
+    }
+
+    @Test
+    void nothingIsPublishedWithoutAFlushedChange() {
+        stock.reserve(Map.of(1L, 2));
+        stock.release(Map.of(1L, 2));
+
+        stock.flush();
+
+        verify(jdbc, never()).batchUpdate(anyString(), anyList());
+        verify(events, never()).publishEvent(any(Object.class));
+    }
+
+    @Test
+    void reconcilePicksUpStockChangedElsewhere() {
+        stock.reserve(Map.of(1L, 4));
+        stock.flush();
+        // the flush took 4 off the row, then someone restocked it to 20
+        dbStock(1L, 20);
+
+        stock.reconcile(1L);
+
+        assertThat(stock.available(1L)).isEqualTo(20);
+    }
+
+    @Test
+    void aFlushThatKeepsFailingIsCountedAndTurnsTheHealthDown() {
+        when(jdbc.batchUpdate(anyString(), anyList())).thenThrow(new DataAccessResourceFailureException("connection refused"));
+        stock.reserve(Map.of(1L, 3));
+
+        for (int i = 1; i < StockReservations.UNHEALTHY_AFTER; i++) stock.flush();
+        assertThat(stock.health().getStatus()).isEqualTo(Status.UP);
+
+        stock.flush();
+
+        assertThat(stock.health().getStatus()).isEqualTo(Status.DOWN);
+        assertThat(stock.health().getDetails()).containsEntry("pendingUnits", 3L).containsEntry("lastError", "connection refused");
+        assertThat(registry.get("stock.flush.failures").functionCounter().count()).isEqualTo(StockReservations.UNHEALTHY_AFTER);
+        assertThat(registry.get("stock.flush.pending").gauge().value()).isEqualTo(3);
+        verify(events, never()).publishEvent(any(Object.class));
+    }
+
+    @Test
+    void aSuccessfulFlushClearsThePendingUnitsAndTheFailures() {
+        when(jdbc.batchUpdate(anyString(), anyList()))
+                .thenThrow(new DataAccessResourceFailureException("connection refused"))
+                .thenReturn(new int[]{1});
+        stock.reserve(Map.of(1L, 3));
+
+        stock.flush();
+        stock.flush();
+
+        assertThat(stock.pendingUnits()).isZero();
+        assertThat(stock.health().getDetails()).containsEntry("failedFlushesInARow", 0);
+    }
+}
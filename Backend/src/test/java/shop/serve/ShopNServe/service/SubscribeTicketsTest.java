@@ -0,0 +1,85 @@
+package shop.serve.ShopNServe.service;
+
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class SubscribeTicketsTest {
+
+    private final TokenDenylist denylist = new TokenDenylist(86400, 3600, 4096);
+
+    private static JwtService.Claims claims(String jti, long expiresInSeconds) {
+        return new JwtService.Claims("alice", System.currentTimeMillis() / 1000 + expiresInSeconds, jti, false);
+    }
+
+    @Test
+    void aTicketCanBeRedeemedOnce() {
+        SubscribeTickets tickets = new SubscribeTickets(denylist, 30000, 100);
+        JwtService.Claims claims = claims("a", 900);
+
+        String ticket = tickets.issue(claims);
+
+        assertThat(ticket).isNotBlank().doesNotContain("+", "/", "=");
+        assertThat(tickets.redeem(ticket)).isEqualTo(claims);
+        assertThat(tickets.redeem(ticket)).isNull();
+        assertThat(tickets.redeem("unknown")).isNull();
+        assertThat(tickets.redeem(null)).isNull();
+    }
+
+    @Test
+    void ticketsAreUnique() {
+        SubscribeTickets tickets = new SubscribeTickets(denylist, 30000, 100);
+        JwtService.Claims claims = claims("a", 900);
+
+        assertThat(tickets.issue(claims)).isNotEqualTo(tickets.issue(claims));
+    }
+
+    @Test
+    void anExpiredTicketIsRejected() throws Exception {
+        SubscribeTickets tickets = new SubscribeTickets(denylist, 1, 100);
+        String ticket = tickets.issue(claims("a", 900));
+
+        Thread.sleep(5);
+
+        assertThat(tickets.redeem(ticket)).isNull();
+    }
+
+    @Test
+    void aTicketDiesWithItsToken() {
+        SubscribeTickets tickets = new SubscribeTickets(denylist, 30000, 100);
+        JwtService.Claims revoked = claims("revoked", 900);
+        String ofRevoked = tickets.issue(revoked);
+        String ofExpired = tickets.issue(claims("expired", -1));
+
+        denylist.revoke(revoked.jti(), revoked.exp());
+
+        assertThat(tickets.redeem(ofRevoked)).isNull();
+        assertThat(tickets.redeem(ofExpired)).isNull();
+    }
+
+    @Test
+    void outstandingTicketsAreCapped() {
+        SubscribeTickets tickets = new SubscribeTickets(denylist, 30000, 2);
+        JwtService.Claims claims = claims("a", 900);
+        String first = tickets.issue(claims);
+        tickets.issue(claims);
+
+        assertThat(tickets.issue(claims)).isNull();
+
+        // a redeemed ticket frees its place
+        tickets.redeem(first);
+        assertThat(tickets.issue(claims)).isNotNull();
+    }
+
+    @Test
+    void expiredTicketsAreMadeRoomFor() throws Exception {
+        SubscribeTickets tickets = new SubscribeTickets(denylist, 1, 2);
+        JwtService.Claims claims = claims("a", 900);
+        tickets.issue(claims);
+        tickets.issue(claims);
+
+        Thread.sleep(5);
+
+        assertThat(tickets.issue(claims)).isNotNull();
+    }
+}
@@ -0,0 +1,67 @@
+package shop.serve.ShopNServe.service;
+
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class TokenDenylistTest {
+
+    private static long now() {
+        return System.currentTimeMillis() / 1000;
+    }
+
+    @Test
+    void revokedIdsAreFoundUnderTheirExpiry() {
+        TokenDenylist denylist = new TokenDenylist(86400, 3600, 4096);
+        long exp = now() + 900;
+
+        assertThat(denylist.isRevoked("a", exp)).isFalse();
+        assertThat(denylist.revoke("a", exp)).isTrue();
+        assertThat(denylist.isRevoked("a", exp)).isTrue();
+        assertThat(denylist.size()).isEqualTo(1);
+
+        // a token carries its exp, so the same id under another bucket is not this one
+        assertThat(denylist.isRevoked("a", exp + 7200)).isFalse();
+        assertThat(denylist.isRevoked("b", exp)).isFalse();
+    }
+
+    @Test
+    void revokeIsIdempotentAndIgnoresExpiredTokens() {
+        TokenDenylist denylist = new TokenDenylist(86400, 3600, 4096);
+        long exp = now() + 900;
+
+        assertThat(denylist.revoke("a", exp)).isTrue();
+        assertThat(denylist.revoke("a", exp)).isFalse();
+        assertThat(denylist.revoke("old", now() - 1)).isFalse();
+        assertThat(denylist.revoke(null, exp)).isFalse();
+        assertThat(denylist.isRevoked(null, exp)).isFalse();
+        assertThat(denylist.size()).isEqualTo(1);
+    }
+
+    @Test
+    void bloomFalsePositivesAreFilteredByTheExactSet() {
+        // 64 bits and 4 hashes per id: after 200 ids nearly every lookup is a Bloom hit
+        TokenDenylist denylist = new TokenDenylist(86400, 3600, 64);
+        long exp = now() + 900;
+        for (int i = 0; i < 200; i++) denylist.revoke("revoked-" + i, exp);
+
+        for (int i = 0; i < 200; i++) {
+            assertThat(denylist.isRevoked("revoked-" + i, exp)).isTrue();
+            assertThat(denylist.isRevoked("valid-" + i, exp)).isFalse();
+        }
+    }
+
+    @Test
+    void aBucketIsReplacedByALaterOneInItsSlot() {
+        // a ring of 3 one-hour buckets: exp + 3h lands in the slot of exp
+        TokenDenylist denylist = new TokenDenylist(3600, 3600, 4096);
+        long exp = now() + 900;
+
+        denylist.revoke("early", exp);
+        denylist.revoke("late", exp + 3 * 3600);
+
+        assertThat(denylist.isRevoked("late", exp + 3 * 3600)).isTrue();
+        // by the time the later bucket is in use the earlier tokens have expired
+        assertThat(denylist.isRevoked("early", exp)).isFalse();
+    }
+}
@@ -0,0 +1,76 @@
+package shop.serve.ShopNServe.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class UpdateBroadcasterTest {
+
+    private final TokenDenylist denylist = new TokenDenylist(86400, 3600, 4096);
+    private final UpdateBroadcaster broadcaster = new UpdateBroadcaster(new ObjectMapper(), denylist, 16, 64, 60000, 2);
+
+    @AfterEach
+    void tearDown() {
+        broadcaster.shutdown();
+    }
+
+    private static JwtService.Claims claims(String user, String jti, long expiresInSeconds) {
+        return new JwtService.Claims(user, System.currentTimeMillis() / 1000 + expiresInSeconds, jti, false);
+    }
+
+    private void awaitSubscribers(int n) throws InterruptedException {
+        for (int i = 0; i < 200 && broadcaster.stats().subscribers() != n; i++) Thread.sleep(10);
+        assertThat(broadcaster.stats().subscribers()).isEqualTo(n);
+    }
+
+    @Test
+    void subscribersAreCapped() {
+        assertThat(broadcaster.subscribe(claims("alice", "a", 900), null)).isNotNull();
+        assertThat(broadcaster.subscribe(claims("bob", "b", 900), null)).isNotNull();
+
+        assertThat(broadcaster.subscribe(claims("carol", "c", 900), null)).isNull();
+        assertThat(broadcaster.stats().subscribers()).isEqualTo(2);
+    }
+
+    @Test
+    void everyPublishedEventGetsTheNextSequence() {
+        broadcaster.subscribe(claims("alice", "a", 900), null);
+
+        broadcaster.publish(UpdateBroadcaster.CATALOG, null, Map.of("version", "v1"));
+        broadcaster.publish(UpdateBroadcaster.ORDER, "bob", Map.of("id", 1));
+
+        UpdateBroadcaster.Stats stats = broadcaster.stats();
+        assertThat(stats.published()).isEqualTo(2);
+        assertThat(stats.lastEventSeq()).isEqualTo(2);
+        assertThat(stats.dropped()).isZero();
+    }
+
+    @Test
+    void unusableLastEventIdsStillSubscribe() {
+        broadcaster.publish(UpdateBroadcaster.CATALOG, null, Map.of("version", "v1"));
+
+        // another boot epoch, a malformed id and an id from the future all end in a reset, not an error
+        assertThat(broadcaster.subscribe(claims("alice", "a", 900), "old-1")).isNotNull();
+        assertThat(broadcaster.subscribe(claims("alice", "b", 900), "garbage")).isNotNull();
+        assertThat(broadcaster.stats().subscribers()).isEqualTo(2);
+    }
+
+    @Test
+    void heartbeatClosesStreamsWhoseTokenExpiredOrWasRevoked() throws Exception {
+        JwtService.Claims revoked = claims("alice", "revoked", 900);
+        broadcaster.subscribe(revoked, null);
+        broadcaster.subscribe(claims("bob", "valid", 900), null);
+        denylist.revoke(revoked.jti(), revoked.exp());
+
+        broadcaster.heartbeat();
+
+        awaitSubscribers(1);
+        assertThat(broadcaster.stats().expired()).isEqualTo(1);
+        // the freed slot can be taken again
+        assertThat(broadcaster.subscribe(claims("carol", "c", 900), null)).isNotNull();
+    }
+}
@@ -10,6 +10,8 @@ export default defineConfig({
       "/api": {
         target: process.env.VITE_API_TARGET || "http://localhost:8080",
         changeOrigin: true,
+        // the backend rate-limits logins per client address
+        xfwd: true,
       },
     },
   },